@@ -0,0 +1,93 @@
+/*
+ *    Copyright 2022 Forb Yuan
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ *
+ */
+
+package win.doyto.query.language.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import win.doyto.query.language.doytoql.DoytoQLRequest;
+import win.doyto.query.sql.QLBuilder;
+import win.doyto.query.sql.SqlAndArgs;
+
+import java.sql.*;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * RequestPipelineBenchmark
+ * <p>
+ * Measures a query request from the JSON body to the rows read from an embedded H2.
+ *
+ * @author f0rb on 2022-04-27
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RequestPipelineBenchmark {
+
+    private static final String QUERY_JSON = """
+            {"operation": "query", "domain": "t_user", "columns": ["id", "username", "email", "user_level"],
+             "filters": {"usernameContain": "user", "accountOr": {"mobileStart": "1777", "emailNotNull": true}, "valid": true},
+             "page": {"pageNumber": 1, "pageSize": 10, "sort": "id,desc"}}""";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private Connection connection;
+
+    @Setup
+    public void setUp() throws SQLException {
+        connection = DriverManager.getConnection("jdbc:h2:mem:benchmark;DB_CLOSE_DELAY=-1");
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("RUNSCRIPT FROM 'classpath:schema.sql'");
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws SQLException {
+        connection.close();
+    }
+
+    @Benchmark
+    public SqlAndArgs parseAndBuild() throws Exception {
+        DoytoQLRequest request = objectMapper.readValue(QUERY_JSON, DoytoQLRequest.class);
+        return QLBuilder.buildQuerySql(request);
+    }
+
+    @Benchmark
+    public void parseBuildAndQuery(Blackhole blackhole) throws Exception {
+        DoytoQLRequest request = objectMapper.readValue(QUERY_JSON, DoytoQLRequest.class);
+        SqlAndArgs sqlAndArgs = QLBuilder.buildQuerySql(request);
+        try (PreparedStatement ps = connection.prepareStatement(sqlAndArgs.getSql())) {
+            Object[] args = sqlAndArgs.getArgs();
+            for (int i = 0; i < args.length; i++) {
+                ps.setObject(i + 1, args[i]);
+            }
+            try (ResultSet rs = ps.executeQuery()) {
+                ResultSetMetaData metaData = rs.getMetaData();
+                int columnCount = metaData.getColumnCount();
+                while (rs.next()) {
+                    Map<String, Object> row = new LinkedHashMap<>(columnCount * 2);
+                    for (int i = 1; i <= columnCount; i++) {
+                        row.put(metaData.getColumnLabel(i).toLowerCase(), rs.getObject(i));
+                    }
+                    blackhole.consume(row);
+                }
+            }
+        }
+    }
+}
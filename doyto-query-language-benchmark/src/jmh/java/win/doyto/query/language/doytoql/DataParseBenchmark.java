@@ -0,0 +1,87 @@
+/*
+ *    Copyright 2022 Forb Yuan
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ *
+ */
+
+package win.doyto.query.language.doytoql;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+import win.doyto.query.sql.BatchSqlAndArgs;
+import win.doyto.query.sql.QLBuilder;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * DataParseBenchmark
+ * <p>
+ * Compares reading an insert of 10k rows x 8 columns into a map per row
+ * as the former generic binding did, with the {@link CompactDataList} read
+ * by {@link CompactDataDeserializer}, followed by building the batch insert.
+ *
+ * @author f0rb on 2022-05-10
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class DataParseBenchmark {
+
+    private static final int ROWS = 10_000;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private byte[] json;
+
+    @Setup
+    public void setUp() {
+        StringBuilder sb = new StringBuilder(ROWS * 200).append("{\"operation\":\"insert\",\"domain\":\"t_user\",\"data\":[");
+        for (int i = 0; i < ROWS; i++) {
+            sb.append(i == 0 ? "" : ",")
+              .append("{\"username\":\"user").append(i)
+              .append("\",\"mobile\":\"1777").append(1000000 + i)
+              .append("\",\"email\":\"test").append(i).append("@qq.com")
+              .append("\",\"nickname\":\"nick").append(i)
+              .append("\",\"password\":\"123456\",\"user_level\":").append(i % 3)
+              .append(",\"score\":").append(i * 0.5)
+              .append(",\"valid\":").append(i % 2 == 0).append('}');
+        }
+        json = sb.append("]}").toString().getBytes();
+    }
+
+    @Benchmark
+    public List<Object[]> parseToLinkedHashMap() throws Exception {
+        Map<String, Object> body = objectMapper.readValue(json, new TypeReference<>() {});
+        @SuppressWarnings("unchecked")
+        List<LinkedHashMap<String, Object>> data = (List<LinkedHashMap<String, Object>>) body.get("data");
+        DoytoQLRequest request = new DoytoQLRequest();
+        request.setOperation("insert");
+        request.setDomain("t_user");
+        request.setData(data);
+        return buildInsert(request);
+    }
+
+    @Benchmark
+    public List<Object[]> parseToCompactDataList() throws Exception {
+        return buildInsert(objectMapper.readValue(json, DoytoQLRequest.class));
+    }
+
+    private static List<Object[]> buildInsert(DoytoQLRequest request) {
+        BatchSqlAndArgs batchSqlAndArgs = QLBuilder.buildInsertBatchSql(request);
+        return batchSqlAndArgs.getBatchArgs();
+    }
+}
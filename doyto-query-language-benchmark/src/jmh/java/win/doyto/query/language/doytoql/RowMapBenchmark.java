@@ -0,0 +1,109 @@
+/*
+ *    Copyright 2022 Forb Yuan
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ *
+ */
+
+package win.doyto.query.language.doytoql;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import win.doyto.query.util.ColumnUtil;
+
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * RowMapBenchmark
+ * <p>
+ * Compares mapping a result of 100k rows x 30 columns to maps
+ * keyed per row as the former row mappers did, with {@link CompactRowMap}
+ * keyed once per result, followed by the JSON serialization of the rows.
+ *
+ * @author f0rb on 2022-04-29
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class RowMapBenchmark {
+
+    private static final int ROWS = 100_000;
+    private static final int COLUMNS = 30;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private String[] labels;
+    private Object[][] resultSet;
+
+    @Setup
+    public void setUp() {
+        labels = new String[COLUMNS];
+        for (int i = 0; i < COLUMNS; i++) {
+            labels[i] = "COLUMN_NAME_" + i;
+        }
+        resultSet = new Object[ROWS][COLUMNS];
+        for (int r = 0; r < ROWS; r++) {
+            for (int c = 0; c < COLUMNS; c++) {
+                resultSet[r][c] = c % 2 == 0 ? (Object) (r * 31L + c) : "value" + c;
+            }
+        }
+    }
+
+    @Benchmark
+    public List<Map<String, Object>> mapToLinkedHashMap() {
+        List<Map<String, Object>> rows = new ArrayList<>(ROWS);
+        for (Object[] values : resultSet) {
+            Map<String, Object> row = new LinkedHashMap<>(COLUMNS * 2);
+            for (int i = 0; i < COLUMNS; i++) {
+                row.put(ColumnUtil.convertColumn(labels[i].toLowerCase()), values[i]);
+            }
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    @Benchmark
+    public List<Map<String, Object>> mapToCompactRowMap() {
+        String[] columnKeys = new String[COLUMNS];
+        for (int i = 0; i < COLUMNS; i++) {
+            columnKeys[i] = ColumnUtil.convertColumn(labels[i].toLowerCase());
+        }
+        CompactRowMap.Keys keys = new CompactRowMap.Keys(columnKeys);
+        List<Map<String, Object>> rows = new ArrayList<>(ROWS);
+        for (Object[] values : resultSet) {
+            Object[] row = new Object[keys.size()];
+            for (int i = 0; i < COLUMNS; i++) {
+                row[keys.slotOf(i)] = values[i];
+            }
+            rows.add(new CompactRowMap(keys, row));
+        }
+        return rows;
+    }
+
+    @Benchmark
+    public void mapAndWriteLinkedHashMap(Blackhole blackhole) throws Exception {
+        objectMapper.writeValue(OutputStream.nullOutputStream(), mapToLinkedHashMap());
+        blackhole.consume(resultSet);
+    }
+
+    @Benchmark
+    public void mapAndWriteCompactRowMap(Blackhole blackhole) throws Exception {
+        objectMapper.writeValue(OutputStream.nullOutputStream(), mapToCompactRowMap());
+        blackhole.consume(resultSet);
+    }
+}
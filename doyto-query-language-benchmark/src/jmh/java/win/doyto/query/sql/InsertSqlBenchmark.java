@@ -0,0 +1,67 @@
+/*
+ *    Copyright 2022 Forb Yuan
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ *
+ */
+
+package win.doyto.query.sql;
+
+import org.openjdk.jmh.annotations.*;
+import win.doyto.query.language.doytoql.DoytoQLRequest;
+import win.doyto.query.language.test.TestUtil;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * InsertSqlBenchmark
+ * <p>
+ * Measures the cost of building a multi-row insert by the count of rows.
+ *
+ * @author f0rb on 2022-04-27
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class InsertSqlBenchmark {
+
+    @Param({"1", "10", "100", "1000", "10000"})
+    private int rows;
+
+    private DoytoQLRequest insertRequest;
+
+    @Setup
+    public void setUp() {
+        List<LinkedHashMap<String, Object>> data = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            data.add(TestUtil.buildEntity(String.valueOf(i)));
+        }
+        insertRequest = new DoytoQLRequest();
+        insertRequest.setOperation("insert");
+        insertRequest.setDomain("t_user");
+        insertRequest.setData(data);
+    }
+
+    @Benchmark
+    public SqlAndArgs buildInsertSql() {
+        return QLBuilder.buildInsertSql(insertRequest);
+    }
+
+    @Benchmark
+    public BatchSqlAndArgs buildInsertBatchSql() {
+        return QLBuilder.buildInsertBatchSql(insertRequest);
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ *    Copyright 2022 Forb Yuan
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ *
+ */
+
+package win.doyto.query.sql;
+
+import org.openjdk.jmh.annotations.*;
+import win.doyto.query.core.PageQuery;
+import win.doyto.query.language.doytoql.DoytoQLRequest;
+import win.doyto.query.language.test.TestUtil;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * QLBuilderBenchmark
+ * <p>
+ * Measures the cost of building the statements of a request,
+ * with the template cache turned off and on.
+ *
+ * @author f0rb on 2022-04-27
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class QLBuilderBenchmark {
+
+    @Param({"0", "512"})
+    private int templateCacheSize;
+
+    private DoytoQLRequest queryRequest;
+    private DoytoQLRequest updateRequest;
+    private LinkedHashMap<String, Object> orFilters;
+
+    @Setup
+    public void setUp() {
+        QLBuilder.getTemplateCache().setMaximumSize(templateCacheSize);
+        QLBuilder.getTemplateCache().clear();
+
+        queryRequest = new DoytoQLRequest();
+        queryRequest.setOperation("query");
+        queryRequest.setDomain("t_user");
+        queryRequest.setColumns(List.of("id", "username", "email", "mobile"));
+        LinkedHashMap<String, Object> filters = new LinkedHashMap<>();
+        filters.put("idIn", List.of(1, 2, 3, 4, 5));
+        filters.put("usernameContain", "user");
+        filters.put("valid", true);
+        queryRequest.setFilters(filters);
+        queryRequest.setPage(PageQuery.builder().pageNumber(2).pageSize(10).sort("id,desc").build());
+
+        updateRequest = TestUtil.buildUpdateRequest();
+
+        orFilters = new LinkedHashMap<>();
+        LinkedHashMap<String, Object> accountOr = new LinkedHashMap<>();
+        accountOr.put("username", "f0rb");
+        accountOr.put("email", "f0rb@163.com");
+        accountOr.put("mobile", "17778888881");
+        orFilters.put("accountOr", accountOr);
+        LinkedHashMap<String, Object> levelOr = new LinkedHashMap<>();
+        levelOr.put("userLevelIn", List.of("高级", "普通"));
+        levelOr.put("memoNull", true);
+        orFilters.put("levelOr", levelOr);
+        orFilters.put("valid", true);
+    }
+
+    @TearDown
+    public void tearDown() {
+        QLBuilder.getTemplateCache().setMaximumSize(SqlTemplateCache.DEFAULT_MAXIMUM_SIZE);
+    }
+
+    @Benchmark
+    public SqlAndArgs buildQuerySql() {
+        return QLBuilder.buildQuerySql(queryRequest);
+    }
+
+    @Benchmark
+    public SqlAndArgs buildUpdateSql() {
+        return QLBuilder.buildUpdateSql(updateRequest);
+    }
+
+    @Benchmark
+    public String buildWhereWithOrGroups() {
+        return QLBuilder.buildWhere(orFilters, new ArrayList<>());
+    }
+}
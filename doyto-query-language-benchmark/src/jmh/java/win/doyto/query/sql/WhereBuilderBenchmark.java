@@ -0,0 +1,91 @@
+/*
+ *    Copyright 2022 Forb Yuan
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ *
+ */
+
+package win.doyto.query.sql;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collector;
+import java.util.stream.Collectors;
+
+import static win.doyto.query.sql.Constant.*;
+import static win.doyto.query.sql.SqlQuerySuffix.buildConditionForField;
+
+/**
+ * WhereBuilderBenchmark
+ * <p>
+ * Compares the allocation of {@link QLBuilder#buildWhere(LinkedHashMap, List)}
+ * with the former stream-based implementation, run it with <code>-prof gc</code>.
+ *
+ * @author f0rb on 2022-04-28
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class WhereBuilderBenchmark {
+
+    private static final Collector<CharSequence, ?, String> COLLECTOR_WHERE = Collectors.joining(" AND ", WHERE, EMPTY);
+    private static final Collector<CharSequence, ?, String> COLLECTOR_OR = Collectors.joining(SPACE_OR, "(", ")");
+
+    private LinkedHashMap<String, Object> filters;
+
+    @Setup
+    public void setUp() {
+        filters = new LinkedHashMap<>();
+        filters.put("idGt", 10);
+        filters.put("usernameContain", "user");
+        LinkedHashMap<String, Object> accountOr = new LinkedHashMap<>();
+        accountOr.put("username", "f0rb");
+        accountOr.put("email", "f0rb@163.com");
+        accountOr.put("mobile", "17778888881");
+        filters.put("accountOr", accountOr);
+        LinkedHashMap<String, Object> levelOr = new LinkedHashMap<>();
+        levelOr.put("userLevel", "高级");
+        levelOr.put("memoNull", true);
+        filters.put("levelOr", levelOr);
+        filters.put("valid", true);
+    }
+
+    @Benchmark
+    public String appendToBuilder() {
+        return QLBuilder.buildWhere(filters, new ArrayList<>());
+    }
+
+    @Benchmark
+    public String joinByStream() {
+        return buildWhereByStream(filters, new ArrayList<>());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static String buildWhereByStream(LinkedHashMap<String, Object> filters, List<Object> args) {
+        return filters.entrySet().stream()
+                      .map(e -> {
+                          if (e.getKey().endsWith("Or")) {
+                              LinkedHashMap<String, Object> orConditions = (LinkedHashMap<String, Object>) e.getValue();
+                              return orConditions.entrySet().stream()
+                                                 .map(orCondition -> buildConditionForField(orCondition.getKey(), args, orCondition.getValue()))
+                                                 .collect(COLLECTOR_OR);
+                          }
+                          return buildConditionForField(e.getKey(), args, e.getValue());
+                      })
+                      .collect(COLLECTOR_WHERE);
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ *    Copyright 2022 Forb Yuan
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ *
+ */
+
+// k6 script sending DoytoQL queries from up to CLIENTS concurrent clients, 5000 by default:
+//   k6 run -e BASE_URL=http://localhost:8080 -e LABEL=mvc-virtual --summary-export=mvc-virtual.json doytoql-load.js
+import http from 'k6/http';
+import {check} from 'k6';
+
+const BASE_URL = __ENV.BASE_URL || 'http://localhost:8080';
+const CLIENTS = parseInt(__ENV.CLIENTS || '5000');
+const DOMAIN = __ENV.DOMAIN || 't_user';
+
+export const options = {
+    scenarios: {
+        clients: {
+            executor: 'ramping-vus',
+            startVUs: 0,
+            stages: [
+                {duration: '30s', target: CLIENTS},
+                {duration: __ENV.HOLD || '2m', target: CLIENTS},
+                {duration: '10s', target: 0},
+            ],
+            gracefulRampDown: '10s',
+        },
+    },
+    tags: {label: __ENV.LABEL || 'unlabeled'},
+    summaryTrendStats: ['avg', 'p(50)', 'p(95)', 'p(99)', 'max'],
+};
+
+const params = {headers: {'Content-Type': 'application/json'}, timeout: '60s'};
+
+export default function () {
+    const body = JSON.stringify({
+        operation: 'query',
+        domain: DOMAIN,
+        columns: ['id', 'username', 'email'],
+        filters: {idGt: Math.floor(Math.random() * 5)},
+        page: {pageNumber: 1, pageSize: 10, sort: 'id,desc'},
+    });
+    const res = http.post(`${BASE_URL}/DoytoQL`, body, params);
+    check(res, {
+        'status is 200': (r) => r.status === 200,
+        'no error code': (r) => r.status === 200 && r.json('success') === true,
+    });
+}
@@ -0,0 +1,133 @@
+/*
+ *    Copyright 2022 Forb Yuan
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ *
+ */
+
+package win.doyto.query.language.doytoql;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * CompactDataDeserializer
+ * <p>
+ * Read <code>data</code> straight from the tokens into a {@link CompactDataList},
+ * instead of a map per row. The column names come from the first row, whose strings
+ * are canonicalized by the parser, and the other rows only keep their values.
+ * A single object is taken as one row. The input is rejected as soon as a row
+ * is not an object, or holds a column twice or columns other than the first row.
+ *
+ * @author f0rb on 2022-05-10
+ */
+public class CompactDataDeserializer extends StdDeserializer<List<LinkedHashMap<String, Object>>> {
+
+    private static final Object ABSENT = new Object();
+
+    public CompactDataDeserializer() {
+        super(List.class);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<LinkedHashMap<String, Object>> deserialize(JsonParser p, DeserializationContext ctxt) throws IOException {
+        if (p.currentToken() == JsonToken.START_OBJECT) {
+            List<Object[]> rows = new ArrayList<>(1);
+            return new CompactDataList(readFirstRow(p, ctxt, rows), rows);
+        }
+        if (p.currentToken() != JsonToken.START_ARRAY) {
+            return (List<LinkedHashMap<String, Object>>) ctxt.handleUnexpectedToken(List.class, p);
+        }
+        String[] columns = new String[0];
+        List<Object[]> rows = new ArrayList<>();
+        for (JsonToken token = p.nextToken(); token != JsonToken.END_ARRAY; token = p.nextToken()) {
+            if (token != JsonToken.START_OBJECT) {
+                ctxt.reportInputMismatch(this, "Row %d of data should be an object, but got %s", rows.size(), token);
+            }
+            if (rows.isEmpty()) {
+                columns = readFirstRow(p, ctxt, rows);
+            } else {
+                rows.add(readRow(p, ctxt, columns, rows.size()));
+            }
+        }
+        return new CompactDataList(columns, rows);
+    }
+
+    private String[] readFirstRow(JsonParser p, DeserializationContext ctxt, List<Object[]> rows) throws IOException {
+        List<String> columns = new ArrayList<>();
+        List<Object> values = new ArrayList<>();
+        for (String name = p.nextFieldName(); name != null; name = p.nextFieldName()) {
+            if (columns.contains(name)) {
+                ctxt.reportInputMismatch(this, "Row 0 of data should not repeat the column %s", name);
+            }
+            columns.add(name);
+            p.nextToken();
+            values.add(readValue(p, ctxt));
+        }
+        rows.add(values.toArray());
+        return columns.toArray(new String[0]);
+    }
+
+    private Object[] readRow(JsonParser p, DeserializationContext ctxt, String[] columns, int index) throws IOException {
+        Object[] values = new Object[columns.length];
+        Arrays.fill(values, ABSENT);
+        int position = 0;
+        for (String name = p.nextFieldName(); name != null; name = p.nextFieldName(), position++) {
+            int slot = slotOf(columns, name, position);
+            if (slot < 0 || values[slot] != ABSENT) {
+                ctxt.reportInputMismatch(this, "Row %d of data should share the columns of the first row, but got %s", index, name);
+            }
+            p.nextToken();
+            values[slot] = readValue(p, ctxt);
+        }
+        if (position != columns.length) {
+            ctxt.reportInputMismatch(this, "Row %d of data should share the columns of the first row, but got %d columns", index, position);
+        }
+        return values;
+    }
+
+    private static int slotOf(String[] columns, String name, int position) {
+        // the rows mostly list the columns in the same order
+        if (position < columns.length && columns[position].equals(name)) {
+            return position;
+        }
+        for (int i = 0; i < columns.length; i++) {
+            if (columns[i].equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private Object readValue(JsonParser p, DeserializationContext ctxt) throws IOException {
+        return switch (p.currentToken()) {
+            case VALUE_STRING -> p.getText();
+            case VALUE_TRUE -> Boolean.TRUE;
+            case VALUE_FALSE -> Boolean.FALSE;
+            case VALUE_NULL -> null;
+            case VALUE_NUMBER_INT -> ctxt.hasSomeOfFeatures(F_MASK_INT_COERCIONS) ? ctxt.readValue(p, Object.class) : p.getNumberValue();
+            case VALUE_NUMBER_FLOAT -> ctxt.isEnabled(DeserializationFeature.USE_BIG_DECIMAL_FOR_FLOATS) ? p.getDecimalValue() : p.getDoubleValue();
+            default -> ctxt.readValue(p, Object.class);
+        };
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ *    Copyright 2022 Forb Yuan
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ *
+ */
+
+package win.doyto.query.language.doytoql;
+
+import java.util.AbstractList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * CompactDataList
+ * <p>
+ * The rows of <code>data</code> stored by columns: one array of the column names
+ * shared by all rows, and an array of values per row in the order of the columns.
+ * Each call of {@link #get(int)} returns a new map of the row, so the builders
+ * reading many rows should go through {@link #getColumns()} and {@link #valuesOf(int)}.
+ *
+ * @author f0rb on 2022-05-10
+ * @see CompactDataDeserializer
+ */
+public final class CompactDataList extends AbstractList<LinkedHashMap<String, Object>> implements RandomAccess {
+
+    private final String[] columns;
+    private final List<Object[]> rows;
+
+    public CompactDataList(String[] columns, List<Object[]> rows) {
+        this.columns = columns;
+        this.rows = rows;
+    }
+
+    /**
+     * @return the column names shared by all rows, which should not be modified
+     */
+    public String[] getColumns() {
+        return columns;
+    }
+
+    /**
+     * @return the values of the row in the order of the columns, which should not be modified
+     */
+    public Object[] valuesOf(int index) {
+        return rows.get(index);
+    }
+
+    @Override
+    public LinkedHashMap<String, Object> get(int index) {
+        Object[] values = rows.get(index);
+        LinkedHashMap<String, Object> row = new LinkedHashMap<>(columns.length * 4 / 3 + 1);
+        for (int i = 0; i < columns.length; i++) {
+            row.put(columns[i], values[i]);
+        }
+        return row;
+    }
+
+    @Override
+    public int size() {
+        return rows.size();
+    }
+
+    @Override
+    public CompactDataList subList(int fromIndex, int toIndex) {
+        return new CompactDataList(columns, rows.subList(fromIndex, toIndex));
+    }
+}
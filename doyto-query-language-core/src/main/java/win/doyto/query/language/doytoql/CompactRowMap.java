@@ -0,0 +1,196 @@
+/*
+ *    Copyright 2022 Forb Yuan
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ *
+ */
+
+package win.doyto.query.language.doytoql;
+
+import java.util.*;
+
+/**
+ * CompactRowMap
+ * <p>
+ * A row backed by an array of values and the {@link Keys} shared by all rows
+ * of a result set. The keys are fixed: putting a key not in the result set
+ * is not supported, while removing a key only affects this row.
+ *
+ * @author f0rb on 2022-04-29
+ */
+public final class CompactRowMap extends AbstractMap<String, Object> {
+
+    private static final Object ABSENT = new Object();
+
+    private final Keys keys;
+    private final Object[] values;
+    private int size;
+
+    /**
+     * @param values the values of the row indexed by {@link Keys#slotOf(int)}
+     */
+    public CompactRowMap(Keys keys, Object[] values) {
+        this.keys = keys;
+        this.values = values;
+        this.size = values.length;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        int slot = keys.indexOf(key);
+        return slot >= 0 && values[slot] != ABSENT;
+    }
+
+    @Override
+    public Object get(Object key) {
+        int slot = keys.indexOf(key);
+        return slot >= 0 && values[slot] != ABSENT ? values[slot] : null;
+    }
+
+    @Override
+    public Object put(String key, Object value) {
+        int slot = keys.indexOf(key);
+        if (slot < 0) {
+            throw new UnsupportedOperationException("Unknown column: " + key);
+        }
+        Object old = values[slot];
+        values[slot] = value;
+        if (old == ABSENT) {
+            size++;
+            return null;
+        }
+        return old;
+    }
+
+    @Override
+    public Object remove(Object key) {
+        int slot = keys.indexOf(key);
+        return slot >= 0 ? removeAt(slot) : null;
+    }
+
+    private Object removeAt(int slot) {
+        Object old = values[slot];
+        if (old == ABSENT) {
+            return null;
+        }
+        values[slot] = ABSENT;
+        size--;
+        return old;
+    }
+
+    @Override
+    public Set<Entry<String, Object>> entrySet() {
+        return new AbstractSet<>() {
+            @Override
+            public Iterator<Entry<String, Object>> iterator() {
+                return new EntryIterator();
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    private final class EntryIterator implements Iterator<Entry<String, Object>> {
+        private int next = advance(0);
+        private int last = -1;
+
+        private int advance(int slot) {
+            while (slot < values.length && values[slot] == ABSENT) {
+                slot++;
+            }
+            return slot;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next < values.length;
+        }
+
+        @Override
+        public Entry<String, Object> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            last = next;
+            next = advance(next + 1);
+            return new SimpleImmutableEntry<>(keys.names[last], values[last]);
+        }
+
+        @Override
+        public void remove() {
+            if (last < 0) {
+                throw new IllegalStateException();
+            }
+            removeAt(last);
+            last = -1;
+        }
+    }
+
+    /**
+     * The keys of a result set, resolved once from the column labels.
+     * A label occurring more than once keeps its last value, as a LinkedHashMap would do.
+     */
+    public static final class Keys {
+        private final String[] names;
+        private final int[] slots;
+        private final Map<String, Integer> index;
+
+        public Keys(String[] columnKeys) {
+            Map<String, Integer> slotByName = new LinkedHashMap<>();
+            slots = new int[columnKeys.length];
+            for (int i = 0; i < columnKeys.length; i++) {
+                slots[i] = slotByName.computeIfAbsent(columnKeys[i], name -> slotByName.size());
+            }
+            names = slotByName.keySet().toArray(new String[0]);
+            index = Map.copyOf(slotByName);
+        }
+
+        /**
+         * @return the count of the distinct keys, which is the length of the values of a row
+         */
+        public int size() {
+            return names.length;
+        }
+
+        /**
+         * @return the count of the columns in the result set
+         */
+        public int columnCount() {
+            return slots.length;
+        }
+
+        /**
+         * @param column the 0-based index of the column in the result set
+         * @return the index of the value of the column in a row
+         */
+        public int slotOf(int column) {
+            return slots[column];
+        }
+
+        int indexOf(Object key) {
+            if (key == null) {
+                return -1;
+            }
+            Integer slot = index.get(key);
+            return slot == null ? -1 : slot;
+        }
+    }
+}
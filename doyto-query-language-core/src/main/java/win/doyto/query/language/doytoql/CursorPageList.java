@@ -0,0 +1,38 @@
+/*
+ *    Copyright 2022 Forb Yuan
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ *
+ */
+
+package win.doyto.query.language.doytoql;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+
+/**
+ * CursorPageList
+ * <p>
+ * A page of rows returned in the cursor mode,
+ * where <code>cursor</code> is null after the last page.
+ *
+ * @author f0rb on 2022-04-26
+ */
+@Getter
+@AllArgsConstructor
+public class CursorPageList<T> {
+    private final List<T> list;
+    private final String cursor;
+}
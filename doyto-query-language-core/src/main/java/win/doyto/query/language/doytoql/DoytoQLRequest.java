@@ -17,6 +17,7 @@
 
 package win.doyto.query.language.doytoql;
 
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 import lombok.Getter;
 import lombok.Setter;
 import win.doyto.query.core.PageQuery;
@@ -24,6 +25,7 @@ import win.doyto.query.core.PageQuery;
 import java.util.LinkedHashMap;
 import java.util.List;
 import javax.validation.constraints.NotEmpty;
+import javax.validation.constraints.Positive;
 
 /**
  * DoytoQLRequest
@@ -39,6 +41,45 @@ public class DoytoQLRequest {
     private String domain;
     private PageQuery page;
     private LinkedHashMap<String, Object> filters;
+    /**
+     * The rows to write, read from JSON as a {@link CompactDataList}.
+     */
+    @JsonDeserialize(using = CompactDataDeserializer.class)
     private List<LinkedHashMap<String, Object>> data;
     private List<String> columns;
+    /**
+     * How to compute the total of a query: exact(default), window or false/none.
+     *
+     * @see QLCountMode
+     */
+    private String count;
+    /**
+     * Page by the cursor returned from the previous page instead of the offset,
+     * pass an empty string for the first page.
+     */
+    private String cursor;
+    /**
+     * The seconds to wait for the request, capped by <code>doytoql.query-timeout</code>.
+     */
+    @Positive
+    private Integer timeout;
+    /**
+     * The columns to group the rows of an aggregate request by.
+     */
+    private List<String> groupBy;
+    /**
+     * The conditions on the aggregates of an aggregate request, in the syntax of filters.
+     */
+    private LinkedHashMap<String, Object> having;
+    /**
+     * The columns telling the rows to update for an upsert request, id by default.
+     */
+    private List<String> keys;
+
+    /**
+     * Tell whether the operation only reads, which can run on a replica and in parallel.
+     */
+    public static boolean isRead(String operation) {
+        return "query".equals(operation) || "aggregate".equals(operation) || "exists".equals(operation);
+    }
 }
@@ -0,0 +1,230 @@
+/*
+ *    Copyright 2022 Forb Yuan
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ *
+ */
+
+package win.doyto.query.language.doytoql;
+
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.*;
+import org.apache.arrow.vector.ipc.ArrowStreamWriter;
+import org.apache.arrow.vector.types.DateUnit;
+import org.apache.arrow.vector.types.FloatingPointPrecision;
+import org.apache.arrow.vector.types.TimeUnit;
+import org.apache.arrow.vector.types.pojo.ArrowType;
+import org.apache.arrow.vector.types.pojo.Field;
+import org.apache.arrow.vector.types.pojo.Schema;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * QLArrowWriter
+ * <p>
+ * Write rows as an Apache Arrow IPC stream: the schema once, then a record batch
+ * for every <code>batchSize</code> rows, so that the values are sent by columns
+ * in binary without a key per row. The type of a column is decided by its Java type:
+ * integers, floating numbers, booleans, dates, timestamps and bytes keep their types,
+ * while the others, including decimals, are written as UTF-8 strings.
+ * An instance is bound to one result and is not thread-safe.
+ *
+ * @author f0rb on 2022-05-11
+ */
+public class QLArrowWriter implements Closeable {
+
+    public static final String ARROW_STREAM_VALUE = "application/vnd.apache.arrow.stream";
+
+    private static final RootAllocator ROOT_ALLOCATOR = new RootAllocator();
+
+    private final OutputStream outputStream;
+    private final int batchSize;
+    private final BufferAllocator allocator;
+    private ArrowColumn[] columns;
+    private VectorSchemaRoot root;
+    private ArrowStreamWriter writer;
+    private int rowCount;
+
+    public QLArrowWriter(OutputStream outputStream, int batchSize) {
+        this.outputStream = outputStream;
+        this.batchSize = batchSize;
+        this.allocator = ROOT_ALLOCATOR.newChildAllocator("doytoql-arrow", 0, Long.MAX_VALUE);
+    }
+
+    public boolean isStarted() {
+        return writer != null;
+    }
+
+    /**
+     * Write the schema of the columns.
+     *
+     * @param types the Java types of the columns, null for unknown
+     */
+    public void start(String[] names, Class<?>[] types) throws IOException {
+        columns = new ArrowColumn[names.length];
+        List<Field> fields = new ArrayList<>(names.length);
+        for (int i = 0; i < names.length; i++) {
+            columns[i] = ArrowColumn.of(types[i]);
+            fields.add(Field.nullable(names[i], columns[i].type));
+        }
+        root = VectorSchemaRoot.create(new Schema(fields), allocator);
+        root.allocateNew();
+        writer = new ArrowStreamWriter(root, null, outputStream);
+        writer.start();
+    }
+
+    /**
+     * Append a row, and write a record batch once <code>batchSize</code> rows are appended.
+     */
+    public void write(Object[] values) throws IOException {
+        for (int i = 0; i < columns.length; i++) {
+            // an unset slot stays null
+            if (values[i] != null) {
+                columns[i].set(root.getVector(i), rowCount, values[i]);
+            }
+        }
+        if (++rowCount == batchSize) {
+            writeBatch();
+        }
+    }
+
+    /**
+     * Write the rows left and the end of the stream, along with an empty schema if not started.
+     */
+    public void end() throws IOException {
+        if (!isStarted()) {
+            start(new String[0], new Class<?>[0]);
+        }
+        if (rowCount > 0) {
+            writeBatch();
+        }
+        writer.end();
+        outputStream.flush();
+    }
+
+    private void writeBatch() throws IOException {
+        root.setRowCount(rowCount);
+        writer.writeBatch();
+        root.allocateNew();
+        rowCount = 0;
+    }
+
+    @Override
+    public void close() {
+        // the writer is left open since closing it closes the output stream
+        if (root != null) {
+            root.close();
+        }
+        allocator.close();
+    }
+
+    private enum ArrowColumn {
+        INT(new ArrowType.Int(32, true)) {
+            @Override
+            void set(FieldVector vector, int index, Object value) {
+                ((IntVector) vector).setSafe(index, ((Number) value).intValue());
+            }
+        },
+        BIGINT(new ArrowType.Int(64, true)) {
+            @Override
+            void set(FieldVector vector, int index, Object value) {
+                ((BigIntVector) vector).setSafe(index, ((Number) value).longValue());
+            }
+        },
+        DOUBLE(new ArrowType.FloatingPoint(FloatingPointPrecision.DOUBLE)) {
+            @Override
+            void set(FieldVector vector, int index, Object value) {
+                ((Float8Vector) vector).setSafe(index, ((Number) value).doubleValue());
+            }
+        },
+        BOOL(ArrowType.Bool.INSTANCE) {
+            @Override
+            void set(FieldVector vector, int index, Object value) {
+                ((BitVector) vector).setSafe(index, Boolean.TRUE.equals(value) ? 1 : 0);
+            }
+        },
+        DATE(new ArrowType.Date(DateUnit.DAY)) {
+            @Override
+            void set(FieldVector vector, int index, Object value) {
+                LocalDate date = value instanceof java.sql.Date sqlDate ? sqlDate.toLocalDate() : (LocalDate) value;
+                ((DateDayVector) vector).setSafe(index, (int) date.toEpochDay());
+            }
+        },
+        TIMESTAMP(new ArrowType.Timestamp(TimeUnit.MICROSECOND, null)) {
+            @Override
+            void set(FieldVector vector, int index, Object value) {
+                LocalDateTime dateTime = value instanceof java.sql.Timestamp timestamp ? timestamp.toLocalDateTime() : (LocalDateTime) value;
+                // a timestamp without time zone counts from the epoch at UTC
+                long micros = ChronoUnit.MICROS.between(LocalDateTime.ofEpochSecond(0, 0, ZoneOffset.UTC), dateTime);
+                ((TimeStampMicroVector) vector).setSafe(index, micros);
+            }
+        },
+        BINARY(ArrowType.Binary.INSTANCE) {
+            @Override
+            void set(FieldVector vector, int index, Object value) {
+                byte[] bytes;
+                if (value instanceof ByteBuffer buffer) {
+                    bytes = new byte[buffer.remaining()];
+                    buffer.duplicate().get(bytes);
+                } else {
+                    bytes = (byte[]) value;
+                }
+                ((VarBinaryVector) vector).setSafe(index, bytes);
+            }
+        },
+        STRING(ArrowType.Utf8.INSTANCE) {
+            @Override
+            void set(FieldVector vector, int index, Object value) {
+                ((VarCharVector) vector).setSafe(index, value.toString().getBytes(StandardCharsets.UTF_8));
+            }
+        };
+
+        final ArrowType type;
+
+        ArrowColumn(ArrowType type) {
+            this.type = type;
+        }
+
+        abstract void set(FieldVector vector, int index, Object value);
+
+        static ArrowColumn of(Class<?> type) {
+            if (type == Integer.class || type == Short.class || type == Byte.class) {
+                return INT;
+            } else if (type == Long.class) {
+                return BIGINT;
+            } else if (type == Double.class || type == Float.class) {
+                return DOUBLE;
+            } else if (type == Boolean.class) {
+                return BOOL;
+            } else if (type == LocalDate.class || type == java.sql.Date.class) {
+                return DATE;
+            } else if (type == LocalDateTime.class || type == java.sql.Timestamp.class) {
+                return TIMESTAMP;
+            } else if (type == byte[].class || (type != null && ByteBuffer.class.isAssignableFrom(type))) {
+                return BINARY;
+            }
+            return STRING;
+        }
+    }
+}
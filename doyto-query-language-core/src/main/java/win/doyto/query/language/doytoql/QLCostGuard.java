@@ -0,0 +1,157 @@
+/*
+ *    Copyright 2022 Forb Yuan
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ *
+ */
+
+package win.doyto.query.language.doytoql;
+
+import win.doyto.query.core.PageQuery;
+import win.doyto.query.sql.QLBuilder;
+import win.doyto.query.web.response.ErrorCode;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * QLCostGuard
+ * <p>
+ * Estimate the rows scanned by a request from the statistics of its table
+ * before it reaches the database. A request scanning more rows than
+ * <code>doytoql.cost-reject-rows</code> is rejected, and a query scanning more
+ * rows than <code>doytoql.cost-rewrite-rows</code> is paged by a default size
+ * when unpaged and returns no count. The domains without statistics are not guarded.
+ * <p>
+ * The scan is estimated by the most selective condition over an indexed column:
+ * an equality or IN takes the rows per value of the index for each value,
+ * a range or a prefix LIKE takes a third of the table, and any other condition,
+ * including a LIKE with a leading wildcard, takes the whole table.
+ *
+ * @author f0rb on 2022-05-06
+ */
+public class QLCostGuard {
+
+    static final long RANGE_SELECTIVITY = 3;
+
+    private static final String[] FULL_SCAN_SUFFIXES = {
+            "NotContain", "NotStart", "NotEnd", "NotLike", "NotNull", "NotIn", "Not",
+            "Contain", "End", "Like"
+    };
+    private static final String[] RANGE_SUFFIXES = {"Start", "Gt", "Ge", "Lt", "Le"};
+    private static final String[] LOOKUP_SUFFIXES = {"Null", "Eq", "In"};
+
+    private final Map<String, QLProperties.TableStatistics> tables;
+    private final long rewriteRows;
+    private final long rejectRows;
+    private final int defaultPageSize;
+
+    public QLCostGuard(Map<String, QLProperties.TableStatistics> tables, long rewriteRows, long rejectRows, int defaultPageSize) {
+        this.tables = Map.copyOf(tables);
+        this.rewriteRows = rewriteRows;
+        this.rejectRows = rejectRows;
+        this.defaultPageSize = defaultPageSize;
+    }
+
+    public static QLCostGuard of(QLProperties qlProperties) {
+        return new QLCostGuard(qlProperties.getCostTables(), qlProperties.getCostRewriteRows(),
+                               qlProperties.getCostRejectRows(), qlProperties.getCostDefaultPageSize());
+    }
+
+    /**
+     * Reject the request estimated to scan too many rows, and rewrite the expensive query.
+     *
+     * @throws win.doyto.query.web.response.ErrorCodeException with {@link QLErrorCode#REQUEST_TOO_EXPENSIVE}
+     */
+    public void guard(DoytoQLRequest request) {
+        long rows = check(request);
+        if (rows <= rewriteRows || rewriteRows <= 0 || !"query".equals(request.getOperation())) {
+            return;
+        }
+        if (request.getPage() == null) {
+            request.setPage(PageQuery.builder().pageSize(defaultPageSize).build());
+        }
+        request.setCount("none");
+    }
+
+    /**
+     * Reject the request estimated to scan too many rows.
+     *
+     * @return the rows estimated to scan, or -1 when the domain is not guarded
+     */
+    public long check(DoytoQLRequest request) {
+        QLProperties.TableStatistics table = tables.get(request.getDomain());
+        // the writes of rows without filters scan nothing, and the updates by keys look up the given rows
+        if (table == null || "insert".equals(request.getOperation()) || "upsert".equals(request.getOperation())
+                || ("update".equals(request.getOperation()) && QLBuilder.isUpdateByKeys(request))) {
+            return -1;
+        }
+        long rows = estimate(table, request.getFilters());
+        ErrorCode.assertTrue(rejectRows <= 0 || rows <= rejectRows, QLErrorCode.REQUEST_TOO_EXPENSIVE);
+        return rows;
+    }
+
+    static long estimate(QLProperties.TableStatistics table, Map<String, Object> filters) {
+        long rows = table.getRows();
+        if (filters == null) {
+            return rows;
+        }
+        for (Map.Entry<String, Object> entry : filters.entrySet()) {
+            rows = Math.min(rows, estimate(table, entry.getKey(), entry.getValue()));
+        }
+        return rows;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static long estimate(QLProperties.TableStatistics table, String fieldName, Object value) {
+        if (fieldName.endsWith("Or") && value instanceof Map) {
+            // an OR group scans the union of its branches, or the table when any branch scans it
+            long sum = 0;
+            for (Map.Entry<String, Object> branch : ((Map<String, Object>) value).entrySet()) {
+                sum += estimate(table, branch.getKey(), branch.getValue());
+                if (sum >= table.getRows()) {
+                    return table.getRows();
+                }
+            }
+            return sum;
+        }
+        if (endsWithAny(fieldName, FULL_SCAN_SUFFIXES) != null) {
+            return table.getRows();
+        }
+        String suffix = endsWithAny(fieldName, RANGE_SUFFIXES);
+        if (suffix != null) {
+            boolean indexed = table.getIndexes().containsKey(columnOf(fieldName, suffix));
+            return indexed ? Math.max(1, table.getRows() / RANGE_SELECTIVITY) : table.getRows();
+        }
+        suffix = endsWithAny(fieldName, LOOKUP_SUFFIXES);
+        Long perValue = table.getIndexes().get(suffix == null ? fieldName : columnOf(fieldName, suffix));
+        if (perValue == null) {
+            return table.getRows();
+        }
+        int values = value instanceof Collection<?> collection ? collection.size() : 1;
+        return Math.min(table.getRows(), perValue * values);
+    }
+
+    private static String endsWithAny(String fieldName, String[] suffixes) {
+        for (String suffix : suffixes) {
+            if (fieldName.length() > suffix.length() && fieldName.endsWith(suffix)) {
+                return suffix;
+            }
+        }
+        return null;
+    }
+
+    private static String columnOf(String fieldName, String suffix) {
+        return fieldName.substring(0, fieldName.length() - suffix.length());
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ *    Copyright 2022 Forb Yuan
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ *
+ */
+
+package win.doyto.query.language.doytoql;
+
+import win.doyto.query.web.response.ErrorCodeException;
+
+/**
+ * QLCountMode
+ * <p>
+ * Resolved from the <code>count</code> field of a query request.
+ * <ul>
+ *     <li>EXACT: query the page, and count the rows only when the total can not be told from the page</li>
+ *     <li>WINDOW: return the total along with every row by <code>COUNT(*) OVER()</code> in one statement</li>
+ *     <li>NONE: skip the count and return -1 as the total</li>
+ * </ul>
+ *
+ * @author f0rb on 2022-04-21
+ */
+public enum QLCountMode {
+    EXACT, WINDOW, NONE;
+
+    public static QLCountMode resolve(String count) {
+        if (count == null) {
+            return EXACT;
+        }
+        return switch (count) {
+            case "exact", "true" -> EXACT;
+            case "window" -> WINDOW;
+            case "none", "false" -> NONE;
+            default -> throw new ErrorCodeException(QLErrorCode.COUNT_MODE_NOT_SUPPORTED);
+        };
+    }
+}
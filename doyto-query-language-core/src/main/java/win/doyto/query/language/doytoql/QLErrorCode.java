@@ -37,6 +37,20 @@ public enum QLErrorCode implements ErrorCode {
     TYPE_OF_OR_FILTER_SHOULD_BE_OBJECT,
     OR_FILTER_SHOULD_CONTAIN_AT_LEAST_ONE_CONDITION,
     DATA_INTEGRITY_VIOLATION,
+    COUNT_MODE_NOT_SUPPORTED,
+    BATCH_SIZE_SHOULD_NOT_EXCEED_LIMIT,
+    DATA_SHOULD_SHARE_SAME_COLUMNS,
+    CURSOR_REQUIRES_SORT,
+    CURSOR_IS_INVALID,
+    SHARD_KEY_SHOULD_NOT_BE_NULL,
+    SORT_SHOULD_BE_COLUMNS,
+    QUERY_TIMEOUT,
+    TOO_MANY_CONCURRENT_REQUESTS,
+    REQUEST_TOO_EXPENSIVE,
+    COLUMN_IS_UNKNOWN,
+    AGGREGATE_IS_INVALID,
+    KEYS_SHOULD_BE_IN_DATA,
+    CURSOR_SORT_SHOULD_NOT_BE_NULL,
 
     ;
 
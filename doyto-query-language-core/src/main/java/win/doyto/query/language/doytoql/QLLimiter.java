@@ -0,0 +1,157 @@
+/*
+ *    Copyright 2022 Forb Yuan
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ *
+ */
+
+package win.doyto.query.language.doytoql;
+
+import win.doyto.query.sql.ColumnRegistry;
+import win.doyto.query.web.response.ErrorCode;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+/**
+ * QLLimiter
+ * <p>
+ * Bound the time of a request by its timeout capped by <code>doytoql.query-timeout</code>,
+ * and the requests in flight of a domain by a bulkhead, so that a slow or hot domain
+ * cannot hold all the connections of the pool. A request exceeding the bulkhead waits
+ * for at most <code>doytoql.bulkhead-wait</code> before being rejected.
+ * The domains neither configured nor known, which are named by the clients,
+ * share one bulkhead to bound the count of bulkheads.
+ *
+ * @author f0rb on 2022-05-02
+ */
+public class QLLimiter {
+
+    /**
+     * The key of the bulkhead shared by the unknown domains, never a name of table.
+     */
+    static final String OTHER = " other";
+
+    private final Duration maxTimeout;
+    private final Map<String, Integer> domainLimits;
+    private final int defaultLimit;
+    private final long waitNanos;
+    private final Predicate<String> knownDomain;
+    private final Map<String, Semaphore> bulkheads = new ConcurrentHashMap<>();
+
+    public QLLimiter(Duration maxTimeout, Map<String, Integer> domainLimits, int defaultLimit, Duration wait) {
+        this(maxTimeout, domainLimits, defaultLimit, wait, domain -> false);
+    }
+
+    /**
+     * @param knownDomain tell the domains to enter their own bulkheads besides the configured ones
+     */
+    public QLLimiter(Duration maxTimeout, Map<String, Integer> domainLimits, int defaultLimit, Duration wait,
+                     Predicate<String> knownDomain) {
+        this.maxTimeout = maxTimeout;
+        this.domainLimits = Map.copyOf(domainLimits);
+        this.defaultLimit = defaultLimit;
+        this.waitNanos = wait.toNanos();
+        this.knownDomain = knownDomain;
+    }
+
+    public static QLLimiter of(QLProperties qlProperties, ColumnRegistry columnRegistry) {
+        return new QLLimiter(qlProperties.getQueryTimeout(), qlProperties.getDomainMaxConcurrency(),
+                             qlProperties.getMaxConcurrency(), qlProperties.getBulkheadWait(), columnRegistry::isLoaded);
+    }
+
+    /**
+     * Resolve the timeout of the request, capped by the maximum timeout.
+     *
+     * @return {@link Duration#ZERO} when unlimited
+     */
+    public Duration timeoutOf(DoytoQLRequest request) {
+        boolean unlimited = maxTimeout.isZero() || maxTimeout.isNegative();
+        Integer requested = request.getTimeout();
+        if (requested == null || requested <= 0) {
+            return unlimited ? Duration.ZERO : maxTimeout;
+        }
+        Duration timeout = Duration.ofSeconds(requested);
+        return unlimited || timeout.compareTo(maxTimeout) < 0 ? timeout : maxTimeout;
+    }
+
+    /**
+     * Resolve the timeout of the request in seconds rounded up, as taken by JDBC.
+     *
+     * @return 0 when unlimited
+     */
+    public int timeoutSecondsOf(DoytoQLRequest request) {
+        long millis = timeoutOf(request).toMillis();
+        return (int) Math.min(Integer.MAX_VALUE, (millis + 999) / 1000);
+    }
+
+    /**
+     * Enter the bulkhead of the domain, waiting for at most the configured wait,
+     * or fail with {@link QLErrorCode#TOO_MANY_CONCURRENT_REQUESTS}.
+     */
+    public void acquire(String domain) {
+        Semaphore bulkhead = bulkheadOf(domain);
+        if (bulkhead == null) {
+            return;
+        }
+        boolean acquired;
+        if (waitNanos <= 0) {
+            acquired = bulkhead.tryAcquire();
+        } else {
+            try {
+                acquired = bulkhead.tryAcquire(waitNanos, TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                acquired = false;
+            }
+        }
+        ErrorCode.assertTrue(acquired, QLErrorCode.TOO_MANY_CONCURRENT_REQUESTS);
+    }
+
+    /**
+     * Enter the bulkhead of the domain without waiting,
+     * or fail with {@link QLErrorCode#TOO_MANY_CONCURRENT_REQUESTS}.
+     */
+    public void tryAcquire(String domain) {
+        Semaphore bulkhead = bulkheadOf(domain);
+        ErrorCode.assertTrue(bulkhead == null || bulkhead.tryAcquire(), QLErrorCode.TOO_MANY_CONCURRENT_REQUESTS);
+    }
+
+    public void release(String domain) {
+        Semaphore bulkhead = bulkheadOf(domain);
+        if (bulkhead != null) {
+            bulkhead.release();
+        }
+    }
+
+    /**
+     * @return the count of requests which can still enter the bulkhead of the domain, -1 when unlimited
+     */
+    public int availablePermits(String domain) {
+        Semaphore bulkhead = bulkheadOf(domain);
+        return bulkhead == null ? -1 : bulkhead.availablePermits();
+    }
+
+    private Semaphore bulkheadOf(String domain) {
+        int limit = domainLimits.getOrDefault(domain, defaultLimit);
+        if (limit <= 0) {
+            return null;
+        }
+        String key = domainLimits.containsKey(domain) || knownDomain.test(domain) ? domain : OTHER;
+        return bulkheads.computeIfAbsent(key, k -> new Semaphore(limit));
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ *    Copyright 2022 Forb Yuan
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ *
+ */
+
+package win.doyto.query.language.doytoql;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import win.doyto.query.sql.SqlAndArgs;
+import win.doyto.query.web.response.ErrorCodeException;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * QLMetrics
+ * <p>
+ * Record the time of each stage of a request as the timer <code>doytoql.stage</code>,
+ * and the rows returned, the count of arguments and the length of SQL as distributions,
+ * tagged by the operation, the domain and the outcome, which is <code>success</code>,
+ * the name of a {@link QLErrorCode} or the simple name of the exception.
+ * {@link #NOOP} records nothing and costs a branch per call.
+ *
+ * @author f0rb on 2022-05-03
+ */
+public class QLMetrics {
+
+    public static final QLMetrics NOOP = new QLMetrics(null);
+    public static final String SUCCESS = "success";
+
+    /**
+     * Domains beyond the limit are tagged as <code>other</code> to bound the count of meters.
+     */
+    static final int MAX_DOMAINS = 256;
+    /**
+     * Operations sent by the clients out of these are tagged as <code>other</code>.
+     */
+    private static final Set<String> OPERATIONS = Set.of("query", "aggregate", "exists", "insert", "upsert", "update", "delete");
+
+    public enum Stage {
+        REQUEST,
+        DESERIALIZE,
+        BUILD,
+        EXECUTE,
+        COUNT,
+        MAP,
+        SERIALIZE;
+
+        private final String tag = name().toLowerCase(Locale.ROOT);
+    }
+
+    private final MeterRegistry registry;
+    private final Map<TimerKey, Timer> timers = new ConcurrentHashMap<>();
+    private final Map<SummaryKey, DistributionSummary> summaries = new ConcurrentHashMap<>();
+    private final Set<String> domains = ConcurrentHashMap.newKeySet();
+
+    public QLMetrics(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    public boolean isEnabled() {
+        return registry != null;
+    }
+
+    /**
+     * @return the start time to pass to {@link #record}, 0 when disabled
+     */
+    public long start() {
+        return registry == null ? 0 : System.nanoTime();
+    }
+
+    public void record(Stage stage, DoytoQLRequest request, String outcome, long start) {
+        if (registry != null) {
+            recordNanos(stage, request, outcome, System.nanoTime() - start);
+        }
+    }
+
+    public void recordNanos(Stage stage, DoytoQLRequest request, String outcome, long nanos) {
+        if (registry == null) {
+            return;
+        }
+        TimerKey key = new TimerKey(stage, operationOf(request), domainOf(request), outcome);
+        timers.computeIfAbsent(key, k -> Timer.builder("doytoql.stage")
+                                             .tag("stage", k.stage.tag)
+                                             .tag("operation", k.operation)
+                                             .tag("domain", k.domain)
+                                             .tag("outcome", k.outcome)
+                                             .register(registry))
+              .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Time the supplier as the stage, tagged by the outcome.
+     */
+    public <T> T time(Stage stage, DoytoQLRequest request, Supplier<T> supplier) {
+        if (registry == null) {
+            return supplier.get();
+        }
+        long start = System.nanoTime();
+        try {
+            T result = supplier.get();
+            record(stage, request, SUCCESS, start);
+            return result;
+        } catch (RuntimeException e) {
+            record(stage, request, outcomeOf(e), start);
+            throw e;
+        }
+    }
+
+    public void recordSql(DoytoQLRequest request, SqlAndArgs sqlAndArgs) {
+        if (registry != null) {
+            summary("doytoql.args", request).record(sqlAndArgs.getArgs().length);
+            summary("doytoql.sql.length", request).record(sqlAndArgs.getSql().length());
+        }
+    }
+
+    public void recordRows(DoytoQLRequest request, int rows) {
+        if (registry != null) {
+            summary("doytoql.rows", request).record(rows);
+        }
+    }
+
+    private DistributionSummary summary(String name, DoytoQLRequest request) {
+        SummaryKey key = new SummaryKey(name, operationOf(request), domainOf(request));
+        return summaries.computeIfAbsent(key, k -> DistributionSummary.builder(k.name)
+                                                                      .tag("operation", k.operation)
+                                                                      .tag("domain", k.domain)
+                                                                      .register(registry));
+    }
+
+    public static String outcomeOf(Throwable e) {
+        return e instanceof ErrorCodeException ? e.getMessage() : e.getClass().getSimpleName();
+    }
+
+    private static String operationOf(DoytoQLRequest request) {
+        if (request == null || request.getOperation() == null) {
+            return "unknown";
+        }
+        return OPERATIONS.contains(request.getOperation()) ? request.getOperation() : "other";
+    }
+
+    private String domainOf(DoytoQLRequest request) {
+        if (request == null || request.getDomain() == null) {
+            return "unknown";
+        }
+        String domain = request.getDomain();
+        if (domains.contains(domain) || (domains.size() < MAX_DOMAINS && domains.add(domain))) {
+            return domain;
+        }
+        return "other";
+    }
+
+    private record TimerKey(Stage stage, String operation, String domain, String outcome) {
+    }
+
+    private record SummaryKey(String name, String operation, String domain) {
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ *    Copyright 2022 Forb Yuan
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ *
+ */
+
+package win.doyto.query.language.doytoql;
+
+import lombok.Getter;
+import lombok.Setter;
+import win.doyto.query.sql.SqlTemplateCache;
+
+import java.time.Duration;
+import java.util.*;
+
+/**
+ * QLProperties
+ * <p>
+ * Settings of DoytoQL bound from the prefix <code>doytoql</code>.
+ *
+ * @author f0rb on 2022-04-20
+ */
+@Getter
+@Setter
+public class QLProperties {
+    /**
+     * The maximum count of SQL templates cached by request shape, 0 to disable.
+     */
+    private int templateCacheSize = SqlTemplateCache.DEFAULT_MAXIMUM_SIZE;
+    /**
+     * Pad the values of In/NotIn filters to the next power of two,
+     * so that lists of variable lengths share a few statements.
+     */
+    private boolean inListPadding = false;
+    /**
+     * The count of rows fetched from database at a time in the streaming mode.
+     */
+    private int streamFetchSize = 1000;
+    /**
+     * The count of rows in each record batch of an Arrow response.
+     */
+    private int arrowBatchSize = 4096;
+    /**
+     * The maximum count of requests in one batch.
+     */
+    private int batchMaxSize = 100;
+    /**
+     * The maximum count of queries executed at the same time for one batch.
+     */
+    private int batchParallelism = 8;
+    /**
+     * The count of rows sent to database in one batch for a multi-row insert or an update by keys,
+     * 0 to send all rows in one batch.
+     */
+    private int insertBatchSize = 500;
+    /**
+     * The maximum count of rows updated by keys in one statement of CASE expressions,
+     * over which the rows are updated in batch, 0 to always update in batch.
+     */
+    private int updateCaseMaxRows = 50;
+    /**
+     * The domains whose query results are cached, empty to disable the result cache.
+     */
+    private Set<String> resultCacheDomains = new HashSet<>();
+    /**
+     * The maximum count of query results cached.
+     */
+    private int resultCacheMaxEntries = 1000;
+    /**
+     * The maximum bytes estimated for the cached query results.
+     */
+    private long resultCacheMaxBytes = 16L * 1024 * 1024;
+    /**
+     * The time to live of a cached query result.
+     */
+    private Duration resultCacheTtl = Duration.ofMinutes(1);
+    /**
+     * The databases to spread the sharded domains across.
+     */
+    private List<DatabaseProperties> shards = new ArrayList<>();
+    /**
+     * The shard key of each sharded domain, keyed by domain.
+     */
+    private Map<String, String> shardKeys = new HashMap<>();
+    /**
+     * The count of threads querying the shards at the same time.
+     */
+    private int shardPoolSize = 32;
+    /**
+     * The read replicas to send the queries to, while the writes go to the primary database.
+     */
+    private List<DatabaseProperties> replicas = new ArrayList<>();
+    /**
+     * How to pick a replica for a query.
+     */
+    private QLReplicaBalancer.Strategy replicaBalance = QLReplicaBalancer.Strategy.ROUND_ROBIN;
+    /**
+     * How long the queries of a session go to the primary database after its last write, 0 to disable.
+     */
+    private Duration readYourWritesWindow = Duration.ZERO;
+    /**
+     * The header identifying the session of a client for read-your-writes.
+     */
+    private String sessionHeader = "X-Session-Id";
+    /**
+     * The maximum time of a request, also applied to the request without a timeout, 0 to disable.
+     */
+    private Duration queryTimeout = Duration.ofSeconds(30);
+    /**
+     * The maximum count of requests in flight for each domain, 0 for unlimited.
+     */
+    private int maxConcurrency = 0;
+    /**
+     * The maximum count of requests in flight for a domain, overriding max-concurrency, keyed by domain.
+     */
+    private Map<String, Integer> domainMaxConcurrency = new HashMap<>();
+    /**
+     * How long a request waits for the bulkhead of its domain before being rejected, 0 to reject immediately.
+     */
+    private Duration bulkheadWait = Duration.ZERO;
+    /**
+     * Record the time of each stage of a request with Micrometer.
+     */
+    private boolean metricsEnabled = false;
+    /**
+     * The time over which a statement is logged as slow, 0 to disable.
+     */
+    private Duration slowQueryThreshold = Duration.ofSeconds(1);
+    /**
+     * Run EXPLAIN for a slow query the first time it is seen.
+     */
+    private boolean slowQueryExplain = false;
+    /**
+     * The maximum count of slow statements kept for the statistics.
+     */
+    private int slowQueryMaxStatements = 100;
+    /**
+     * Handle the requests and run the pools of DoytoQL on virtual threads, which requires Java 21 (MVC).
+     */
+    private boolean virtualThreads = false;
+    /**
+     * The statistics of the tables guarded by the estimated cost of the requests, keyed by domain.
+     */
+    private Map<String, TableStatistics> costTables = new HashMap<>();
+    /**
+     * The rows estimated to scan over which a query is paged by cost-default-page-size when unpaged
+     * and returns no count, 0 to disable.
+     */
+    private long costRewriteRows = 10000;
+    /**
+     * The rows estimated to scan over which a request is rejected, 0 to disable.
+     */
+    private long costRejectRows = 0;
+    /**
+     * The page size of an unpaged query rewritten by its cost.
+     */
+    private int costDefaultPageSize = 100;
+    /**
+     * Load the columns of the tables at startup, and reject the columns of a query missing from its table.
+     */
+    private boolean columnWhitelist = false;
+    /**
+     * The columns selected by a query without columns or with *, keyed by domain.
+     */
+    private Map<String, List<String>> defaultColumns = new HashMap<>();
+    /**
+     * Expose the endpoints of the statistics and the columns, which should be kept from the public.
+     */
+    private boolean adminEndpoints = false;
+
+    /**
+     * @return the count of rows in one batch, {@link Integer#MAX_VALUE} for all rows when not positive
+     */
+    public int getInsertBatchSize() {
+        return insertBatchSize > 0 ? insertBatchSize : Integer.MAX_VALUE;
+    }
+
+    @Getter
+    @Setter
+    public static class DatabaseProperties {
+        private String url;
+        private String username;
+        private String password;
+    }
+
+    @Getter
+    @Setter
+    public static class TableStatistics {
+        /**
+         * The estimated count of rows in the table.
+         */
+        private long rows;
+        /**
+         * The average count of rows per value of each indexed column, 1 for a unique column.
+         * Only the leading column of an index counts.
+         */
+        private Map<String, Long> indexes = new HashMap<>();
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ *    Copyright 2022 Forb Yuan
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ *
+ */
+
+package win.doyto.query.language.doytoql;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * QLReplicaBalancer
+ * <p>
+ * Pick a replica for a query, either in turn or the one with
+ * the fewest queries in flight. Every {@link #acquire()} should be
+ * followed by a {@link #release(int)} once the query is done.
+ *
+ * @author f0rb on 2022-05-01
+ */
+public class QLReplicaBalancer {
+
+    public enum Strategy {
+        ROUND_ROBIN,
+        LEAST_OUTSTANDING
+    }
+
+    private final Strategy strategy;
+    private final AtomicIntegerArray outstanding;
+    private final AtomicInteger next = new AtomicInteger();
+
+    public QLReplicaBalancer(Strategy strategy, int replicaCount) {
+        this.strategy = strategy;
+        this.outstanding = new AtomicIntegerArray(replicaCount);
+    }
+
+    public int acquire() {
+        int replicaCount = outstanding.length();
+        int start = Math.floorMod(next.getAndIncrement(), replicaCount);
+        int replica = start;
+        if (strategy == Strategy.LEAST_OUTSTANDING) {
+            // start from the next replica in turn to spread the ties
+            for (int i = 1; i < replicaCount; i++) {
+                int candidate = (start + i) % replicaCount;
+                if (outstanding.get(candidate) < outstanding.get(replica)) {
+                    replica = candidate;
+                }
+            }
+        }
+        outstanding.incrementAndGet(replica);
+        return replica;
+    }
+
+    public void release(int replica) {
+        outstanding.decrementAndGet(replica);
+    }
+
+    public int getOutstanding(int replica) {
+        return outstanding.get(replica);
+    }
+}
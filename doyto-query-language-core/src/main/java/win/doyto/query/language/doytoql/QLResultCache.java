@@ -0,0 +1,198 @@
+/*
+ *    Copyright 2022 Forb Yuan
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ *
+ */
+
+package win.doyto.query.language.doytoql;
+
+import win.doyto.query.sql.SqlAndArgs;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+
+/**
+ * QLResultCache
+ * <p>
+ * A bounded cache of query results keyed by the domain, the SQL and the arguments,
+ * enabled only for the configured domains. Entries expire after the TTL,
+ * the eldest entry is evicted first once the count or the estimated bytes
+ * exceed the limits, and a write to a domain drops all its entries.
+ *
+ * @author f0rb on 2022-04-28
+ */
+public class QLResultCache {
+
+    private final Set<String> domains;
+    private final int maximumSize;
+    private final long maximumWeight;
+    private final long ttlNanos;
+
+    private final Map<Key, Entry> entries = new ConcurrentHashMap<>();
+    private final Queue<Key> keys = new ConcurrentLinkedQueue<>();
+    private final Map<String, AtomicLong> generations = new ConcurrentHashMap<>();
+    private final AtomicLong weight = new AtomicLong();
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+    private final LongAdder invalidationCount = new LongAdder();
+
+    public QLResultCache(Collection<String> domains, int maximumSize, long maximumWeight, Duration ttl) {
+        this.domains = Set.copyOf(domains);
+        this.maximumSize = maximumSize;
+        this.maximumWeight = maximumWeight;
+        this.ttlNanos = ttl.toNanos();
+    }
+
+    public static QLResultCache of(QLProperties qlProperties) {
+        return new QLResultCache(qlProperties.getResultCacheDomains(), qlProperties.getResultCacheMaxEntries(),
+                                 qlProperties.getResultCacheMaxBytes(), qlProperties.getResultCacheTtl());
+    }
+
+    public boolean isEnabled(String domain) {
+        return domains.contains(domain);
+    }
+
+    /**
+     * Return the cached result, or load and cache it when the domain is enabled.
+     *
+     * @param weigher estimates the bytes of the result
+     */
+    public <T> T get(String domain, SqlAndArgs sqlAndArgs, Supplier<T> loader, ToLongFunction<? super T> weigher) {
+        if (!isEnabled(domain)) {
+            return loader.get();
+        }
+        T value = getIfPresent(domain, sqlAndArgs);
+        if (value == null) {
+            long generation = generation(domain);
+            value = loader.get();
+            put(domain, sqlAndArgs, generation, value, weigher.applyAsLong(value));
+        }
+        return value;
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> T getIfPresent(String domain, SqlAndArgs sqlAndArgs) {
+        Entry entry = entries.get(new Key(domain, sqlAndArgs));
+        if (entry == null || entry.expireAt - System.nanoTime() <= 0 || entry.generation != generation(domain)) {
+            missCount.increment();
+            return null;
+        }
+        hitCount.increment();
+        return (T) entry.value;
+    }
+
+    /**
+     * The generation of a domain is increased by every invalidation,
+     * take it before loading a result to pass to {@link #put}.
+     */
+    public long generation(String domain) {
+        AtomicLong generation = generations.get(domain);
+        return generation == null ? 0 : generation.get();
+    }
+
+    /**
+     * Cache the result unless the domain was invalidated since the generation was taken.
+     */
+    public void put(String domain, SqlAndArgs sqlAndArgs, long generation, Object value, long bytes) {
+        if (value == null || bytes > maximumWeight || generation != generation(domain)) {
+            return;
+        }
+        Key key = new Key(domain, sqlAndArgs);
+        Entry previous = entries.put(key, new Entry(value, bytes, generation, System.nanoTime() + ttlNanos));
+        if (previous == null) {
+            keys.offer(key);
+        } else {
+            weight.addAndGet(-previous.weight);
+        }
+        weight.addAndGet(bytes);
+        evictIfNecessary();
+    }
+
+    public void invalidate(String domain) {
+        if (!isEnabled(domain)) {
+            return;
+        }
+        generations.computeIfAbsent(domain, d -> new AtomicLong()).incrementAndGet();
+        invalidationCount.increment();
+        keys.removeIf(key -> key.domain.equals(domain));
+        entries.keySet().stream().filter(key -> key.domain.equals(domain)).forEach(this::remove);
+    }
+
+    private void evictIfNecessary() {
+        while (entries.size() > maximumSize || weight.get() > maximumWeight) {
+            Key eldest = keys.poll();
+            if (eldest == null) {
+                break;
+            }
+            if (remove(eldest)) {
+                evictionCount.increment();
+            }
+        }
+    }
+
+    private boolean remove(Key key) {
+        Entry entry = entries.remove(key);
+        if (entry != null) {
+            weight.addAndGet(-entry.weight);
+        }
+        return entry != null;
+    }
+
+    public Statistics getStatistics() {
+        return new Statistics(entries.size(), weight.get(), hitCount.sum(), missCount.sum(), evictionCount.sum(), invalidationCount.sum());
+    }
+
+    /**
+     * Estimate the bytes of a result made of maps, collections and scalar values.
+     */
+    public static long weigh(Object value) {
+        if (value == null) {
+            return 0;
+        } else if (value instanceof CharSequence str) {
+            return 40L + 2L * str.length();
+        } else if (value instanceof Map<?, ?> map) {
+            long bytes = 48;
+            for (Map.Entry<?, ?> e : map.entrySet()) {
+                bytes += 32 + weigh(e.getKey()) + weigh(e.getValue());
+            }
+            return bytes;
+        } else if (value instanceof Collection<?> collection) {
+            long bytes = 40;
+            for (Object element : collection) {
+                bytes += 8 + weigh(element);
+            }
+            return bytes;
+        }
+        return 24;
+    }
+
+    private record Key(String domain, String sql, List<Object> args) {
+        Key(String domain, SqlAndArgs sqlAndArgs) {
+            this(domain, sqlAndArgs.getSql(), Arrays.asList(sqlAndArgs.getArgs()));
+        }
+    }
+
+    private record Entry(Object value, long weight, long generation, long expireAt) {
+    }
+
+    public record Statistics(int size, long bytes, long hitCount, long missCount, long evictionCount, long invalidationCount) {
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ *    Copyright 2022 Forb Yuan
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ *
+ */
+
+package win.doyto.query.language.doytoql;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * QLSessionPins
+ * <p>
+ * Pin a session to the primary database for a window after its write,
+ * so that its queries read its own writes regardless of the replication lag.
+ * The pins are kept in memory, which requires sticky sessions across instances.
+ *
+ * @author f0rb on 2022-05-01
+ */
+public class QLSessionPins {
+
+    private static final int PURGE_INTERVAL = 1024;
+
+    private final long windowNanos;
+    private final Map<String, Long> pins = new ConcurrentHashMap<>();
+    private final AtomicInteger pinCount = new AtomicInteger();
+
+    public QLSessionPins(Duration window) {
+        this.windowNanos = window.toNanos();
+    }
+
+    public void pin(String session) {
+        if (session == null || windowNanos <= 0) {
+            return;
+        }
+        long now = System.nanoTime();
+        pins.put(session, now + windowNanos);
+        if (pinCount.incrementAndGet() % PURGE_INTERVAL == 0) {
+            pins.values().removeIf(expireAt -> expireAt - now <= 0);
+        }
+    }
+
+    public boolean isPinned(String session) {
+        if (session == null) {
+            return false;
+        }
+        Long expireAt = pins.get(session);
+        if (expireAt == null) {
+            return false;
+        }
+        if (expireAt - System.nanoTime() > 0) {
+            return true;
+        }
+        pins.remove(session, expireAt);
+        return false;
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ *    Copyright 2022 Forb Yuan
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ *
+ */
+
+package win.doyto.query.language.doytoql;
+
+import win.doyto.query.web.response.ErrorCode;
+
+import java.math.BigDecimal;
+import java.util.*;
+import java.util.regex.Pattern;
+import java.util.stream.IntStream;
+
+/**
+ * QLShardRouter
+ * <p>
+ * Route the requests of a sharded domain by the value of its shard key:
+ * a row goes to the shard <code>hash(key) mod count</code>, where a key of an integral value
+ * is hashed as a long whether it is a number or a string, and a filter
+ * on the key, either equal or In, narrows the shards to execute on.
+ * Requests without the key in filters are sent to all shards.
+ *
+ * @author f0rb on 2022-04-30
+ */
+public class QLShardRouter {
+
+    private static final Pattern NUMBER_PTN = Pattern.compile("-?\\d+(\\.0*)?");
+
+    private final Map<String, String> shardKeys;
+    private final int shardCount;
+
+    public QLShardRouter(Map<String, String> shardKeys, int shardCount) {
+        this.shardKeys = Map.copyOf(shardKeys);
+        this.shardCount = shardCount;
+    }
+
+    public int getShardCount() {
+        return shardCount;
+    }
+
+    public boolean isSharded(String domain) {
+        return shardCount > 0 && shardKeys.containsKey(domain);
+    }
+
+    public int shardOf(Object keyValue) {
+        return (int) Math.floorMod(hashOf(keyValue), (long) shardCount);
+    }
+
+    private static long hashOf(Object keyValue) {
+        String text = keyValue instanceof BigDecimal decimal ? decimal.toPlainString() : String.valueOf(keyValue);
+        if (keyValue instanceof Number || NUMBER_PTN.matcher(text).matches()) {
+            try {
+                // the same key in 1, 1L, 1.0 and "1" goes to the same shard
+                return new BigDecimal(text).longValueExact();
+            } catch (ArithmeticException | NumberFormatException e) {
+                // hashed as a string below
+            }
+        }
+        return text.hashCode();
+    }
+
+    /**
+     * Resolve the shards to execute a query/update/delete request on.
+     */
+    public int[] route(DoytoQLRequest request) {
+        String shardKey = shardKeys.get(request.getDomain());
+        LinkedHashMap<String, Object> filters = request.getFilters();
+        if (filters != null) {
+            Object value = filters.get(shardKey);
+            if (value != null && !(value instanceof Collection || value instanceof Map)) {
+                return new int[]{shardOf(value)};
+            }
+            if (filters.get(shardKey + "In") instanceof Collection<?> values && !values.isEmpty()) {
+                return values.stream().mapToInt(this::shardOf).distinct().sorted().toArray();
+            }
+        }
+        return IntStream.range(0, shardCount).toArray();
+    }
+
+    /**
+     * Split the rows of an insert or upsert request by shard.
+     *
+     * @return the requests to execute keyed by shard
+     */
+    public Map<Integer, DoytoQLRequest> splitData(DoytoQLRequest request) {
+        String shardKey = shardKeys.get(request.getDomain());
+        ErrorCode.assertNotNull(request.getData(), QLErrorCode.DATA_SHOULD_NOT_BE_NULL);
+        Map<Integer, List<LinkedHashMap<String, Object>>> dataByShard = new TreeMap<>();
+        for (LinkedHashMap<String, Object> datum : request.getData()) {
+            Object keyValue = datum.get(shardKey);
+            ErrorCode.assertNotNull(keyValue, QLErrorCode.SHARD_KEY_SHOULD_NOT_BE_NULL);
+            dataByShard.computeIfAbsent(shardOf(keyValue), shard -> new ArrayList<>()).add(datum);
+        }
+        Map<Integer, DoytoQLRequest> requests = new TreeMap<>();
+        dataByShard.forEach((shard, data) -> {
+            DoytoQLRequest shardRequest = new DoytoQLRequest();
+            shardRequest.setOperation(request.getOperation());
+            shardRequest.setDomain(request.getDomain());
+            shardRequest.setData(data);
+            shardRequest.setKeys(request.getKeys());
+            requests.put(shard, shardRequest);
+        });
+        return requests;
+    }
+}
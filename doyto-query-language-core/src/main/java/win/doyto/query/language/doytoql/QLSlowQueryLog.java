@@ -0,0 +1,173 @@
+/*
+ *    Copyright 2022 Forb Yuan
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ *
+ */
+
+package win.doyto.query.language.doytoql;
+
+import lombok.extern.slf4j.Slf4j;
+import win.doyto.query.config.GlobalConfiguration;
+import win.doyto.query.sql.SqlAndArgs;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+/**
+ * QLSlowQueryLog
+ * <p>
+ * Log the statements slower than <code>doytoql.slow-query-threshold</code> with the SQL,
+ * the types of the arguments instead of their values, the domain and the time,
+ * and aggregate them by the SQL with the lists of placeholders collapsed.
+ * Once the statements exceed the maximum, the one with the smallest maximum time is dropped.
+ *
+ * @author f0rb on 2022-05-04
+ */
+@Slf4j
+public class QLSlowQueryLog {
+
+    private static final Pattern PLACEHOLDERS = Pattern.compile("\\?(\\s*,\\s*\\?)+");
+
+    private final long thresholdNanos;
+    private final boolean explain;
+    private final int maximumSize;
+    private final Map<String, SlowStatementStats> statements = new ConcurrentHashMap<>();
+
+    public QLSlowQueryLog(Duration threshold, boolean explain, int maximumSize) {
+        this.thresholdNanos = threshold.toNanos();
+        this.explain = explain;
+        this.maximumSize = maximumSize;
+    }
+
+    public static QLSlowQueryLog of(QLProperties qlProperties) {
+        return new QLSlowQueryLog(qlProperties.getSlowQueryThreshold(), qlProperties.isSlowQueryExplain(),
+                                  qlProperties.getSlowQueryMaxStatements());
+    }
+
+    /**
+     * Record the statement when it is slow.
+     *
+     * @return true when the statement is seen slow for the first time and should be explained
+     */
+    public boolean record(DoytoQLRequest request, SqlAndArgs sqlAndArgs, long nanos) {
+        if (thresholdNanos <= 0 || nanos < thresholdNanos) {
+            return false;
+        }
+        String sql = normalize(sqlAndArgs.getSql());
+        String args = summarizeArgs(sqlAndArgs.getArgs());
+        log.warn("Slow statement for {} took {} ms: {} args: {}", request.getDomain(), nanos / 1_000_000, sql, args);
+
+        SlowStatementStats stats = statements.computeIfAbsent(sql, key -> new SlowStatementStats(request.getDomain()));
+        stats.count.increment();
+        stats.totalNanos.add(nanos);
+        stats.maxNanos.accumulate(nanos);
+        stats.lastArgs = args;
+        evictIfNecessary();
+        return explain && explainSqlOf(sqlAndArgs.getSql()) != null && stats.explained.compareAndSet(false, true);
+    }
+
+    public void recordPlan(SqlAndArgs sqlAndArgs, String plan) {
+        SlowStatementStats stats = statements.get(normalize(sqlAndArgs.getSql()));
+        if (stats != null) {
+            stats.plan = plan;
+        }
+        log.warn("Plan of slow statement: {}\n{}", sqlAndArgs.getSql(), plan);
+    }
+
+    /**
+     * List the slow statements with the slowest first.
+     */
+    public List<SlowStatement> getSlowStatements(int limit) {
+        return statements.entrySet().stream()
+                         .map(entry -> entry.getValue().toSlowStatement(entry.getKey()))
+                         .sorted(Comparator.comparingDouble(SlowStatement::maxMillis).reversed())
+                         .limit(limit)
+                         .toList();
+    }
+
+    private void evictIfNecessary() {
+        while (statements.size() > maximumSize) {
+            statements.entrySet().stream()
+                      .min(Comparator.comparingLong(entry -> entry.getValue().maxNanos.get()))
+                      .ifPresent(entry -> statements.remove(entry.getKey(), entry.getValue()));
+        }
+    }
+
+    static String normalize(String sql) {
+        return PLACEHOLDERS.matcher(sql).replaceAll("?...");
+    }
+
+    /**
+     * Summarize the arguments by their types, so that no value is logged.
+     */
+    static String summarizeArgs(Object[] args) {
+        StringJoiner joiner = new StringJoiner(", ", "[", "]");
+        for (Object arg : args) {
+            if (arg == null) {
+                joiner.add("null");
+            } else if (arg instanceof CharSequence str) {
+                joiner.add("String(" + str.length() + ")");
+            } else if (arg instanceof Collection<?> collection) {
+                joiner.add(arg.getClass().getSimpleName() + "(" + collection.size() + ")");
+            } else {
+                joiner.add(arg.getClass().getSimpleName());
+            }
+        }
+        return joiner.toString();
+    }
+
+    /**
+     * Build the statement to explain the query on the dialect in use.
+     *
+     * @return null when the statement is not a query or the dialect has no <code>EXPLAIN</code>
+     */
+    public static String explainSqlOf(String sql) {
+        return explainSqlOf(sql, GlobalConfiguration.dialect().getClass().getSimpleName());
+    }
+
+    static String explainSqlOf(String sql, String dialectName) {
+        String name = dialectName.toLowerCase(Locale.ROOT);
+        if (!sql.startsWith("SELECT") || name.contains("oracle") || name.contains("sqlserver")) {
+            return null;
+        }
+        return "EXPLAIN " + sql;
+    }
+
+    public record SlowStatement(String sql, String domain, long count, double totalMillis, double maxMillis,
+                                String lastArgs, String plan) {
+    }
+
+    private static class SlowStatementStats {
+        private final String domain;
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+        private final AtomicBoolean explained = new AtomicBoolean();
+        private volatile String lastArgs;
+        private volatile String plan;
+
+        private SlowStatementStats(String domain) {
+            this.domain = domain;
+        }
+
+        private SlowStatement toSlowStatement(String sql) {
+            return new SlowStatement(sql, domain, count.sum(), totalNanos.sum() / 1e6, maxNanos.get() / 1e6, lastArgs, plan);
+        }
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ *    Copyright 2022 Forb Yuan
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ *
+ */
+
+package win.doyto.query.language.doytoql;
+
+import lombok.experimental.UtilityClass;
+
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * QLThreads
+ * <p>
+ * Creates the executors of DoytoQL on platform threads or on virtual threads.
+ * The virtual threads are looked up reflectively, so that the modules still
+ * compile for Java 17 and only require Java 21 when they are enabled.
+ *
+ * @author f0rb on 2022-05-05
+ */
+@UtilityClass
+public class QLThreads {
+
+    private static final Method OF_VIRTUAL = lookupOfVirtual();
+
+    private static Method lookupOfVirtual() {
+        try {
+            return Thread.class.getMethod("ofVirtual");
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    public static boolean isVirtualThreadSupported() {
+        return OF_VIRTUAL != null;
+    }
+
+    /**
+     * Create a factory of virtual threads named by the prefix and a counter.
+     *
+     * @throws IllegalStateException when the runtime is older than Java 21
+     */
+    public static ThreadFactory virtualThreadFactory(String prefix) {
+        if (!isVirtualThreadSupported()) {
+            throw new IllegalStateException("Virtual threads require Java 21 or later, running on " + Runtime.version());
+        }
+        try {
+            Object builder = OF_VIRTUAL.invoke(null);
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, prefix, 0L);
+            return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Failed to create the factory of virtual threads", e);
+        }
+    }
+
+    /**
+     * Create an executor starting a new virtual thread for each task.
+     */
+    public static ExecutorService newVirtualThreadPerTaskExecutor(String prefix) {
+        ThreadFactory threadFactory = virtualThreadFactory(prefix);
+        try {
+            return (ExecutorService) Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class)
+                                                    .invoke(null, threadFactory);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Failed to create the executor of virtual threads", e);
+        }
+    }
+
+    /**
+     * Create an executor running at most nThreads tasks at the same time:
+     * a fixed pool of platform threads, or a new virtual thread for each task
+     * which waits on a semaphore of nThreads permits, since virtual threads
+     * are not meant to be pooled. The bound still limits the connections taken.
+     */
+    public static ExecutorService newBoundedExecutor(int nThreads, boolean virtual, String prefix) {
+        if (virtual) {
+            return new BoundedExecutorService(newVirtualThreadPerTaskExecutor(prefix), nThreads);
+        }
+        return Executors.newFixedThreadPool(nThreads);
+    }
+
+    private static final class BoundedExecutorService extends AbstractExecutorService {
+
+        private final ExecutorService delegate;
+        private final Semaphore permits;
+
+        private BoundedExecutorService(ExecutorService delegate, int nThreads) {
+            this.delegate = delegate;
+            this.permits = new Semaphore(nThreads);
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            delegate.execute(() -> {
+                try {
+                    permits.acquire();
+                } catch (InterruptedException e) {
+                    // cancelled by shutdownNow before it started
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                try {
+                    command.run();
+                } finally {
+                    permits.release();
+                }
+            });
+        }
+
+        @Override
+        public void shutdown() {
+            delegate.shutdown();
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            return delegate.shutdownNow();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return delegate.isShutdown();
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return delegate.isTerminated();
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+            return delegate.awaitTermination(timeout, unit);
+        }
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ *    Copyright 2022 Forb Yuan
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ *
+ */
+
+package win.doyto.query.language.doytoql;
+
+import lombok.experimental.UtilityClass;
+import win.doyto.query.config.GlobalConfiguration;
+import win.doyto.query.core.PageQuery;
+
+import java.util.List;
+import java.util.Map;
+
+import static win.doyto.query.sql.QLBuilder.WINDOW_TOTAL_LABEL;
+
+/**
+ * QLTotalHelper
+ *
+ * @author f0rb on 2022-04-21
+ */
+@UtilityClass
+public class QLTotalHelper {
+
+    public static final long UNKNOWN_TOTAL = -1;
+
+    /**
+     * Tell the total from a page which came back short without a count statement.
+     *
+     * @return the total, or {@link #UNKNOWN_TOTAL} when a count is required
+     */
+    public static long totalOfShortPage(PageQuery pageQuery, int size) {
+        if (pageQuery == null || !pageQuery.needPaging()) {
+            return size;
+        }
+        long offset = GlobalConfiguration.calcOffset(pageQuery);
+        if (size < pageQuery.getPageSize() && (size > 0 || offset == 0)) {
+            return offset + size;
+        }
+        return UNKNOWN_TOTAL;
+    }
+
+    /**
+     * Remove the window column {@value win.doyto.query.sql.QLBuilder#WINDOW_TOTAL_LABEL} from the rows.
+     *
+     * @return the total carried by the rows, or {@link #UNKNOWN_TOTAL} when no row returned
+     */
+    public static long extractWindowTotal(List<? extends Map<String, Object>> rows) {
+        long total = UNKNOWN_TOTAL;
+        for (Map<String, Object> row : rows) {
+            Object value = row.remove(WINDOW_TOTAL_LABEL);
+            if (total == UNKNOWN_TOTAL && value instanceof Number number) {
+                total = number.longValue();
+            }
+        }
+        return total;
+    }
+}
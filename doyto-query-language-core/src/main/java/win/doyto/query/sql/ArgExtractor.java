@@ -0,0 +1,76 @@
+/*
+ *    Copyright 2022 Forb Yuan
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ *
+ */
+
+package win.doyto.query.sql;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+
+import static win.doyto.query.sql.SqlQuerySuffix.buildConditionForField;
+
+/**
+ * ArgExtractor
+ * <p>
+ * Describes how the arguments of one filter condition are read from
+ * the filter value when a cached {@link SqlTemplate} is reused.
+ *
+ * @author f0rb on 2022-04-20
+ */
+enum ArgExtractor {
+    NONE,
+    VALUE,
+    ELEMENTS,
+    REBUILD;
+
+    void extract(String fieldName, Object value, List<Object> args) {
+        switch (this) {
+            case VALUE -> args.add(value);
+            case ELEMENTS -> args.addAll((Collection<?>) value);
+            case REBUILD -> buildConditionForField(fieldName, args, value);
+            default -> {
+                // the condition takes no argument
+            }
+        }
+    }
+
+    static ArgExtractor detect(Object value, List<Object> appended) {
+        if (appended.isEmpty()) {
+            return NONE;
+        }
+        if (appended.size() == 1 && appended.get(0) == value) {
+            return VALUE;
+        }
+        if (value instanceof Collection<?> collection && isSameElements(collection, appended)) {
+            return ELEMENTS;
+        }
+        return REBUILD;
+    }
+
+    private static boolean isSameElements(Collection<?> collection, List<Object> appended) {
+        if (collection.size() != appended.size()) {
+            return false;
+        }
+        Iterator<?> iterator = collection.iterator();
+        for (Object arg : appended) {
+            if (iterator.next() != arg) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
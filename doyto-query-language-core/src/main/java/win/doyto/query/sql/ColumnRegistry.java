@@ -0,0 +1,190 @@
+/*
+ *    Copyright 2022 Forb Yuan
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ *
+ */
+
+package win.doyto.query.sql;
+
+import win.doyto.query.config.GlobalConfiguration;
+import win.doyto.query.language.doytoql.DoytoQLRequest;
+import win.doyto.query.language.doytoql.QLErrorCode;
+import win.doyto.query.web.response.ErrorCode;
+
+import java.util.*;
+
+/**
+ * ColumnRegistry
+ * <p>
+ * The columns of each domain loaded from the metadata of the database,
+ * used to reject the unknown columns of a query and to rewrite them as
+ * they are named in the table, so that the requests differing in case only
+ * share one template. A query without columns or with <code>*</code> selects
+ * the default columns of its domain when configured. The labels wrapped by
+ * the dialect are computed once per column when the columns are loaded.
+ * The nullable columns are also kept to reject the cursors sorted by them.
+ *
+ * @author f0rb on 2022-05-07
+ */
+public class ColumnRegistry {
+
+    private static final List<String> ALL_COLUMNS = List.of("*");
+
+    private volatile Map<String, DomainColumns> domains = Map.of();
+    private volatile Map<String, List<String>> defaultColumns = Map.of();
+    private volatile Map<String, List<String>> resolvedDefaultColumns = Map.of();
+
+    /**
+     * Replace the columns of the domains, keyed by the name of table.
+     */
+    public synchronized void load(Map<String, ? extends Collection<String>> columnsByDomain) {
+        load(columnsByDomain, Map.of());
+    }
+
+    /**
+     * Replace the columns of the domains along with their nullable columns, both keyed by the name of table.
+     */
+    public synchronized void load(Map<String, ? extends Collection<String>> columnsByDomain,
+                                  Map<String, ? extends Collection<String>> nullableColumnsByDomain) {
+        Map<String, DomainColumns> loaded = new HashMap<>();
+        columnsByDomain.forEach((domain, columns) -> {
+            Collection<String> nullableColumns = nullableColumnsByDomain.get(domain);
+            loaded.put(keyOf(domain), new DomainColumns(columns, nullableColumns != null ? nullableColumns : List.of()));
+        });
+        this.domains = Map.copyOf(loaded);
+        resolveDefaultColumns();
+    }
+
+    /**
+     * Set the columns selected by a query without columns, keyed by domain.
+     */
+    public synchronized void setDefaultColumns(Map<String, List<String>> defaultColumns) {
+        Map<String, List<String>> keyed = new HashMap<>();
+        defaultColumns.forEach((domain, columns) -> keyed.put(keyOf(domain), List.copyOf(columns)));
+        this.defaultColumns = Map.copyOf(keyed);
+        resolveDefaultColumns();
+    }
+
+    private void resolveDefaultColumns() {
+        Map<String, List<String>> resolved = new HashMap<>();
+        defaultColumns.forEach((domain, columns) -> resolved.put(domain, canonicalize(domains.get(domain), columns)));
+        this.resolvedDefaultColumns = Map.copyOf(resolved);
+    }
+
+    public synchronized void clear() {
+        this.domains = Map.of();
+        resolveDefaultColumns();
+    }
+
+    public boolean isLoaded(String domain) {
+        return domains.containsKey(keyOf(domain));
+    }
+
+    /**
+     * @return the columns of the domain as named in the table, or an empty list when not loaded
+     */
+    public Collection<String> getColumns(String domain) {
+        DomainColumns domainColumns = domains.get(keyOf(domain));
+        return domainColumns == null ? List.of() : domainColumns.labels.keySet();
+    }
+
+    /**
+     * Expand the absent columns of a query to the default columns of its domain,
+     * and rewrite the columns as named in the table.
+     *
+     * @throws win.doyto.query.web.response.ErrorCodeException with {@link QLErrorCode#COLUMN_IS_UNKNOWN}
+     *                                                         for a column missing from the table
+     */
+    public void project(DoytoQLRequest request) {
+        List<String> columns = request.getColumns();
+        if (columns == null || columns.equals(ALL_COLUMNS)) {
+            List<String> defaults = resolvedDefaultColumns.get(keyOf(request.getDomain()));
+            if (defaults != null) {
+                request.setColumns(defaults);
+            }
+            return;
+        }
+        DomainColumns domainColumns = domains.get(keyOf(request.getDomain()));
+        if (domainColumns != null) {
+            request.setColumns(canonicalize(domainColumns, columns));
+        }
+    }
+
+    /**
+     * @return true when the column of a loaded domain accepts NULL, false when unknown
+     */
+    public boolean isNullable(String domain, String column) {
+        DomainColumns domainColumns = domains.get(keyOf(domain));
+        String name = domainColumns == null ? null : domainColumns.nameOf(column);
+        return name != null && domainColumns.nullable.contains(name);
+    }
+
+    /**
+     * @return the column wrapped by the dialect, computed once for a loaded column
+     */
+    public String labelOf(String domain, String column) {
+        DomainColumns domainColumns = domains.get(keyOf(domain));
+        String label = domainColumns == null ? null : domainColumns.labels.get(column);
+        return label != null ? label : GlobalConfiguration.dialect().wrapLabel(column);
+    }
+
+    private static List<String> canonicalize(DomainColumns domainColumns, List<String> columns) {
+        if (domainColumns == null) {
+            return columns;
+        }
+        List<String> canonical = null;
+        for (int i = 0; i < columns.size(); i++) {
+            String column = columns.get(i);
+            String name = domainColumns.nameOf(column);
+            ErrorCode.assertNotNull(name, QLErrorCode.COLUMN_IS_UNKNOWN);
+            if (canonical == null && !name.equals(column)) {
+                canonical = new ArrayList<>(columns.subList(0, i));
+            }
+            if (canonical != null) {
+                canonical.add(name);
+            }
+        }
+        return canonical != null ? canonical : columns;
+    }
+
+    private static String keyOf(String domain) {
+        return domain.toLowerCase(Locale.ROOT);
+    }
+
+    private static class DomainColumns {
+        private final Map<String, String> names = new HashMap<>();
+        private final Map<String, String> labels = new LinkedHashMap<>();
+        private final Set<String> nullable = new HashSet<>();
+
+        DomainColumns(Collection<String> columns, Collection<String> nullableColumns) {
+            for (String column : columns) {
+                String name = normalize(column);
+                names.put(name, name);
+                names.putIfAbsent(name.toLowerCase(Locale.ROOT), name);
+                labels.put(name, GlobalConfiguration.dialect().wrapLabel(name));
+            }
+            nullableColumns.forEach(column -> nullable.add(normalize(column)));
+        }
+
+        private static String normalize(String column) {
+            // the names folded to upper case by H2 and Oracle are kept in lower case
+            return column.equals(column.toUpperCase(Locale.ROOT)) ? column.toLowerCase(Locale.ROOT) : column;
+        }
+
+        String nameOf(String column) {
+            String name = names.get(column);
+            return name != null ? name : names.get(column.toLowerCase(Locale.ROOT));
+        }
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ *    Copyright 2022 Forb Yuan
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ *
+ */
+
+package win.doyto.query.sql;
+
+import lombok.experimental.UtilityClass;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * InListPadding
+ * <p>
+ * Pad the values of <code>In</code>/<code>NotIn</code> filters to the next power of two
+ * by repeating the last value, so that lists of variable lengths share a few statements,
+ * which keeps the template cache and the statement caches of drivers effective.
+ *
+ * @author f0rb on 2022-04-25
+ */
+@UtilityClass
+class InListPadding {
+
+    private static volatile boolean enabled = false;
+
+    static void setEnabled(boolean enabled) {
+        InListPadding.enabled = enabled;
+    }
+
+    static boolean isEnabled() {
+        return enabled;
+    }
+
+    static int bucketSize(String fieldName, int size) {
+        if (!enabled || size <= 1 || !fieldName.endsWith("In")) {
+            return size;
+        }
+        return Integer.highestOneBit(size - 1) << 1;
+    }
+
+    static Object pad(String fieldName, Object value) {
+        if (!(value instanceof Collection<?> collection)) {
+            return value;
+        }
+        int bucketSize = bucketSize(fieldName, collection.size());
+        if (bucketSize == collection.size()) {
+            return value;
+        }
+        List<Object> padded = new ArrayList<>(bucketSize);
+        padded.addAll(collection);
+        Object last = padded.get(padded.size() - 1);
+        while (padded.size() < bucketSize) {
+            padded.add(last);
+        }
+        return padded;
+    }
+}
@@ -20,20 +20,17 @@ package win.doyto.query.sql;
 import lombok.experimental.UtilityClass;
 import win.doyto.query.config.GlobalConfiguration;
 import win.doyto.query.core.PageQuery;
+import win.doyto.query.language.doytoql.CompactDataList;
 import win.doyto.query.language.doytoql.DoytoQLRequest;
 import win.doyto.query.language.doytoql.QLErrorCode;
 import win.doyto.query.util.CommonUtil;
 import win.doyto.query.web.response.ErrorCode;
 
-import java.util.LinkedHashMap;
-import java.util.List;
-import java.util.Map;
-import java.util.StringJoiner;
-import java.util.stream.Collector;
+import java.util.*;
+import java.util.function.UnaryOperator;
 import java.util.stream.Collectors;
 
 import static win.doyto.query.sql.BuildHelper.buildOrderBy;
-import static win.doyto.query.sql.BuildHelper.buildPaging;
 import static win.doyto.query.sql.Constant.*;
 import static win.doyto.query.sql.QueryBuilder.EQUALS_PLACE_HOLDER;
 import static win.doyto.query.sql.SqlQuerySuffix.buildConditionForField;
@@ -46,79 +43,471 @@ import static win.doyto.query.sql.SqlQuerySuffix.buildConditionForField;
 @UtilityClass
 public class QLBuilder {
 
-    private static final Collector<CharSequence, ?, String> COLLECTOR_WHERE = Collectors.joining(" AND ", WHERE, EMPTY);
-    private static final Collector<CharSequence, ?, String> COLLECTOR_OR = Collectors.joining(SPACE_OR, "(", ")");
+    public static final String WINDOW_TOTAL_LABEL = "doytoqltotal";
+    public static final String COUNT_LABEL = "count";
+    public static final String ID = "id";
+
+    private static final String[] AGGREGATE_FUNCTIONS = {"count", "sum", "avg", "min", "max"};
+    private static final String HAVING_COLUMN = "doytoqlhaving";
+
+    private static final int MAX_REUSED_CAPACITY = 8192;
+    private static final ThreadLocal<StringBuilder> SQL_BUILDER = ThreadLocal.withInitial(() -> new StringBuilder(256));
+    private static final SqlTemplateCache TEMPLATE_CACHE = new SqlTemplateCache();
+    private static final ColumnRegistry COLUMN_REGISTRY = new ColumnRegistry();
+
+    public static SqlTemplateCache getTemplateCache() {
+        return TEMPLATE_CACHE;
+    }
+
+    public static ColumnRegistry getColumnRegistry() {
+        return COLUMN_REGISTRY;
+    }
+
+    /**
+     * Pad the values of In/NotIn filters to the next power of two to limit the count of distinct statements.
+     */
+    public static void setInListPadding(boolean inListPadding) {
+        if (InListPadding.isEnabled() != inListPadding) {
+            InListPadding.setEnabled(inListPadding);
+            TEMPLATE_CACHE.clear();
+        }
+    }
 
     public static SqlAndArgs buildQuerySql(DoytoQLRequest request) {
+        COLUMN_REGISTRY.project(request);
+        return SqlAndArgs.buildSqlWithArgs(args -> buildPaging(request, TEMPLATE_CACHE.build(
+                TemplateKind.QUERY, request, args, (req, argList, argExtractors) ->
+                        buildSelectAndOrderBy(req, buildColumns(req), argList, argExtractors))));
+    }
+
+    /**
+     * Build the query sql with an extra column {@value #WINDOW_TOTAL_LABEL}
+     * which carries the total count of the filtered rows by <code>COUNT(*) OVER()</code>.
+     */
+    public static SqlAndArgs buildQueryWithTotalSql(DoytoQLRequest request) {
+        COLUMN_REGISTRY.project(request);
+        return SqlAndArgs.buildSqlWithArgs(args -> buildPaging(request, TEMPLATE_CACHE.build(
+                TemplateKind.QUERY_WITH_TOTAL, request, args, (req, argList, argExtractors) -> {
+                    String columnStr = req.getColumns() != null ? buildColumns(req) : req.getDomain() + ".*";
+                    columnStr += SEPARATOR + COUNT + " OVER() AS " + WINDOW_TOTAL_LABEL;
+                    return buildSelectAndOrderBy(req, columnStr, argList, argExtractors);
+                })));
+    }
+
+    /**
+     * Build the query sql for the page after <code>request.cursor</code>,
+     * which replaces the offset with a condition on the sort columns.
+     *
+     * @throws win.doyto.query.web.response.ErrorCodeException with {@link QLErrorCode#CURSOR_SORT_SHOULD_NOT_BE_NULL}
+     *                                                         for a nullable sort column of a loaded domain
+     */
+    public static SqlAndArgs buildSeekQuerySql(DoytoQLRequest request) {
+        COLUMN_REGISTRY.project(request);
+        return SqlAndArgs.buildSqlWithArgs(args -> {
+            PageQuery pageQuery = request.getPage();
+            List<SeekPaging.SortColumn> sortColumns = SeekPaging.resolveSeekColumns(pageQuery);
+            for (SeekPaging.SortColumn sortColumn : sortColumns) {
+                ErrorCode.assertFalse(COLUMN_REGISTRY.isNullable(request.getDomain(), sortColumn.column()),
+                                      QLErrorCode.CURSOR_SORT_SHOULD_NOT_BE_NULL);
+            }
+            List<Object> cursorValues = SeekPaging.decodeCursor(request.getCursor(), sortColumns.size());
+
+            String columnStr = buildColumnsWithSort(request, sortColumns);
+            String whereClause = buildWhere(request, args);
+            if (!cursorValues.isEmpty()) {
+                whereClause += (whereClause.isEmpty() ? WHERE : " AND ") + SeekPaging.buildSeekCondition(sortColumns, cursorValues, args);
+            }
+            String sql = SELECT + columnStr + FROM + request.getDomain() + whereClause
+                    + buildOrderBy(pageQuery) + SeekPaging.buildTiebreakerOrder(pageQuery);
+            return GlobalConfiguration.dialect().buildPageSql(sql, pageQuery.getPageSize(), 0);
+        });
+    }
+
+    /**
+     * Build the query sql for one of the shards, which returns the first
+     * <code>offset + pageSize</code> rows along with the sort columns to merge the page from.
+     */
+    public static SqlAndArgs buildShardQuerySql(DoytoQLRequest request) {
+        PageQuery pageQuery = request.getPage();
+        if (request.getCursor() != null) {
+            return buildSeekQuerySql(request);
+        }
+        COLUMN_REGISTRY.project(request);
+        return SqlAndArgs.buildSqlWithArgs(args -> {
+            List<SeekPaging.SortColumn> sortColumns = pageQuery == null || pageQuery.getSort() == null ? List.of() :
+                    SeekPaging.resolveSortColumns(pageQuery.getSort(), QLErrorCode.SORT_SHOULD_BE_COLUMNS);
+            String sql = buildSelectAndOrderBy(request, buildColumnsWithSort(request, sortColumns), args, null);
+            if (pageQuery == null || !pageQuery.needPaging()) {
+                return sql;
+            }
+            long limit = GlobalConfiguration.calcOffset(pageQuery) + pageQuery.getPageSize();
+            return GlobalConfiguration.dialect().buildPageSql(sql, Math.toIntExact(limit), 0);
+        });
+    }
+
+    /**
+     * Append the sort columns missing from the specified columns,
+     * which are required to compare the rows.
+     */
+    private static String buildColumnsWithSort(DoytoQLRequest request, List<SeekPaging.SortColumn> sortColumns) {
+        String columnStr = buildColumns(request);
+        List<String> columns = request.getColumns();
+        if (columns != null) {
+            columnStr += appendedSortColumns(columns, sortColumns).stream()
+                                                              .map(column -> SEPARATOR + column)
+                                                              .collect(Collectors.joining());
+        }
+        return columnStr;
+    }
+
+    private static List<String> appendedSortColumns(List<String> columns, List<SeekPaging.SortColumn> sortColumns) {
+        return sortColumns.stream()
+                          .map(SeekPaging.SortColumn::column)
+                          .filter(column -> columns.stream().noneMatch(column::equalsIgnoreCase))
+                          .toList();
+    }
+
+    /**
+     * Resolve the keys of the sort columns appended to <code>columns</code> to compare the rows,
+     * which are dropped from the rows returned to the client.
+     *
+     * @param keyMapper maps a column name to the key of the column in a row
+     */
+    public static List<String> appendedSortKeys(DoytoQLRequest request, UnaryOperator<String> keyMapper) {
+        PageQuery pageQuery = request.getPage();
+        if (request.getColumns() == null || pageQuery == null || pageQuery.getSort() == null) {
+            return List.of();
+        }
+        List<SeekPaging.SortColumn> sortColumns = request.getCursor() != null ? SeekPaging.resolveSeekColumns(pageQuery)
+                : SeekPaging.resolveSortColumns(pageQuery.getSort(), QLErrorCode.SORT_SHOULD_BE_COLUMNS);
+        return appendedSortColumns(request.getColumns(), sortColumns).stream().map(keyMapper).toList();
+    }
+
+    private static String buildColumns(DoytoQLRequest request) {
+        List<String> columns = request.getColumns();
+        return columns != null ? String.join(SEPARATOR, columns) : "*";
+    }
+
+    private static String buildSelectAndOrderBy(DoytoQLRequest request, String columnStr, List<Object> args, List<ArgExtractor> argExtractors) {
+        StringBuilder sql = borrowSqlBuilder().append(SELECT).append(columnStr).append(FROM).append(request.getDomain());
+        appendWhere(sql, request, args, argExtractors);
+        PageQuery pageQuery = request.getPage();
+        if (pageQuery != null) {
+            sql.append(buildOrderBy(pageQuery));
+        }
+        return releaseSqlBuilder(sql);
+    }
+
+    private static String buildPaging(DoytoQLRequest request, String sql) {
+        PageQuery pageQuery = request.getPage();
+        if (pageQuery != null) {
+            sql = BuildHelper.buildPaging(sql, pageQuery);
+        }
+        return sql;
+    }
+
+    /**
+     * Build the sql of an aggregate request, which selects the group-by columns along with
+     * the aggregates named by a function prefixed to a column, e.g. <code>sumScore</code>
+     * for <code>sum(score) AS sumScore</code>, or {@value #COUNT_LABEL} for <code>count(*)</code>.
+     * The conditions of <code>having</code> refer to the aggregates by their names.
+     */
+    public static SqlAndArgs buildAggregateSql(DoytoQLRequest request) {
         return SqlAndArgs.buildSqlWithArgs(args -> {
+            List<String> groupBy = request.getGroupBy() != null ? request.getGroupBy() : List.of();
             List<String> columns = request.getColumns();
-            String columnStr = columns != null ? String.join(SEPARATOR, columns) : "*";
-            String sql = SELECT + columnStr + FROM + request.getDomain();
+            if (columns == null) {
+                columns = new ArrayList<>(groupBy);
+                columns.add(COUNT_LABEL);
+            }
+            Map<String, String> aggregates = new LinkedHashMap<>();
+            StringJoiner columnStr = new StringJoiner(SEPARATOR);
+            for (String column : columns) {
+                String aggregate = aggregateOf(column);
+                if (aggregate == null) {
+                    columnStr.add(column);
+                } else {
+                    columnStr.add(aggregate + " AS " + column);
+                    aggregates.put(column, aggregate);
+                }
+            }
+            ErrorCode.assertFalse(aggregates.isEmpty(), QLErrorCode.AGGREGATE_IS_INVALID);
 
-            sql += buildWhere(request, args);
-            PageQuery pageQuery = request.getPage();
-            if (pageQuery != null) {
-                sql = sql + buildOrderBy(pageQuery);
-                sql = buildPaging(sql, pageQuery);
+            StringBuilder sql = borrowSqlBuilder().append(SELECT).append(columnStr).append(FROM).append(request.getDomain());
+            appendWhere(sql, request, args, null);
+            if (!groupBy.isEmpty()) {
+                sql.append(" GROUP BY ").append(String.join(SEPARATOR, groupBy));
+            }
+            appendHaving(sql, request.getHaving(), aggregates, args);
+            if (request.getPage() != null) {
+                sql.append(buildOrderBy(request.getPage()));
             }
-            return sql;
+            return buildPaging(request, releaseSqlBuilder(sql));
         });
     }
 
+    /**
+     * @return the aggregate expression of the column, or null for a plain column
+     */
+    static String aggregateOf(String column) {
+        for (String function : AGGREGATE_FUNCTIONS) {
+            if (!column.startsWith(function)) {
+                continue;
+            }
+            if (column.length() == function.length()) {
+                return COUNT_LABEL.equals(function) ? COUNT : null;
+            }
+            // sumScore is an aggregate, while summary is a column
+            char first = column.charAt(function.length());
+            if (Character.isUpperCase(first)) {
+                String target = Character.toLowerCase(first) + column.substring(function.length() + 1);
+                return function + "(" + target + ")";
+            }
+        }
+        return null;
+    }
+
+    private static void appendHaving(StringBuilder sql, LinkedHashMap<String, Object> having, Map<String, String> aggregates, List<Object> args) {
+        if (having == null || having.isEmpty()) {
+            return;
+        }
+        sql.append(" HAVING ");
+        boolean first = true;
+        for (Map.Entry<String, Object> entry : having.entrySet()) {
+            if (!first) {
+                sql.append(" AND ");
+            }
+            first = false;
+            sql.append(buildHavingCondition(entry.getKey(), entry.getValue(), aggregates, args));
+        }
+    }
+
+    private static String buildHavingCondition(String fieldName, Object value, Map<String, String> aggregates, List<Object> args) {
+        String name = null;
+        for (String aggregate : aggregates.keySet()) {
+            if (fieldName.startsWith(aggregate) && (name == null || aggregate.length() > name.length())) {
+                name = aggregate;
+            }
+        }
+        ErrorCode.assertNotNull(name, QLErrorCode.AGGREGATE_IS_INVALID);
+        // build the condition on a plain column by the suffix, then replace the column with the aggregate
+        String condition = buildConditionForField(HAVING_COLUMN + fieldName.substring(name.length()), args, value);
+        ErrorCode.assertTrue(condition.startsWith(HAVING_COLUMN + " "), QLErrorCode.AGGREGATE_IS_INVALID);
+        return aggregates.get(name) + condition.substring(HAVING_COLUMN.length());
+    }
+
+    /**
+     * Build the sql telling whether any row matches the filters, which stops at the first row.
+     */
+    public static SqlAndArgs buildExistsSql(DoytoQLRequest request) {
+        return SqlAndArgs.buildSqlWithArgs(args -> GlobalConfiguration.dialect().buildPageSql(TEMPLATE_CACHE.build(
+                TemplateKind.EXISTS, request, args, (req, argList, argExtractors) -> {
+                    StringBuilder sql = borrowSqlBuilder().append(SELECT).append("1").append(FROM).append(req.getDomain());
+                    appendWhere(sql, req, argList, argExtractors);
+                    return releaseSqlBuilder(sql);
+                }), 1, 0));
+    }
+
     public static SqlAndArgs buildCountSql(DoytoQLRequest request) {
-        return SqlAndArgs.buildSqlWithArgs(args -> SELECT + COUNT +
-                FROM + request.getDomain() + buildWhere(request, args));
+        return SqlAndArgs.buildSqlWithArgs(args -> TEMPLATE_CACHE.build(
+                TemplateKind.COUNT, request, args, (req, argList, argExtractors) -> {
+                    StringBuilder sql = borrowSqlBuilder().append(SELECT).append(COUNT).append(FROM).append(req.getDomain());
+                    appendWhere(sql, req, argList, argExtractors);
+                    return releaseSqlBuilder(sql);
+                }));
+    }
+
+    private static StringBuilder borrowSqlBuilder() {
+        StringBuilder sql = SQL_BUILDER.get();
+        sql.setLength(0);
+        return sql;
+    }
+
+    private static String releaseSqlBuilder(StringBuilder sql) {
+        String result = sql.toString();
+        if (sql.capacity() > MAX_REUSED_CAPACITY) {
+            SQL_BUILDER.remove();
+        }
+        return result;
     }
 
     static String buildWhere(DoytoQLRequest request, List<Object> args) {
+        StringBuilder sql = borrowSqlBuilder();
+        appendWhere(sql, request, args, null);
+        return releaseSqlBuilder(sql);
+    }
+
+    private static void appendWhere(StringBuilder sql, DoytoQLRequest request, List<Object> args, List<ArgExtractor> argExtractors) {
         LinkedHashMap<String, Object> filters = request.getFilters();
-        if (filters == null || filters.isEmpty()) {
-            return EMPTY;
+        if (filters != null && !filters.isEmpty()) {
+            appendWhere(sql, filters, args, argExtractors);
         }
-        return buildWhere(filters, args);
     }
 
-    @SuppressWarnings("unchecked")
     static String buildWhere(LinkedHashMap<String, Object> filters, List<Object> args) {
-        return filters.entrySet().stream()
-                      .map(e -> {
-                          if (e.getKey().endsWith("Or")) {
-                              Object value = e.getValue();
-                              ErrorCode.assertTrue(value instanceof LinkedHashMap, QLErrorCode.TYPE_OF_OR_FILTER_SHOULD_BE_OBJECT);
-                              LinkedHashMap<String, Object> orConditions = (LinkedHashMap<String, Object>) value;
-                              ErrorCode.assertFalse(orConditions.isEmpty(), QLErrorCode.OR_FILTER_SHOULD_CONTAIN_AT_LEAST_ONE_CONDITION);
-                              return buildConditionForOr(args, orConditions);
-                          }
-                          return buildConditionForField(e.getKey(), args, e.getValue());
-                      })
-                      .collect(COLLECTOR_WHERE);
-    }
-
-    private static String buildConditionForOr(List<Object> args, LinkedHashMap<String, Object> orConditions) {
-        return orConditions.entrySet().stream()
-                           .map(orCondition -> buildConditionForField(orCondition.getKey(), args, orCondition.getValue()))
-                           .collect(COLLECTOR_OR);
+        StringBuilder sql = borrowSqlBuilder();
+        appendWhere(sql, filters, args, null);
+        return releaseSqlBuilder(sql);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void appendWhere(StringBuilder sql, LinkedHashMap<String, Object> filters, List<Object> args, List<ArgExtractor> argExtractors) {
+        if (args instanceof ArrayList<Object> argList) {
+            argList.ensureCapacity(args.size() + filters.size());
+        }
+        sql.append(WHERE);
+        boolean first = true;
+        for (Map.Entry<String, Object> entry : filters.entrySet()) {
+            if (!first) {
+                sql.append(" AND ");
+            }
+            first = false;
+            if (entry.getKey().endsWith("Or")) {
+                Object value = entry.getValue();
+                ErrorCode.assertTrue(value instanceof LinkedHashMap, QLErrorCode.TYPE_OF_OR_FILTER_SHOULD_BE_OBJECT);
+                LinkedHashMap<String, Object> orConditions = (LinkedHashMap<String, Object>) value;
+                ErrorCode.assertFalse(orConditions.isEmpty(), QLErrorCode.OR_FILTER_SHOULD_CONTAIN_AT_LEAST_ONE_CONDITION);
+                appendConditionForOr(sql, orConditions, args, argExtractors);
+            } else {
+                sql.append(buildCondition(entry.getKey(), entry.getValue(), args, argExtractors));
+            }
+        }
+    }
+
+    private static void appendConditionForOr(StringBuilder sql, LinkedHashMap<String, Object> orConditions, List<Object> args, List<ArgExtractor> argExtractors) {
+        sql.append('(');
+        boolean first = true;
+        for (Map.Entry<String, Object> orCondition : orConditions.entrySet()) {
+            if (!first) {
+                sql.append(SPACE_OR);
+            }
+            first = false;
+            sql.append(buildCondition(orCondition.getKey(), orCondition.getValue(), args, argExtractors));
+        }
+        sql.append(')');
+    }
+
+    private static String buildCondition(String fieldName, Object value, List<Object> args, List<ArgExtractor> argExtractors) {
+        value = InListPadding.pad(fieldName, value);
+        if (argExtractors == null) {
+            return buildConditionForField(fieldName, args, value);
+        }
+        int start = args.size();
+        String condition = buildConditionForField(fieldName, args, value);
+        argExtractors.add(ArgExtractor.detect(value, args.subList(start, args.size())));
+        return condition;
     }
 
     public static SqlAndArgs buildDeleteSql(DoytoQLRequest request) {
-        return SqlAndArgs.buildSqlWithArgs(args -> DELETE_FROM + request.getDomain() + buildWhere(request, args));
+        return SqlAndArgs.buildSqlWithArgs(args -> TEMPLATE_CACHE.build(
+                TemplateKind.DELETE, request, args, (req, argList, argExtractors) -> {
+                    StringBuilder sql = borrowSqlBuilder().append(DELETE_FROM).append(req.getDomain());
+                    appendWhere(sql, req, argList, argExtractors);
+                    return releaseSqlBuilder(sql);
+                }));
     }
 
     public static SqlAndArgs buildInsertSql(DoytoQLRequest request) {
         return SqlAndArgs.buildSqlWithArgs(argList -> {
-            LinkedHashMap<String, Object> first = request.getData().get(0);
+            LinkedHashMap<String, Object> first = checkInsertData(request);
             String columns = first.keySet().stream().collect(CommonUtil.CLT_COMMA_WITH_PAREN);
-            String wildInsertValue = first.values().stream().map(i -> PLACE_HOLDER).collect(CommonUtil.CLT_COMMA_WITH_PAREN);
-
-            StringJoiner placeholders = new StringJoiner(SEPARATOR);
-            for (LinkedHashMap<String, Object> datum : request.getData()) {
-                argList.addAll(datum.values());
-                placeholders.add(wildInsertValue);
-            }
-            return CrudBuilder.buildInsertSql(request.getDomain(), columns, placeholders.toString());
+            return CrudBuilder.buildInsertSql(request.getDomain(), columns, readRowsToArgList(first, request.getData(), argList));
         });
     }
 
+    private static String readRowsToArgList(LinkedHashMap<String, Object> first, List<LinkedHashMap<String, Object>> data, List<Object> argList) {
+        String wildInsertValue = first.values().stream().map(i -> PLACE_HOLDER).collect(CommonUtil.CLT_COMMA_WITH_PAREN);
+        StringJoiner placeholders = new StringJoiner(SEPARATOR);
+        for (int i = 0; i < data.size(); i++) {
+            Collections.addAll(argList, valuesOf(first, data, i));
+            placeholders.add(wildInsertValue);
+        }
+        return placeholders.toString();
+    }
+
+    /**
+     * Read the values of a row in the order of the columns of the first row.
+     */
+    private static Object[] valuesOf(LinkedHashMap<String, Object> first, List<LinkedHashMap<String, Object>> data, int index) {
+        if (data instanceof CompactDataList compactData) {
+            return compactData.valuesOf(index);
+        }
+        LinkedHashMap<String, Object> datum = data.get(index);
+        Object[] values = new Object[first.size()];
+        int i = 0;
+        for (String column : first.keySet()) {
+            values[i++] = datum.get(column);
+        }
+        return values;
+    }
+
+    /**
+     * Build the statements inserting the rows or updating the rows of the same <code>keys</code>,
+     * one statement for every <code>chunkSize</code> rows, by the syntax of the dialect in use.
+     * All rows go in one statement when <code>chunkSize</code> is not positive.
+     */
+    public static List<SqlAndArgs> buildUpsertSqls(DoytoQLRequest request, int chunkSize) {
+        LinkedHashMap<String, Object> first = checkInsertData(request);
+        List<String> keys = checkKeys(request, first);
+
+        String domain = request.getDomain();
+        String columns = first.keySet().stream().collect(CommonUtil.CLT_COMMA_WITH_PAREN);
+        List<String> updates = first.keySet().stream().filter(column -> !keys.contains(column)).toList();
+        UpsertSyntax syntax = UpsertSyntax.of(GlobalConfiguration.dialect().getClass().getSimpleName());
+
+        List<LinkedHashMap<String, Object>> data = request.getData();
+        int size = chunkSize > 0 ? chunkSize : data.size();
+        List<SqlAndArgs> sqlAndArgsList = new ArrayList<>(data.size() / size + 1);
+        for (int i = 0; i < data.size(); i += size) {
+            List<LinkedHashMap<String, Object>> chunk = data.subList(i, Math.min(data.size(), i + size));
+            sqlAndArgsList.add(SqlAndArgs.buildSqlWithArgs(argList -> syntax.build(
+                    domain, columns, readRowsToArgList(first, chunk, argList), keys, updates)));
+        }
+        return sqlAndArgsList;
+    }
+
+    /**
+     * Build one insert statement for a single row,
+     * along with the arguments of every row to execute it in batch.
+     */
+    public static BatchSqlAndArgs buildInsertBatchSql(DoytoQLRequest request) {
+        LinkedHashMap<String, Object> first = checkInsertData(request);
+        String columns = first.keySet().stream().collect(CommonUtil.CLT_COMMA_WITH_PAREN);
+        String wildInsertValue = first.values().stream().map(i -> PLACE_HOLDER).collect(CommonUtil.CLT_COMMA_WITH_PAREN);
+
+        List<LinkedHashMap<String, Object>> data = request.getData();
+        List<Object[]> batchArgs = new ArrayList<>(data.size());
+        for (int i = 0; i < data.size(); i++) {
+            batchArgs.add(valuesOf(first, data, i));
+        }
+        String sql = CrudBuilder.buildInsertSql(request.getDomain(), columns, wildInsertValue);
+        return new BatchSqlAndArgs(sql, batchArgs);
+    }
+
+    private static List<String> checkKeys(DoytoQLRequest request, LinkedHashMap<String, Object> first) {
+        List<String> keys = request.getKeys() != null ? request.getKeys() : List.of(ID);
+        ErrorCode.assertFalse(keys.isEmpty(), QLErrorCode.KEYS_SHOULD_BE_IN_DATA);
+        ErrorCode.assertTrue(first.keySet().containsAll(keys), QLErrorCode.KEYS_SHOULD_BE_IN_DATA);
+        return keys;
+    }
+
+    private static LinkedHashMap<String, Object> checkInsertData(DoytoQLRequest request) {
+        List<LinkedHashMap<String, Object>> data = request.getData();
+        ErrorCode.assertNotNull(data, QLErrorCode.DATA_SHOULD_NOT_BE_NULL);
+        ErrorCode.assertFalse(data.isEmpty(), QLErrorCode.DATA_SHOULD_NOT_BE_EMPTY);
+
+        LinkedHashMap<String, Object> first = data.get(0);
+        ErrorCode.assertFalse(first.isEmpty(), QLErrorCode.DATA_SHOULD_CONTAIN_AT_LEAST_ONE_FIELD);
+        if (data instanceof CompactDataList) {
+            // the rows are checked to share the columns while being read
+            return first;
+        }
+        for (LinkedHashMap<String, Object> datum : data) {
+            ErrorCode.assertTrue(first.keySet().equals(datum.keySet()), QLErrorCode.DATA_SHOULD_SHARE_SAME_COLUMNS);
+        }
+        return first;
+    }
+
     public static SqlAndArgs buildUpdateSql(DoytoQLRequest request) {
         return SqlAndArgs.buildSqlWithArgs(argList -> {
             List<LinkedHashMap<String, Object>> data = request.getData();
@@ -129,20 +518,147 @@ public class QLBuilder {
             LinkedHashMap<String, Object> target = data.get(0);
             ErrorCode.assertFalse(target.isEmpty(), QLErrorCode.DATA_SHOULD_CONTAIN_AT_LEAST_ONE_FIELD);
 
-            String domain = request.getDomain();
-            String setClause = readValueToArgList(target, argList);
-            String whereClause = buildWhere(request, argList);
-            return CrudBuilder.buildUpdateSql(domain, setClause) + whereClause;
+            return TEMPLATE_CACHE.build(TemplateKind.UPDATE, request, argList, QLBuilder::buildUpdateClauses);
         });
     }
 
-    private static String readValueToArgList(LinkedHashMap<String, Object> target, List<Object> argList) {
+    private static String buildUpdateClauses(DoytoQLRequest request, List<Object> argList, List<ArgExtractor> argExtractors) {
+        String domain = request.getDomain();
+        String setClause = readValueToArgList(domain, request.getData().get(0), argList);
+        StringBuilder sql = borrowSqlBuilder().append(CrudBuilder.buildUpdateSql(domain, setClause));
+        appendWhere(sql, request, argList, argExtractors);
+        return releaseSqlBuilder(sql);
+    }
+
+    private static String readValueToArgList(String domain, LinkedHashMap<String, Object> target, List<Object> argList) {
         StringJoiner setClauses = new StringJoiner(SEPARATOR);
         for (Map.Entry<String, Object> entry : target.entrySet()) {
-            String column = GlobalConfiguration.dialect().wrapLabel(entry.getKey());
+            String column = COLUMN_REGISTRY.labelOf(domain, entry.getKey());
             setClauses.add(column + EQUALS_PLACE_HOLDER);
             argList.add(entry.getValue());
         }
         return setClauses.toString();
     }
+
+    /**
+     * Tell whether an update request carries the rows to update by their <code>keys</code>,
+     * which is the case when <code>keys</code> is given or <code>data</code> holds more than one row.
+     */
+    public static boolean isUpdateByKeys(DoytoQLRequest request) {
+        return request.getKeys() != null || (request.getData() != null && request.getData().size() > 1);
+    }
+
+    /**
+     * Tell whether the rows of an update by keys fit in one statement of CASE expressions,
+     * which takes a single key and at most <code>caseMaxRows</code> rows.
+     */
+    public static boolean canUpdateByCase(DoytoQLRequest request, int caseMaxRows) {
+        List<String> keys = request.getKeys();
+        return (keys == null || keys.size() == 1) && request.getData().size() <= caseMaxRows;
+    }
+
+    /**
+     * Build one statement updating each row of <code>data</code> located by its key, like
+     * <code>UPDATE t SET a = CASE id WHEN ? THEN ? ... ELSE a END, ... WHERE id IN (?, ...)</code>,
+     * with <code>filters</code> appended to the conditions.
+     */
+    public static SqlAndArgs buildUpdateCaseSql(DoytoQLRequest request) {
+        return SqlAndArgs.buildSqlWithArgs(argList -> {
+            LinkedHashMap<String, Object> first = checkInsertData(request);
+            List<String> keys = checkKeys(request, first);
+            ErrorCode.assertTrue(keys.size() == 1, QLErrorCode.KEYS_SHOULD_BE_IN_DATA);
+            String key = keys.get(0);
+            List<String> updates = checkUpdateColumns(first, keys);
+
+            // read each row once, since the rows of a CompactDataList are built on every read
+            List<LinkedHashMap<String, Object>> data = new ArrayList<>(request.getData());
+            List<Object> keyValues = new ArrayList<>(data.size());
+            for (LinkedHashMap<String, Object> datum : data) {
+                keyValues.add(checkKeyValue(datum.get(key)));
+            }
+            String domain = request.getDomain();
+            StringJoiner setClauses = new StringJoiner(SEPARATOR);
+            for (String column : updates) {
+                String label = COLUMN_REGISTRY.labelOf(domain, column);
+                StringBuilder caseClause = new StringBuilder(label)
+                        .append(" = CASE ").append(COLUMN_REGISTRY.labelOf(domain, key));
+                for (LinkedHashMap<String, Object> datum : data) {
+                    caseClause.append(" WHEN ? THEN ?");
+                    argList.add(datum.get(key));
+                    argList.add(datum.get(column));
+                }
+                // keep the value of any row matched by the filters but missing in data
+                setClauses.add(caseClause.append(" ELSE ").append(label).append(" END"));
+            }
+            LinkedHashMap<String, Object> keyFilters = new LinkedHashMap<>();
+            keyFilters.put(key + "In", keyValues);
+            return CrudBuilder.buildUpdateSql(domain, setClauses.toString()) + buildWhereWithKeys(keyFilters, request, argList);
+        });
+    }
+
+    /**
+     * Build one update statement for a single row located by its keys,
+     * along with the arguments of every row to execute it in batch.
+     */
+    public static BatchSqlAndArgs buildUpdateBatchSql(DoytoQLRequest request) {
+        LinkedHashMap<String, Object> first = checkInsertData(request);
+        List<String> keys = checkKeys(request, first);
+        List<String> updates = checkUpdateColumns(first, keys);
+
+        String domain = request.getDomain();
+        StringJoiner setClauses = new StringJoiner(SEPARATOR);
+        for (String column : updates) {
+            setClauses.add(COLUMN_REGISTRY.labelOf(domain, column) + EQUALS_PLACE_HOLDER);
+        }
+        LinkedHashMap<String, Object> keyFilters = new LinkedHashMap<>();
+        for (String key : keys) {
+            keyFilters.put(key, checkKeyValue(first.get(key)));
+        }
+        // the arguments of the filters follow the ones of the keys, and are shared by the rows
+        List<Object> whereArgs = new ArrayList<>();
+        String sql = CrudBuilder.buildUpdateSql(domain, setClauses.toString()) + buildWhereWithKeys(keyFilters, request, whereArgs);
+        List<Object> filterArgs = whereArgs.subList(keys.size(), whereArgs.size());
+
+        List<Object[]> batchArgs = new ArrayList<>(request.getData().size());
+        for (LinkedHashMap<String, Object> datum : request.getData()) {
+            Object[] args = new Object[updates.size() + whereArgs.size()];
+            int index = 0;
+            for (String column : updates) {
+                args[index++] = datum.get(column);
+            }
+            for (String key : keys) {
+                args[index++] = checkKeyValue(datum.get(key));
+            }
+            for (Object arg : filterArgs) {
+                args[index++] = arg;
+            }
+            batchArgs.add(args);
+        }
+        return new BatchSqlAndArgs(sql, batchArgs);
+    }
+
+    private static List<String> checkUpdateColumns(LinkedHashMap<String, Object> first, List<String> keys) {
+        List<String> updates = first.keySet().stream().filter(column -> !keys.contains(column)).toList();
+        ErrorCode.assertFalse(updates.isEmpty(), QLErrorCode.DATA_SHOULD_CONTAIN_AT_LEAST_ONE_FIELD);
+        return updates;
+    }
+
+    private static Object checkKeyValue(Object value) {
+        // a null or multi-valued key would change the shape of the condition
+        ErrorCode.assertFalse(value == null || value instanceof Collection, QLErrorCode.KEYS_SHOULD_BE_IN_DATA);
+        return value;
+    }
+
+    /**
+     * Build the conditions on the keys ANDed with the ones of <code>filters</code>,
+     * so that a filter on a key column narrows the rows rather than replacing their keys.
+     */
+    private static String buildWhereWithKeys(LinkedHashMap<String, Object> keyFilters, DoytoQLRequest request, List<Object> args) {
+        String whereClause = buildWhere(keyFilters, args);
+        String filterClause = buildWhere(request, args);
+        if (filterClause.isEmpty()) {
+            return whereClause;
+        }
+        return whereClause + " AND " + filterClause.substring(WHERE.length());
+    }
 }
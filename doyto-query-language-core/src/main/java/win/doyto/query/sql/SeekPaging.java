@@ -0,0 +1,288 @@
+/*
+ *    Copyright 2022 Forb Yuan
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ *
+ */
+
+package win.doyto.query.sql;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import lombok.experimental.UtilityClass;
+import win.doyto.query.core.PageQuery;
+import win.doyto.query.language.doytoql.QLErrorCode;
+import win.doyto.query.util.BeanUtil;
+import win.doyto.query.web.response.ErrorCode;
+import win.doyto.query.web.response.ErrorCodeException;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.time.*;
+import java.time.temporal.TemporalAccessor;
+import java.util.*;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+import java.util.regex.Pattern;
+
+/**
+ * SeekPaging
+ * <p>
+ * Keyset pagination over the columns of <code>page.sort</code>.
+ * The cursor encodes the values of the sort columns of the last row,
+ * and the next page starts after them instead of skipping an offset.
+ * The primary key <code>id</code> is appended to the sort when absent,
+ * so that the rows sharing the sort values at the end of a page are not skipped,
+ * and the sort columns should be NOT NULL, since a NULL is never after a cursor.
+ * Decimals and temporal values are encoded along with their types,
+ * e.g. <code>{"LocalDateTime": "2022-04-26T10:00:00"}</code>,
+ * so that they are bound as the same types when decoded.
+ *
+ * @author f0rb on 2022-04-26
+ */
+@UtilityClass
+public class SeekPaging {
+
+    private static final Pattern COLUMN_PTN = Pattern.compile("\\w+");
+    private static final TypeReference<List<Object>> CURSOR_TYPE = new TypeReference<>() {};
+    private static final Map<String, Function<String, Object>> TYPED_PARSERS = Map.of(
+            "BigDecimal", BigDecimal::new,
+            "Timestamp", text -> Timestamp.valueOf(LocalDateTime.parse(text)),
+            "Date", text -> java.sql.Date.valueOf(LocalDate.parse(text)),
+            "Time", text -> Time.valueOf(LocalTime.parse(text)),
+            "Instant", Instant::parse,
+            "LocalDateTime", LocalDateTime::parse,
+            "LocalDate", LocalDate::parse,
+            "LocalTime", LocalTime::parse,
+            "OffsetDateTime", OffsetDateTime::parse,
+            "ZonedDateTime", ZonedDateTime::parse
+    );
+
+    record SortColumn(String column, boolean desc) {
+    }
+
+    static List<SortColumn> resolveSortColumns(PageQuery pageQuery) {
+        ErrorCode.assertTrue(pageQuery != null && pageQuery.getSort() != null, QLErrorCode.CURSOR_REQUIRES_SORT);
+        return resolveSortColumns(pageQuery.getSort(), QLErrorCode.CURSOR_REQUIRES_SORT);
+    }
+
+    /**
+     * Resolve the columns to seek by, which end with the primary key
+     * in the direction of the last sort column to break the ties.
+     */
+    static List<SortColumn> resolveSeekColumns(PageQuery pageQuery) {
+        List<SortColumn> sortColumns = resolveSortColumns(pageQuery);
+        if (sortColumns.stream().noneMatch(sortColumn -> QLBuilder.ID.equalsIgnoreCase(sortColumn.column()))) {
+            sortColumns.add(new SortColumn(QLBuilder.ID, sortColumns.get(sortColumns.size() - 1).desc()));
+        }
+        return sortColumns;
+    }
+
+    /**
+     * @return the primary key appended to the ORDER BY clause of <code>page.sort</code>, or empty when sorted by it
+     */
+    static String buildTiebreakerOrder(PageQuery pageQuery) {
+        List<SortColumn> seekColumns = resolveSeekColumns(pageQuery);
+        if (seekColumns.size() == resolveSortColumns(pageQuery).size()) {
+            return "";
+        }
+        return ", " + QLBuilder.ID + (seekColumns.get(seekColumns.size() - 1).desc() ? " desc" : " asc");
+    }
+
+    static List<SortColumn> resolveSortColumns(String sort, QLErrorCode errorCode) {
+        List<SortColumn> sortColumns = new ArrayList<>();
+        for (String item : sort.split(";")) {
+            String[] parts = item.split(",");
+            ErrorCode.assertTrue(parts.length <= 2 && COLUMN_PTN.matcher(parts[0]).matches(), errorCode);
+            sortColumns.add(new SortColumn(parts[0], parts.length == 2 && "desc".equalsIgnoreCase(parts[1])));
+        }
+        return sortColumns;
+    }
+
+    /**
+     * Build a comparator of rows in the order of <code>page.sort</code>,
+     * which keeps the rows equal when there is no sort.
+     *
+     * @param keyMapper maps a column name to the key of the column in a row
+     */
+    public static Comparator<Map<String, Object>> comparator(PageQuery pageQuery, UnaryOperator<String> keyMapper) {
+        if (pageQuery == null || pageQuery.getSort() == null) {
+            return (row1, row2) -> 0;
+        }
+        return comparator(resolveSortColumns(pageQuery.getSort(), QLErrorCode.SORT_SHOULD_BE_COLUMNS), keyMapper);
+    }
+
+    /**
+     * Build a comparator of rows in the order of the pages after a cursor,
+     * which also compares the primary key appended to <code>page.sort</code>.
+     *
+     * @param keyMapper maps a column name to the key of the column in a row
+     */
+    public static Comparator<Map<String, Object>> seekComparator(PageQuery pageQuery, UnaryOperator<String> keyMapper) {
+        return comparator(resolveSeekColumns(pageQuery), keyMapper);
+    }
+
+    private static Comparator<Map<String, Object>> comparator(List<SortColumn> sortColumns, UnaryOperator<String> keyMapper) {
+        Comparator<Map<String, Object>> comparator = (row1, row2) -> 0;
+        for (SortColumn sortColumn : sortColumns) {
+            String key = keyMapper.apply(sortColumn.column());
+            Comparator<Object> valueComparator = Comparator.nullsFirst(SeekPaging::compareValues);
+            comparator = comparator.thenComparing(row -> row.get(key), sortColumn.desc() ? valueComparator.reversed() : valueComparator);
+        }
+        return comparator;
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static int compareValues(Object value1, Object value2) {
+        if (value1 instanceof Number number1 && value2 instanceof Number number2
+                && !(value1.getClass().equals(value2.getClass()))) {
+            return new BigDecimal(number1.toString()).compareTo(new BigDecimal(number2.toString()));
+        }
+        return ((Comparable) value1).compareTo(value2);
+    }
+
+    /**
+     * Build the condition for the rows after the cursor, e.g.
+     * <code>(a, b) &gt; (?, ?)</code> when all columns are sorted in the same direction,
+     * or <code>(a &gt; ? OR a = ? AND b &lt; ?)</code> otherwise.
+     */
+    static String buildSeekCondition(List<SortColumn> sortColumns, List<Object> cursorValues, List<Object> args) {
+        boolean sameDirection = sortColumns.stream().allMatch(sortColumn -> sortColumn.desc() == sortColumns.get(0).desc());
+        if (sameDirection) {
+            StringJoiner columns = new StringJoiner(", ", "(", ")");
+            StringJoiner placeholders = new StringJoiner(", ", "(", ")");
+            for (SortColumn sortColumn : sortColumns) {
+                columns.add(sortColumn.column());
+                placeholders.add("?");
+            }
+            args.addAll(cursorValues);
+            return columns + (sortColumns.get(0).desc() ? " < " : " > ") + placeholders;
+        }
+        StringJoiner disjunction = new StringJoiner(" OR ", "(", ")");
+        for (int i = 0; i < sortColumns.size(); i++) {
+            StringJoiner conjunction = new StringJoiner(" AND ");
+            for (int j = 0; j < i; j++) {
+                conjunction.add(sortColumns.get(j).column() + " = ?");
+                args.add(cursorValues.get(j));
+            }
+            SortColumn sortColumn = sortColumns.get(i);
+            conjunction.add(sortColumn.column() + (sortColumn.desc() ? " < ?" : " > ?"));
+            args.add(cursorValues.get(i));
+            disjunction.add(conjunction.toString());
+        }
+        return disjunction.toString();
+    }
+
+    static List<Object> decodeCursor(String cursor, int size) {
+        if (cursor.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<Object> values;
+        try {
+            String json = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            values = BeanUtil.parse(json, CURSOR_TYPE);
+        } catch (RuntimeException e) {
+            throw new ErrorCodeException(QLErrorCode.CURSOR_IS_INVALID);
+        }
+        ErrorCode.assertTrue(values != null && values.size() == size, QLErrorCode.CURSOR_IS_INVALID);
+        values.replaceAll(SeekPaging::decodeValue);
+        return values;
+    }
+
+    private static Object encodeValue(Object value) {
+        if (value != null && value.getClass() == Date.class) {
+            value = new Timestamp(((Date) value).getTime());
+        }
+        String type;
+        String text;
+        if (value instanceof BigDecimal decimal) {
+            type = "BigDecimal";
+            text = decimal.toString();
+        } else if (value instanceof Timestamp timestamp) {
+            type = "Timestamp";
+            text = timestamp.toLocalDateTime().toString();
+        } else if (value instanceof java.sql.Date date) {
+            type = "Date";
+            text = date.toLocalDate().toString();
+        } else if (value instanceof Time time) {
+            type = "Time";
+            text = time.toLocalTime().toString();
+        } else if (value instanceof TemporalAccessor) {
+            if (!TYPED_PARSERS.containsKey(value.getClass().getSimpleName())) {
+                return value.toString();
+            }
+            type = value.getClass().getSimpleName();
+            text = value.toString();
+        } else {
+            return value;
+        }
+        return Map.of(type, text);
+    }
+
+    private static Object decodeValue(Object value) {
+        if (!(value instanceof Map<?, ?> typedValue)) {
+            return value;
+        }
+        ErrorCode.assertTrue(typedValue.size() == 1, QLErrorCode.CURSOR_IS_INVALID);
+        Map.Entry<?, ?> entry = typedValue.entrySet().iterator().next();
+        Function<String, Object> parser = TYPED_PARSERS.get(String.valueOf(entry.getKey()));
+        ErrorCode.assertTrue(parser != null && entry.getValue() instanceof String, QLErrorCode.CURSOR_IS_INVALID);
+        try {
+            return parser.apply((String) entry.getValue());
+        } catch (RuntimeException e) {
+            throw new ErrorCodeException(QLErrorCode.CURSOR_IS_INVALID);
+        }
+    }
+
+    /**
+     * Encode the sort values of the last row as the cursor of the next page.
+     *
+     * @param keyMapper maps a column name to the key of the column in a row
+     * @return the cursor, or null when there are no more rows
+     * @throws ErrorCodeException with {@link QLErrorCode#CURSOR_SORT_SHOULD_NOT_BE_NULL} for a NULL sort value
+     */
+    public static String nextCursor(PageQuery pageQuery, List<? extends Map<String, Object>> rows, UnaryOperator<String> keyMapper) {
+        List<String> keys = resolveSeekColumns(pageQuery).stream().map(sortColumn -> keyMapper.apply(sortColumn.column())).toList();
+        for (Map<String, Object> row : rows) {
+            for (String key : keys) {
+                ErrorCode.assertNotNull(row.get(key), QLErrorCode.CURSOR_SORT_SHOULD_NOT_BE_NULL);
+            }
+        }
+        if (rows.isEmpty() || rows.size() < pageQuery.getPageSize()) {
+            return null;
+        }
+        Map<String, Object> last = rows.get(rows.size() - 1);
+        List<Object> values = new ArrayList<>();
+        for (String key : keys) {
+            values.add(encodeValue(last.get(key)));
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(BeanUtil.stringify(values).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Copy the rows without the keys, leaving the rows untouched for the result cache.
+     */
+    public static List<Map<String, Object>> withoutKeys(List<Map<String, Object>> rows, List<String> keys) {
+        if (keys.isEmpty()) {
+            return rows;
+        }
+        List<Map<String, Object>> result = new ArrayList<>(rows.size());
+        for (Map<String, Object> row : rows) {
+            Map<String, Object> copy = new LinkedHashMap<>(row);
+            keys.forEach(copy::remove);
+            result.add(copy);
+        }
+        return result;
+    }
+}
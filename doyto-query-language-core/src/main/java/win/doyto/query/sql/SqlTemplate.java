@@ -0,0 +1,83 @@
+/*
+ *    Copyright 2022 Forb Yuan
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ *
+ */
+
+package win.doyto.query.sql;
+
+import lombok.Getter;
+import win.doyto.query.language.doytoql.DoytoQLRequest;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * SqlTemplate
+ * <p>
+ * A compiled SQL statement together with the extractors
+ * used to read its arguments from a request of the same shape.
+ *
+ * @author f0rb on 2022-04-20
+ */
+class SqlTemplate {
+
+    @Getter
+    private final String sql;
+    private final boolean withDataArgs;
+    private final ArgExtractor[] argExtractors;
+    private final LongAdder hitCount = new LongAdder();
+
+    SqlTemplate(String sql, boolean withDataArgs, List<ArgExtractor> argExtractors) {
+        this.sql = sql;
+        this.withDataArgs = withDataArgs;
+        this.argExtractors = argExtractors.toArray(new ArgExtractor[0]);
+    }
+
+    @SuppressWarnings("unchecked")
+    void fillArgs(DoytoQLRequest request, List<Object> args) {
+        if (withDataArgs) {
+            args.addAll(request.getData().get(0).values());
+        }
+        LinkedHashMap<String, Object> filters = request.getFilters();
+        if (filters == null) {
+            return;
+        }
+        int index = 0;
+        for (Map.Entry<String, Object> entry : filters.entrySet()) {
+            if (entry.getKey().endsWith("Or")) {
+                Map<String, Object> orConditions = (Map<String, Object>) entry.getValue();
+                for (Map.Entry<String, Object> orCondition : orConditions.entrySet()) {
+                    extract(index++, orCondition.getKey(), orCondition.getValue(), args);
+                }
+            } else {
+                extract(index++, entry.getKey(), entry.getValue(), args);
+            }
+        }
+    }
+
+    private void extract(int index, String fieldName, Object value, List<Object> args) {
+        argExtractors[index].extract(fieldName, InListPadding.pad(fieldName, value), args);
+    }
+
+    void recordHit() {
+        hitCount.increment();
+    }
+
+    long getHitCount() {
+        return hitCount.sum();
+    }
+}
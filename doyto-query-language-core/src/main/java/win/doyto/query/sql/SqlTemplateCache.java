@@ -0,0 +1,225 @@
+/*
+ *    Copyright 2022 Forb Yuan
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ *
+ */
+
+package win.doyto.query.sql;
+
+import lombok.Getter;
+import win.doyto.query.core.PageQuery;
+import win.doyto.query.language.doytoql.DoytoQLRequest;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * SqlTemplateCache
+ * <p>
+ * A bounded cache of compiled SQL keyed by the shape of a request:
+ * the domain, the columns, the sort, the keys of data and the keys
+ * of filters along with the kind of their values. The eldest shape
+ * is evicted first once the maximum size is exceeded.
+ *
+ * @author f0rb on 2022-04-20
+ */
+public class SqlTemplateCache {
+
+    public static final int DEFAULT_MAXIMUM_SIZE = 512;
+
+    private final Map<String, SqlTemplate> templates = new ConcurrentHashMap<>();
+    private final Queue<String> shapes = new ConcurrentLinkedQueue<>();
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+
+    @Getter
+    private volatile int maximumSize;
+
+    public SqlTemplateCache() {
+        this(DEFAULT_MAXIMUM_SIZE);
+    }
+
+    public SqlTemplateCache(int maximumSize) {
+        this.maximumSize = maximumSize;
+    }
+
+    /**
+     * Set the maximum count of templates to keep, 0 to disable the cache.
+     */
+    public void setMaximumSize(int maximumSize) {
+        this.maximumSize = maximumSize;
+        evictIfNecessary();
+    }
+
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictionCount.sum();
+    }
+
+    public int size() {
+        return templates.size();
+    }
+
+    public Statistics getStatistics(int top) {
+        return new Statistics(size(), maximumSize, getHitCount(), getMissCount(), getEvictionCount(), getStatementStatistics(top));
+    }
+
+    /**
+     * List the cached statements with the most hits first.
+     *
+     * @param limit the maximum count of statements to return
+     */
+    public List<StatementStatistic> getStatementStatistics(int limit) {
+        return templates.values().stream()
+                        .map(template -> new StatementStatistic(template.getSql(), template.getHitCount()))
+                        .sorted(Comparator.comparingLong(StatementStatistic::hitCount).reversed())
+                        .limit(limit)
+                        .toList();
+    }
+
+    public void clear() {
+        templates.clear();
+        shapes.clear();
+    }
+
+    String build(TemplateKind kind, DoytoQLRequest request, List<Object> args, TemplateBuilder builder) {
+        if (maximumSize <= 0) {
+            return builder.build(request, args, null);
+        }
+        String shape = shapeOf(kind, request);
+        SqlTemplate template = templates.get(shape);
+        if (template != null) {
+            hitCount.increment();
+            template.recordHit();
+            template.fillArgs(request, args);
+            return template.getSql();
+        }
+        missCount.increment();
+        List<ArgExtractor> argExtractors = new ArrayList<>();
+        String sql = builder.build(request, args, argExtractors);
+        if (templates.putIfAbsent(shape, new SqlTemplate(sql, kind.withData, argExtractors)) == null) {
+            shapes.offer(shape);
+            evictIfNecessary();
+        }
+        return sql;
+    }
+
+    private void evictIfNecessary() {
+        while (templates.size() > maximumSize) {
+            String eldest = shapes.poll();
+            if (eldest == null) {
+                break;
+            }
+            if (templates.remove(eldest) != null) {
+                evictionCount.increment();
+            }
+        }
+    }
+
+    static String shapeOf(TemplateKind kind, DoytoQLRequest request) {
+        StringBuilder shape = new StringBuilder(128).append(kind.ordinal());
+        appendToken(shape, request.getDomain());
+        if (kind.withColumns) {
+            List<String> columns = request.getColumns();
+            if (columns == null) {
+                shape.append('*');
+            } else {
+                shape.append('[').append(columns.size());
+                columns.forEach(column -> appendToken(shape, column));
+            }
+        }
+        if (kind.withSort) {
+            PageQuery pageQuery = request.getPage();
+            if (pageQuery == null) {
+                shape.append('~');
+            } else {
+                shape.append('P');
+                appendToken(shape, pageQuery.getSort());
+            }
+        }
+        if (kind.withData) {
+            Set<String> keys = request.getData().get(0).keySet();
+            shape.append('(').append(keys.size());
+            keys.forEach(key -> appendToken(shape, key));
+        }
+        LinkedHashMap<String, Object> filters = request.getFilters();
+        if (filters != null) {
+            appendFilters(shape, filters);
+        }
+        return shape.toString();
+    }
+
+    private static void appendFilters(StringBuilder shape, Map<?, ?> filters) {
+        shape.append('{').append(filters.size());
+        for (Map.Entry<?, ?> entry : filters.entrySet()) {
+            String fieldName = String.valueOf(entry.getKey());
+            appendToken(shape, fieldName);
+            appendValueShape(shape, fieldName, entry.getValue());
+        }
+        shape.append('}');
+    }
+
+    private static void appendValueShape(StringBuilder shape, String fieldName, Object value) {
+        if (value == null) {
+            shape.append('N');
+        } else if (value instanceof Boolean bool) {
+            shape.append(bool ? 'T' : 'F');
+        } else if (value instanceof Collection<?> collection) {
+            shape.append('C').append(InListPadding.bucketSize(fieldName, collection.size()));
+        } else if (value instanceof LinkedHashMap<?, ?> map) {
+            appendFilters(shape, map);
+        } else if (value instanceof Map) {
+            shape.append('M');
+        } else if (value instanceof String str && str.isEmpty()) {
+            shape.append('E');
+        } else {
+            shape.append('V');
+        }
+    }
+
+    private static void appendToken(StringBuilder shape, String token) {
+        if (token == null) {
+            shape.append('~');
+        } else {
+            shape.append(token.length()).append(':').append(token);
+        }
+    }
+
+    public record StatementStatistic(String sql, long hitCount) {
+    }
+
+    public record Statistics(int size, int maximumSize, long hitCount, long missCount, long evictionCount,
+                             List<StatementStatistic> statements) {
+    }
+
+    @FunctionalInterface
+    interface TemplateBuilder {
+        /**
+         * Build the sql for the request and append its arguments to args.
+         *
+         * @param argExtractors collects how to extract the argument of each condition, or null when not required
+         */
+        String build(DoytoQLRequest request, List<Object> args, List<ArgExtractor> argExtractors);
+    }
+}
@@ -0,0 +1,42 @@
+/*
+ *    Copyright 2022 Forb Yuan
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ *
+ */
+
+package win.doyto.query.sql;
+
+import lombok.AllArgsConstructor;
+
+/**
+ * TemplateKind
+ * <p>
+ * Tells which parts of a request take part in the SQL of a template.
+ *
+ * @author f0rb on 2022-04-20
+ */
+@AllArgsConstructor
+enum TemplateKind {
+    QUERY(true, true, false),
+    QUERY_WITH_TOTAL(true, true, false),
+    COUNT(false, false, false),
+    UPDATE(false, false, true),
+    DELETE(false, false, false),
+    EXISTS(false, false, false),
+    ;
+
+    final boolean withColumns;
+    final boolean withSort;
+    final boolean withData;
+}
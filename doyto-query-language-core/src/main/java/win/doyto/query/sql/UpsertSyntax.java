@@ -0,0 +1,101 @@
+/*
+ *    Copyright 2022 Forb Yuan
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ *
+ */
+
+package win.doyto.query.sql;
+
+import win.doyto.query.language.doytoql.QLErrorCode;
+import win.doyto.query.web.response.ErrorCodeException;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.StringJoiner;
+
+import static win.doyto.query.sql.Constant.SEPARATOR;
+
+/**
+ * UpsertSyntax
+ * <p>
+ * The statement to insert the rows or update the rows of the same keys, by the dialect in use:
+ * <ul>
+ *     <li>MYSQL: <code>INSERT ... ON DUPLICATE KEY UPDATE</code>, also for MariaDB</li>
+ *     <li>POSTGRESQL: <code>INSERT ... ON CONFLICT (keys) DO UPDATE</code>, also for SQLite</li>
+ *     <li>MERGE_KEY: <code>MERGE INTO ... KEY (keys) VALUES</code> of H2</li>
+ * </ul>
+ * The other dialects are not supported, so an upsert requires the dialect to be configured.
+ *
+ * @author f0rb on 2022-05-09
+ */
+enum UpsertSyntax {
+    MYSQL {
+        @Override
+        String build(String domain, String columns, String values, List<String> keys, List<String> updates) {
+            StringJoiner assignments = new StringJoiner(SEPARATOR);
+            // keep the row unchanged when all the columns are keys
+            for (String column : updates.isEmpty() ? keys.subList(0, 1) : updates) {
+                assignments.add(column + " = VALUES(" + column + ")");
+            }
+            return CrudBuilder.buildInsertSql(domain, columns, values) + " ON DUPLICATE KEY UPDATE " + assignments;
+        }
+    },
+    POSTGRESQL {
+        @Override
+        String build(String domain, String columns, String values, List<String> keys, List<String> updates) {
+            String sql = CrudBuilder.buildInsertSql(domain, columns, values) + " ON CONFLICT (" + String.join(SEPARATOR, keys) + ")";
+            if (updates.isEmpty()) {
+                return sql + " DO NOTHING";
+            }
+            StringJoiner assignments = new StringJoiner(SEPARATOR);
+            for (String column : updates) {
+                assignments.add(column + " = EXCLUDED." + column);
+            }
+            return sql + " DO UPDATE SET " + assignments;
+        }
+    },
+    MERGE_KEY {
+        @Override
+        String build(String domain, String columns, String values, List<String> keys, List<String> updates) {
+            return "MERGE INTO " + domain + " " + columns + " KEY (" + String.join(SEPARATOR, keys) + ") VALUES " + values;
+        }
+    };
+
+    /**
+     * @param columns the columns of the rows in parentheses
+     * @param values  the placeholders of the rows
+     * @param keys    the columns telling the rows to update
+     * @param updates the columns to update, which are the columns other than the keys
+     */
+    abstract String build(String domain, String columns, String values, List<String> keys, List<String> updates);
+
+    /**
+     * Choose the syntax by the simple class name of the dialect,
+     * and reject the dialects without a known syntax, including the default
+     * <code>SimpleDialect</code> which tells nothing of the database in use.
+     */
+    static UpsertSyntax of(String dialectName) {
+        String name = dialectName.toLowerCase(Locale.ROOT);
+        if (name.contains("mysql") || name.contains("mariadb")) {
+            return MYSQL;
+        }
+        if (name.contains("postgre") || name.contains("sqlite")) {
+            return POSTGRESQL;
+        }
+        if (name.startsWith("h2")) {
+            return MERGE_KEY;
+        }
+        throw new ErrorCodeException(QLErrorCode.OPERATION_NOT_SUPPORTED);
+    }
+}
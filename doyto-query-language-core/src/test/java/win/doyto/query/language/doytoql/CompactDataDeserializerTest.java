@@ -0,0 +1,107 @@
+/*
+ *    Copyright 2022 Forb Yuan
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ *
+ */
+
+package win.doyto.query.language.doytoql;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.exc.MismatchedInputException;
+import org.junit.jupiter.api.Test;
+import win.doyto.query.sql.BatchSqlAndArgs;
+import win.doyto.query.sql.QLBuilder;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * CompactDataDeserializerTest
+ *
+ * @author f0rb on 2022-05-10
+ */
+class CompactDataDeserializerTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private DoytoQLRequest read(String data) throws Exception {
+        return objectMapper.readValue("{\"operation\":\"insert\",\"domain\":\"t_user\",\"data\":" + data + "}", DoytoQLRequest.class);
+    }
+
+    @Test
+    void readRowsByColumns() throws Exception {
+        DoytoQLRequest request = read("[{\"username\":\"f0rb\",\"valid\":true,\"score\":1.5}," +
+                                              "{\"score\":2,\"username\":\"user2\",\"valid\":null}]");
+
+        assertThat(request.getData()).isInstanceOf(CompactDataList.class).hasSize(2);
+        CompactDataList data = (CompactDataList) request.getData();
+        assertThat(data.getColumns()).containsExactly("username", "valid", "score");
+        assertThat(data.valuesOf(1)).containsExactly("user2", null, 2);
+        assertThat(data.get(0)).containsExactly(Map.entry("username", "f0rb"), Map.entry("valid", true), Map.entry("score", 1.5));
+    }
+
+    @Test
+    void takeSingleObjectAsOneRow() throws Exception {
+        DoytoQLRequest request = read("{\"username\":\"f0rb\",\"tags\":[\"a\",\"b\"],\"extra\":{\"level\":1}}");
+
+        assertThat(request.getData()).hasSize(1);
+        assertThat(request.getData().get(0))
+                .containsEntry("tags", List.of("a", "b"))
+                .containsEntry("extra", Map.of("level", 1));
+    }
+
+    @Test
+    void keepNullAndEmptyData() throws Exception {
+        assertThat(read("null").getData()).isNull();
+        assertThat(read("[]").getData()).isEmpty();
+    }
+
+    @Test
+    void rejectRowsWithOtherColumns() {
+        assertThatThrownBy(() -> read("[{\"username\":\"f0rb\",\"valid\":true},{\"username\":\"user2\",\"email\":\"\"}]"))
+                .isInstanceOf(MismatchedInputException.class)
+                .hasMessageContaining("Row 1 of data should share the columns of the first row, but got email");
+        assertThatThrownBy(() -> read("[{\"username\":\"f0rb\",\"valid\":true},{\"username\":\"user2\"}]"))
+                .isInstanceOf(MismatchedInputException.class)
+                .hasMessageContaining("but got 1 columns");
+        assertThatThrownBy(() -> read("[{\"username\":\"f0rb\"},{\"username\":\"a\",\"username\":\"b\"}]"))
+                .isInstanceOf(MismatchedInputException.class);
+    }
+
+    @Test
+    void rejectMalformedRows() {
+        assertThatThrownBy(() -> read("[{\"username\":\"f0rb\"}, 1]"))
+                .isInstanceOf(MismatchedInputException.class)
+                .hasMessageContaining("Row 1 of data should be an object");
+        assertThatThrownBy(() -> read("[{\"username\":\"f0rb\",\"username\":\"f0rb\"}]"))
+                .isInstanceOf(MismatchedInputException.class)
+                .hasMessageContaining("should not repeat the column username");
+        assertThatThrownBy(() -> read("\"f0rb\""))
+                .isInstanceOf(MismatchedInputException.class);
+    }
+
+    @Test
+    void buildInsertFromColumnarRows() throws Exception {
+        DoytoQLRequest request = read("[{\"username\":\"f0rb\",\"valid\":true},{\"valid\":false,\"username\":\"user2\"}]");
+
+        BatchSqlAndArgs batchSqlAndArgs = QLBuilder.buildInsertBatchSql(request);
+
+        assertThat(batchSqlAndArgs.getSql()).isEqualTo("INSERT INTO t_user (username, valid) VALUES (?, ?)");
+        assertThat(batchSqlAndArgs.getBatchArgs().get(1)).containsExactly("user2", false);
+        assertThat(QLBuilder.buildInsertSql(request).getArgs()).containsExactly("f0rb", true, "user2", false);
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ *    Copyright 2022 Forb Yuan
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ *
+ */
+
+package win.doyto.query.language.doytoql;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * CompactRowMapTest
+ *
+ * @author f0rb on 2022-04-29
+ */
+class CompactRowMapTest {
+
+    private final CompactRowMap.Keys keys = new CompactRowMap.Keys(new String[]{"id", "username", "id"});
+
+    private CompactRowMap buildRow() {
+        Object[] values = new Object[keys.size()];
+        Object[] columns = {1, "f0rb", 2};
+        for (int i = 0; i < keys.columnCount(); i++) {
+            values[keys.slotOf(i)] = columns[i];
+        }
+        return new CompactRowMap(keys, values);
+    }
+
+    @Test
+    void shouldBehaveLikeLinkedHashMap() {
+        Map<String, Object> expected = new LinkedHashMap<>();
+        expected.put("id", 1);
+        expected.put("username", "f0rb");
+        expected.put("id", 2);
+
+        CompactRowMap row = buildRow();
+
+        assertThat(row).isEqualTo(expected);
+        assertThat(row.keySet()).containsExactly("id", "username");
+        assertThat(row.get("id")).isEqualTo(2);
+        assertThat(row.get(null)).isNull();
+    }
+
+    @Test
+    void supportRemoveAndPutBack() {
+        CompactRowMap row = buildRow();
+
+        assertThat(row.remove("id")).isEqualTo(2);
+        assertThat(row).hasSize(1).doesNotContainKey("id");
+        assertThat(row.put("id", 3)).isNull();
+        assertThat(row).hasSize(2).containsEntry("id", 3);
+    }
+
+    @Test
+    void shouldNotSupportUnknownKey() {
+        CompactRowMap row = buildRow();
+
+        assertThatThrownBy(() -> row.put("email", "test@qq.com"))
+                .isInstanceOf(UnsupportedOperationException.class);
+    }
+}
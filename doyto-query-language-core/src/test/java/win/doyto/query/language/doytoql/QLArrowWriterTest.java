@@ -0,0 +1,107 @@
+/*
+ *    Copyright 2022 Forb Yuan
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ *
+ */
+
+package win.doyto.query.language.doytoql;
+
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.ipc.ArrowStreamReader;
+import org.apache.arrow.vector.types.pojo.ArrowType;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * QLArrowWriterTest
+ *
+ * @author f0rb on 2022-05-11
+ */
+class QLArrowWriterTest {
+
+    private static final String[] NAMES = {"id", "username", "score", "valid", "birthday", "createTime", "balance"};
+    private static final Class<?>[] TYPES = {Long.class, String.class, Double.class, Boolean.class,
+            LocalDate.class, LocalDateTime.class, BigDecimal.class};
+
+    private static List<String> readBatches(byte[] bytes, List<Integer> rowCounts) throws Exception {
+        List<String> tsv = new ArrayList<>();
+        try (RootAllocator allocator = new RootAllocator();
+             ArrowStreamReader reader = new ArrowStreamReader(new ByteArrayInputStream(bytes), allocator)) {
+            VectorSchemaRoot root = reader.getVectorSchemaRoot();
+            while (reader.loadNextBatch()) {
+                rowCounts.add(root.getRowCount());
+                tsv.add(root.contentToTSVString());
+            }
+        }
+        return tsv;
+    }
+
+    @Test
+    void writeRowsInBatches() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (QLArrowWriter writer = new QLArrowWriter(out, 2)) {
+            writer.start(NAMES, TYPES);
+            writer.write(new Object[]{1L, "f0rb", 1.5, true, LocalDate.of(2000, 1, 2), LocalDateTime.of(2022, 5, 1, 8, 0), new BigDecimal("10.20")});
+            writer.write(new Object[]{2L, "user2", null, false, null, null, null});
+            writer.write(new Object[]{3L, "user3", 3.0, null, null, null, BigDecimal.ONE});
+            writer.end();
+        }
+
+        List<Integer> rowCounts = new ArrayList<>();
+        List<String> batches = readBatches(out.toByteArray(), rowCounts);
+
+        assertThat(rowCounts).containsExactly(2, 1);
+        assertThat(batches.get(0)).contains("f0rb\t1.5\ttrue", "10.20", "user2\tnull\tfalse");
+        assertThat(batches.get(1)).contains("3\tuser3\t3.0\tnull");
+    }
+
+    @Test
+    void writeSchemaByJavaTypes() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (QLArrowWriter writer = new QLArrowWriter(out, 10)) {
+            writer.start(NAMES, TYPES);
+            writer.end();
+        }
+
+        try (RootAllocator allocator = new RootAllocator();
+             ArrowStreamReader reader = new ArrowStreamReader(new ByteArrayInputStream(out.toByteArray()), allocator)) {
+            VectorSchemaRoot root = reader.getVectorSchemaRoot();
+            assertThat(root.getSchema().getFields()).extracting(field -> field.getType().getTypeID())
+                    .containsExactly(ArrowType.ArrowTypeID.Int, ArrowType.ArrowTypeID.Utf8, ArrowType.ArrowTypeID.FloatingPoint,
+                                     ArrowType.ArrowTypeID.Bool, ArrowType.ArrowTypeID.Date, ArrowType.ArrowTypeID.Timestamp,
+                                     ArrowType.ArrowTypeID.Utf8);
+            assertThat(reader.loadNextBatch()).isFalse();
+        }
+    }
+
+    @Test
+    void writeEmptySchemaWithoutRows() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (QLArrowWriter writer = new QLArrowWriter(out, 10)) {
+            writer.end();
+        }
+
+        assertThat(readBatches(out.toByteArray(), new ArrayList<>())).isEmpty();
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ *    Copyright 2022 Forb Yuan
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ *
+ */
+
+package win.doyto.query.language.doytoql;
+
+import org.junit.jupiter.api.Test;
+import win.doyto.query.core.PageQuery;
+import win.doyto.query.web.response.ErrorCodeException;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * QLCostGuardTest
+ *
+ * @author f0rb on 2022-05-06
+ */
+class QLCostGuardTest {
+
+    private static final QLProperties.TableStatistics T_USER = new QLProperties.TableStatistics();
+
+    static {
+        T_USER.setRows(1_000_000);
+        T_USER.setIndexes(Map.of("id", 1L, "user_level", 50_000L, "username", 1L));
+    }
+
+    private final QLCostGuard costGuard = new QLCostGuard(Map.of("t_user", T_USER), 10_000, 500_000, 100);
+
+    private static DoytoQLRequest buildRequest(String operation, Map<String, Object> filters) {
+        DoytoQLRequest request = new DoytoQLRequest();
+        request.setOperation(operation);
+        request.setDomain("t_user");
+        request.setFilters(filters == null ? null : new LinkedHashMap<>(filters));
+        return request;
+    }
+
+    @Test
+    void estimateByMostSelectiveIndex() {
+        assertThat(QLCostGuard.estimate(T_USER, null)).isEqualTo(1_000_000);
+        assertThat(QLCostGuard.estimate(T_USER, Map.of("id", 1))).isEqualTo(1);
+        assertThat(QLCostGuard.estimate(T_USER, Map.of("idIn", List.of(1, 2, 3)))).isEqualTo(3);
+        assertThat(QLCostGuard.estimate(T_USER, Map.of("user_level", "VIP", "memo", "x"))).isEqualTo(50_000);
+        assertThat(QLCostGuard.estimate(T_USER, Map.of("idGt", 10))).isEqualTo(333_333);
+        assertThat(QLCostGuard.estimate(T_USER, Map.of("usernameStart", "f0"))).isEqualTo(333_333);
+        assertThat(QLCostGuard.estimate(T_USER, Map.of("idNotIn", List.of(1)))).isEqualTo(1_000_000);
+        assertThat(QLCostGuard.estimate(T_USER, Map.of("usernameLike", "f0"))).isEqualTo(1_000_000);
+        assertThat(QLCostGuard.estimate(T_USER, Map.of("emailEq", "a@b.c"))).isEqualTo(1_000_000);
+    }
+
+    @Test
+    void estimateOrGroupByUnionOfBranches() {
+        assertThat(QLCostGuard.estimate(T_USER, Map.of("accountOr", Map.of("username", "f0rb", "id", 1)))).isEqualTo(2);
+        assertThat(QLCostGuard.estimate(T_USER, Map.of("accountOr", Map.of("username", "f0rb", "email", "a@b.c"))))
+                .isEqualTo(1_000_000);
+    }
+
+    @Test
+    void rejectFullScan() {
+        DoytoQLRequest request = buildRequest("delete", Map.of("memoContain", "x"));
+
+        assertThatThrownBy(() -> costGuard.guard(request))
+                .isInstanceOf(ErrorCodeException.class)
+                .hasMessage("REQUEST_TOO_EXPENSIVE");
+    }
+
+    @Test
+    void pageUnpagedQueryAndDropCount() {
+        DoytoQLRequest request = buildRequest("query", Map.of("user_level", "VIP"));
+
+        costGuard.guard(request);
+
+        assertThat(request.getPage().getPageSize()).isEqualTo(100);
+        assertThat(request.getCount()).isEqualTo("none");
+    }
+
+    @Test
+    void keepPageOfExpensiveQuery() {
+        DoytoQLRequest request = buildRequest("query", Map.of("user_level", "VIP"));
+        request.setPage(PageQuery.builder().pageNumber(2).pageSize(20).build());
+
+        costGuard.guard(request);
+
+        assertThat(request.getPage().getPageSize()).isEqualTo(20);
+        assertThat(request.getCount()).isEqualTo("none");
+    }
+
+    @Test
+    void passCheapQueryAndUnknownDomain() {
+        DoytoQLRequest request = buildRequest("query", Map.of("id", 1));
+        costGuard.guard(request);
+        assertThat(request.getPage()).isNull();
+        assertThat(request.getCount()).isNull();
+
+        DoytoQLRequest unknown = buildRequest("query", null);
+        unknown.setDomain("t_other");
+        assertThat(costGuard.check(unknown)).isEqualTo(-1);
+    }
+}
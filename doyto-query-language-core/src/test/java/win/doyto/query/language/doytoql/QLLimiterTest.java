@@ -0,0 +1,103 @@
+/*
+ *    Copyright 2022 Forb Yuan
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ *
+ */
+
+package win.doyto.query.language.doytoql;
+
+import org.junit.jupiter.api.Test;
+import win.doyto.query.web.response.ErrorCodeException;
+
+import java.time.Duration;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * QLLimiterTest
+ *
+ * @author f0rb on 2022-05-02
+ */
+class QLLimiterTest {
+
+    private static DoytoQLRequest buildRequest(Integer timeout) {
+        DoytoQLRequest request = new DoytoQLRequest();
+        request.setOperation("query");
+        request.setDomain("t_user");
+        request.setTimeout(timeout);
+        return request;
+    }
+
+    @Test
+    void capTimeoutByMaxTimeout() {
+        QLLimiter limiter = new QLLimiter(Duration.ofSeconds(10), Map.of(), 0, Duration.ZERO);
+
+        assertThat(limiter.timeoutOf(buildRequest(null))).isEqualTo(Duration.ofSeconds(10));
+        assertThat(limiter.timeoutOf(buildRequest(3))).isEqualTo(Duration.ofSeconds(3));
+        assertThat(limiter.timeoutOf(buildRequest(60))).isEqualTo(Duration.ofSeconds(10));
+    }
+
+    @Test
+    void keepRequestedTimeoutWhenMaxTimeoutIsZero() {
+        QLLimiter limiter = new QLLimiter(Duration.ZERO, Map.of(), 0, Duration.ZERO);
+
+        assertThat(limiter.timeoutOf(buildRequest(null))).isZero();
+        assertThat(limiter.timeoutSecondsOf(buildRequest(60))).isEqualTo(60);
+    }
+
+    @Test
+    void roundUpTimeoutInSeconds() {
+        QLLimiter limiter = new QLLimiter(Duration.ofMillis(1500), Map.of(), 0, Duration.ZERO);
+
+        assertThat(limiter.timeoutSecondsOf(buildRequest(null))).isEqualTo(2);
+    }
+
+    @Test
+    void rejectWhenBulkheadIsFull() {
+        QLLimiter limiter = new QLLimiter(Duration.ZERO, Map.of("t_user", 2), 0, Duration.ofMillis(10));
+        limiter.acquire("t_user");
+        limiter.tryAcquire("t_user");
+
+        assertThatThrownBy(() -> limiter.acquire("t_user"))
+                .isInstanceOf(ErrorCodeException.class)
+                .hasMessage("TOO_MANY_CONCURRENT_REQUESTS");
+        assertThatThrownBy(() -> limiter.tryAcquire("t_user"))
+                .isInstanceOf(ErrorCodeException.class)
+                .hasMessage("TOO_MANY_CONCURRENT_REQUESTS");
+
+        limiter.release("t_user");
+        limiter.tryAcquire("t_user");
+        assertThat(limiter.availablePermits("t_user")).isZero();
+    }
+
+    @Test
+    void applyDefaultLimitToOtherDomains() {
+        QLLimiter limiter = new QLLimiter(Duration.ZERO, Map.of("t_user", 0), 1, Duration.ZERO);
+
+        assertThat(limiter.availablePermits("t_user")).isEqualTo(-1);
+        assertThat(limiter.availablePermits("t_role")).isEqualTo(1);
+    }
+
+    @Test
+    void shareBulkheadAmongUnknownDomains() {
+        QLLimiter limiter = new QLLimiter(Duration.ZERO, Map.of("t_user", 1), 1, Duration.ZERO, "t_role"::equals);
+        limiter.tryAcquire("t_unknown1");
+
+        assertThat(limiter.availablePermits("t_unknown2")).isZero();
+        assertThat(limiter.availablePermits("t_user")).isEqualTo(1);
+        assertThat(limiter.availablePermits("t_role")).isEqualTo(1);
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ *    Copyright 2022 Forb Yuan
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ *
+ */
+
+package win.doyto.query.language.doytoql;
+
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import win.doyto.query.sql.SqlAndArgs;
+import win.doyto.query.web.response.ErrorCodeException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * QLMetricsTest
+ *
+ * @author f0rb on 2022-05-03
+ */
+class QLMetricsTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final QLMetrics metrics = new QLMetrics(registry);
+
+    private static DoytoQLRequest buildRequest(String domain) {
+        DoytoQLRequest request = new DoytoQLRequest();
+        request.setOperation("query");
+        request.setDomain(domain);
+        return request;
+    }
+
+    private Timer timer(String stage, String domain, String outcome) {
+        return registry.find("doytoql.stage")
+                       .tags("stage", stage, "operation", "query", "domain", domain, "outcome", outcome)
+                       .timer();
+    }
+
+    @Test
+    void timeStageWithOutcome() {
+        DoytoQLRequest request = buildRequest("t_user");
+
+        assertThat(metrics.time(QLMetrics.Stage.BUILD, request, () -> "sql")).isEqualTo("sql");
+        assertThatThrownBy(() -> metrics.time(QLMetrics.Stage.EXECUTE, request, () -> {
+            throw new ErrorCodeException(QLErrorCode.QUERY_TIMEOUT);
+        })).isInstanceOf(ErrorCodeException.class);
+
+        assertThat(timer("build", "t_user", QLMetrics.SUCCESS).count()).isEqualTo(1);
+        assertThat(timer("execute", "t_user", "QUERY_TIMEOUT").count()).isEqualTo(1);
+    }
+
+    @Test
+    void recordDistributions() {
+        DoytoQLRequest request = buildRequest("t_user");
+        SqlAndArgs sqlAndArgs = SqlAndArgs.buildSqlWithArgs(args -> {
+            args.add(1);
+            args.add(2);
+            return "SELECT * FROM t_user WHERE id IN (?, ?)";
+        });
+
+        metrics.recordSql(request, sqlAndArgs);
+        metrics.recordRows(request, 5);
+
+        assertThat(registry.find("doytoql.args").summary().totalAmount()).isEqualTo(2);
+        assertThat(registry.find("doytoql.sql.length").summary().totalAmount()).isEqualTo(sqlAndArgs.getSql().length());
+        assertThat(registry.find("doytoql.rows").summary().totalAmount()).isEqualTo(5);
+    }
+
+    @Test
+    void tagOtherDomainsBeyondLimit() {
+        for (int i = 0; i < QLMetrics.MAX_DOMAINS; i++) {
+            metrics.recordRows(buildRequest("t_" + i), 1);
+        }
+        metrics.recordRows(buildRequest("t_more"), 1);
+
+        assertThat(registry.find("doytoql.rows").tag("domain", "other").summary()).isNotNull();
+        assertThat(registry.find("doytoql.rows").tag("domain", "t_more").summary()).isNull();
+    }
+
+    @Test
+    void tagOtherOperationsOutOfSupported() {
+        DoytoQLRequest request = buildRequest("t_user");
+        request.setOperation("drop-" + System.nanoTime());
+
+        metrics.recordRows(request, 1);
+
+        assertThat(registry.find("doytoql.rows").tag("operation", "other").summary()).isNotNull();
+        assertThat(registry.find("doytoql.rows").tag("operation", request.getOperation()).summary()).isNull();
+    }
+
+    @Test
+    void recordNothingWhenDisabled() {
+        assertThat(QLMetrics.NOOP.isEnabled()).isFalse();
+        assertThat(QLMetrics.NOOP.start()).isZero();
+        assertThat(QLMetrics.NOOP.time(QLMetrics.Stage.BUILD, buildRequest("t_user"), () -> 1)).isEqualTo(1);
+    }
+}
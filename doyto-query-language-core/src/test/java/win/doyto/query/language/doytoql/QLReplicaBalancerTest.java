@@ -0,0 +1,76 @@
+/*
+ *    Copyright 2022 Forb Yuan
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ *
+ */
+
+package win.doyto.query.language.doytoql;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * QLReplicaBalancerTest
+ *
+ * @author f0rb on 2022-05-01
+ */
+class QLReplicaBalancerTest {
+
+    @Test
+    void roundRobin() {
+        QLReplicaBalancer balancer = new QLReplicaBalancer(QLReplicaBalancer.Strategy.ROUND_ROBIN, 3);
+
+        assertThat(new int[]{balancer.acquire(), balancer.acquire(), balancer.acquire(), balancer.acquire()})
+                .containsExactly(0, 1, 2, 0);
+        assertThat(balancer.getOutstanding(0)).isEqualTo(2);
+    }
+
+    @Test
+    void leastOutstanding() {
+        QLReplicaBalancer balancer = new QLReplicaBalancer(QLReplicaBalancer.Strategy.LEAST_OUTSTANDING, 3);
+        int first = balancer.acquire();
+        int second = balancer.acquire();
+        int third = balancer.acquire();
+        assertThat(new int[]{first, second, third}).containsExactlyInAnyOrder(0, 1, 2);
+
+        balancer.release(second);
+        assertThat(balancer.acquire()).isEqualTo(second);
+        assertThat(balancer.acquire()).isEqualTo(second);
+
+        balancer.release(first);
+        assertThat(balancer.getOutstanding(first)).isZero();
+        assertThat(balancer.acquire()).isEqualTo(first);
+    }
+
+    @Test
+    void pinSessionWithinWindow() {
+        QLSessionPins sessionPins = new QLSessionPins(Duration.ofMinutes(1));
+        sessionPins.pin("s1");
+
+        assertThat(sessionPins.isPinned("s1")).isTrue();
+        assertThat(sessionPins.isPinned("s2")).isFalse();
+        assertThat(sessionPins.isPinned(null)).isFalse();
+    }
+
+    @Test
+    void skipPinWhenWindowIsZero() {
+        QLSessionPins sessionPins = new QLSessionPins(Duration.ZERO);
+        sessionPins.pin("s1");
+
+        assertThat(sessionPins.isPinned("s1")).isFalse();
+    }
+}
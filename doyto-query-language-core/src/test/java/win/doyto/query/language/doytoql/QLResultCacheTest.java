@@ -0,0 +1,120 @@
+/*
+ *    Copyright 2022 Forb Yuan
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ *
+ */
+
+package win.doyto.query.language.doytoql;
+
+import org.junit.jupiter.api.Test;
+import win.doyto.query.sql.SqlAndArgs;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * QLResultCacheTest
+ *
+ * @author f0rb on 2022-04-28
+ */
+class QLResultCacheTest {
+
+    private final QLResultCache resultCache = new QLResultCache(Set.of("t_user"), 2, 1024, Duration.ofMinutes(1));
+    private final AtomicInteger loadCount = new AtomicInteger();
+
+    private static SqlAndArgs queryById(int id) {
+        return SqlAndArgs.buildSqlWithArgs(args -> {
+            args.add(id);
+            return "SELECT * FROM t_user WHERE id = ?";
+        });
+    }
+
+    private Object load(String domain, SqlAndArgs sqlAndArgs) {
+        return resultCache.get(domain, sqlAndArgs, () -> List.of(Map.of("id", loadCount.incrementAndGet())), QLResultCache::weigh);
+    }
+
+    @Test
+    void shouldCacheByDomainSqlAndArgs() {
+        Object first = load("t_user", queryById(1));
+
+        assertThat(load("t_user", queryById(1))).isSameAs(first);
+        assertThat(load("t_user", queryById(2))).isNotEqualTo(first);
+        assertThat(loadCount).hasValue(2);
+        assertThat(resultCache.getStatistics().hitCount()).isEqualTo(1);
+        assertThat(resultCache.getStatistics().missCount()).isEqualTo(2);
+    }
+
+    @Test
+    void shouldSkipDomainsNotEnabled() {
+        load("t_perm", queryById(1));
+        load("t_perm", queryById(1));
+
+        assertThat(loadCount).hasValue(2);
+        assertThat(resultCache.getStatistics().size()).isZero();
+    }
+
+    @Test
+    void shouldDropEntriesOfDomainOnInvalidation() {
+        load("t_user", queryById(1));
+        resultCache.invalidate("t_user");
+        load("t_user", queryById(1));
+
+        assertThat(loadCount).hasValue(2);
+        assertThat(resultCache.getStatistics().invalidationCount()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldNotCacheResultLoadedBeforeInvalidation() {
+        SqlAndArgs sqlAndArgs = queryById(1);
+        long generation = resultCache.generation("t_user");
+        resultCache.invalidate("t_user");
+        resultCache.put("t_user", sqlAndArgs, generation, List.of(), 40);
+
+        assertThat((Object) resultCache.getIfPresent("t_user", sqlAndArgs)).isNull();
+    }
+
+    @Test
+    void shouldEvictEldestBeyondMaximumSize() {
+        load("t_user", queryById(1));
+        load("t_user", queryById(2));
+        load("t_user", queryById(3));
+        load("t_user", queryById(1));
+
+        assertThat(loadCount).hasValue(4);
+        assertThat(resultCache.getStatistics().size()).isEqualTo(2);
+        assertThat(resultCache.getStatistics().evictionCount()).isEqualTo(2);
+    }
+
+    @Test
+    void shouldNotCacheResultHeavierThanMaximumBytes() {
+        SqlAndArgs sqlAndArgs = queryById(1);
+        resultCache.put("t_user", sqlAndArgs, 0, "x".repeat(1000), QLResultCache.weigh("x".repeat(1000)));
+
+        assertThat(resultCache.getStatistics().size()).isZero();
+    }
+
+    @Test
+    void shouldExpireAfterTtl() {
+        QLResultCache expiringCache = new QLResultCache(Set.of("t_user"), 2, 1024, Duration.ZERO);
+        SqlAndArgs sqlAndArgs = queryById(1);
+        expiringCache.put("t_user", sqlAndArgs, 0, List.of(), 40);
+
+        assertThat((Object) expiringCache.getIfPresent("t_user", sqlAndArgs)).isNull();
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ *    Copyright 2022 Forb Yuan
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ *
+ */
+
+package win.doyto.query.language.doytoql;
+
+import org.junit.jupiter.api.Test;
+import win.doyto.query.web.response.ErrorCodeException;
+
+import java.math.BigDecimal;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * QLShardRouterTest
+ *
+ * @author f0rb on 2022-04-30
+ */
+class QLShardRouterTest {
+
+    private final QLShardRouter shardRouter = new QLShardRouter(Map.of("t_user", "id"), 3);
+
+    private static DoytoQLRequest buildRequest(Map<String, Object> filters) {
+        DoytoQLRequest request = new DoytoQLRequest();
+        request.setOperation("query");
+        request.setDomain("t_user");
+        request.setFilters(new LinkedHashMap<>(filters));
+        return request;
+    }
+
+    @Test
+    void shouldShardConfiguredDomainsOnly() {
+        assertThat(shardRouter.isSharded("t_user")).isTrue();
+        assertThat(shardRouter.isSharded("t_perm")).isFalse();
+        assertThat(new QLShardRouter(Map.of("t_user", "id"), 0).isSharded("t_user")).isFalse();
+    }
+
+    @Test
+    void routeByShardKey() {
+        assertThat(shardRouter.route(buildRequest(Map.of("id", 4)))).containsExactly(1);
+        assertThat(shardRouter.route(buildRequest(Map.of("idIn", List.of(1, 4, 5))))).containsExactly(1, 2);
+        assertThat(shardRouter.route(buildRequest(Map.of("username", "f0rb")))).containsExactly(0, 1, 2);
+    }
+
+    @Test
+    void routeSameKeyOfDifferentTypesToSameShard() {
+        assertThat(shardRouter.shardOf("4")).isEqualTo(shardRouter.shardOf(4)).isEqualTo(1);
+        assertThat(shardRouter.shardOf(4L)).isEqualTo(1);
+        assertThat(shardRouter.shardOf(new BigDecimal("4.00"))).isEqualTo(1);
+        assertThat(shardRouter.shardOf(-4.0)).isEqualTo(shardRouter.shardOf("-4"));
+        assertThat(shardRouter.shardOf("f0rb")).isEqualTo(Math.floorMod("f0rb".hashCode(), 3));
+    }
+
+    @Test
+    void splitDataByShardKey() {
+        DoytoQLRequest request = buildRequest(Map.of());
+        request.setOperation("insert");
+        request.setData(List.of(new LinkedHashMap<>(Map.of("id", 3)), new LinkedHashMap<>(Map.of("id", 4)),
+                                new LinkedHashMap<>(Map.of("id", 6))));
+
+        Map<Integer, DoytoQLRequest> requests = shardRouter.splitData(request);
+
+        assertThat(requests).containsOnlyKeys(0, 1);
+        assertThat(requests.get(0).getData()).extracting(datum -> datum.get("id")).containsExactly(3, 6);
+        assertThat(requests.get(1).getOperation()).isEqualTo("insert");
+    }
+
+    @Test
+    void shouldFailWhenDataMissesShardKey() {
+        DoytoQLRequest request = buildRequest(Map.of());
+        request.setData(List.of(new LinkedHashMap<>(Map.of("username", "f0rb"))));
+
+        assertThatThrownBy(() -> shardRouter.splitData(request))
+                .isInstanceOf(ErrorCodeException.class)
+                .hasMessage("SHARD_KEY_SHOULD_NOT_BE_NULL");
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ *    Copyright 2022 Forb Yuan
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ *
+ */
+
+package win.doyto.query.language.doytoql;
+
+import org.junit.jupiter.api.Test;
+import win.doyto.query.sql.SqlAndArgs;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * QLSlowQueryLogTest
+ *
+ * @author f0rb on 2022-05-04
+ */
+class QLSlowQueryLogTest {
+
+    private static final long MILLIS = 1_000_000L;
+
+    private static DoytoQLRequest buildRequest() {
+        DoytoQLRequest request = new DoytoQLRequest();
+        request.setOperation("query");
+        request.setDomain("t_user");
+        return request;
+    }
+
+    private static SqlAndArgs queryByIds(Object... ids) {
+        return SqlAndArgs.buildSqlWithArgs(args -> {
+            args.addAll(List.of(ids));
+            return "SELECT * FROM t_user WHERE id IN (" + "?, ".repeat(ids.length - 1) + "?)";
+        });
+    }
+
+    @Test
+    void aggregateSlowStatementsByShape() {
+        QLSlowQueryLog slowQueryLog = new QLSlowQueryLog(Duration.ofMillis(100), false, 10);
+
+        assertThat(slowQueryLog.record(buildRequest(), queryByIds(1, 2), 50 * MILLIS)).isFalse();
+        slowQueryLog.record(buildRequest(), queryByIds(1, 2), 200 * MILLIS);
+        slowQueryLog.record(buildRequest(), queryByIds(1, 2, 3), 300 * MILLIS);
+
+        List<QLSlowQueryLog.SlowStatement> slowStatements = slowQueryLog.getSlowStatements(5);
+        assertThat(slowStatements).hasSize(1);
+        QLSlowQueryLog.SlowStatement slowStatement = slowStatements.get(0);
+        assertThat(slowStatement.sql()).isEqualTo("SELECT * FROM t_user WHERE id IN (?...)");
+        assertThat(slowStatement.count()).isEqualTo(2);
+        assertThat(slowStatement.maxMillis()).isEqualTo(300.0);
+        assertThat(slowStatement.totalMillis()).isEqualTo(500.0);
+        assertThat(slowStatement.lastArgs()).isEqualTo("[Integer, Integer, Integer]");
+    }
+
+    @Test
+    void dropFastestStatementBeyondMaximum() {
+        QLSlowQueryLog slowQueryLog = new QLSlowQueryLog(Duration.ofMillis(100), false, 1);
+        SqlAndArgs byName = SqlAndArgs.buildSqlWithArgs(args -> {
+            args.add("f0rb");
+            return "SELECT * FROM t_user WHERE username = ?";
+        });
+
+        slowQueryLog.record(buildRequest(), queryByIds(1), 200 * MILLIS);
+        slowQueryLog.record(buildRequest(), byName, 300 * MILLIS);
+
+        assertThat(slowQueryLog.getSlowStatements(5))
+                .extracting(QLSlowQueryLog.SlowStatement::sql)
+                .containsExactly("SELECT * FROM t_user WHERE username = ?");
+    }
+
+    @Test
+    void explainOnlyOnceForEachShape() {
+        QLSlowQueryLog slowQueryLog = new QLSlowQueryLog(Duration.ofMillis(100), true, 10);
+
+        assertThat(slowQueryLog.record(buildRequest(), queryByIds(1), 200 * MILLIS)).isTrue();
+        assertThat(slowQueryLog.record(buildRequest(), queryByIds(1), 200 * MILLIS)).isFalse();
+    }
+
+    @Test
+    void skipExplainOnDialectsWithoutExplainInAnyCase() {
+        String sql = "SELECT * FROM t_user WHERE id = ?";
+
+        assertThat(QLSlowQueryLog.explainSqlOf(sql, "MySQL8Dialect")).isEqualTo("EXPLAIN " + sql);
+        assertThat(QLSlowQueryLog.explainSqlOf(sql, "SQLServerDialect")).isNull();
+        assertThat(QLSlowQueryLog.explainSqlOf(sql, "SqlServerDialect")).isNull();
+        assertThat(QLSlowQueryLog.explainSqlOf(sql, "ORACLEDialect")).isNull();
+        assertThat(QLSlowQueryLog.explainSqlOf("UPDATE t_user SET valid = ?", "MySQL8Dialect")).isNull();
+    }
+
+    @Test
+    void summarizeArgsWithoutValues() {
+        assertThat(QLSlowQueryLog.summarizeArgs(new Object[]{"secret", null, new ArrayList<>(List.of(1, 2)), 3L}))
+                .isEqualTo("[String(6), null, ArrayList(2), Long]");
+    }
+}
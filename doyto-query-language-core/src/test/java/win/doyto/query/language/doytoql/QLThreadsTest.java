@@ -0,0 +1,96 @@
+/*
+ *    Copyright 2022 Forb Yuan
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ *
+ */
+
+package win.doyto.query.language.doytoql;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.api.Assumptions.assumeFalse;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * QLThreadsTest
+ *
+ * @author f0rb on 2022-05-05
+ */
+class QLThreadsTest {
+
+    @Test
+    void runOnPlatformThreads() throws Exception {
+        ExecutorService executorService = QLThreads.newBoundedExecutor(2, false, "ql-test-");
+
+        String name = executorService.submit(() -> Thread.currentThread().getName()).get(1, TimeUnit.SECONDS);
+
+        assertThat(name).startsWith("pool-");
+        executorService.shutdown();
+    }
+
+    @Test
+    void runOnVirtualThreads() throws Exception {
+        assumeTrue(QLThreads.isVirtualThreadSupported());
+        ExecutorService executorService = QLThreads.newVirtualThreadPerTaskExecutor("ql-test-");
+
+        String name = executorService.submit(() -> Thread.currentThread().getName()).get(1, TimeUnit.SECONDS);
+
+        assertThat(name).isEqualTo("ql-test-0");
+        executorService.shutdown();
+    }
+
+    @Test
+    void boundTasksOnVirtualThreads() throws Exception {
+        assumeTrue(QLThreads.isVirtualThreadSupported());
+        ExecutorService executorService = QLThreads.newBoundedExecutor(2, true, "ql-test-");
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+
+        List<Future<String>> futures = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            futures.add(executorService.submit(() -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                Thread.sleep(20);
+                running.decrementAndGet();
+                return Thread.currentThread().getName();
+            }));
+        }
+        List<String> names = new ArrayList<>();
+        for (Future<String> future : futures) {
+            names.add(future.get(1, TimeUnit.SECONDS));
+        }
+
+        assertThat(maxRunning.get()).isEqualTo(2);
+        assertThat(names).doesNotHaveDuplicates().allMatch(name -> name.startsWith("ql-test-"));
+        executorService.shutdown();
+    }
+
+    @Test
+    void failFastBeforeJava21() {
+        assumeFalse(QLThreads.isVirtualThreadSupported());
+
+        assertThatThrownBy(() -> QLThreads.newBoundedExecutor(2, true, "ql-test-"))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageStartingWith("Virtual threads require Java 21");
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ *    Copyright 2022 Forb Yuan
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ *
+ */
+
+package win.doyto.query.sql;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import win.doyto.query.config.GlobalConfiguration;
+import win.doyto.query.language.doytoql.DoytoQLRequest;
+import win.doyto.query.web.response.ErrorCodeException;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * ColumnRegistryTest
+ *
+ * @author f0rb on 2022-05-07
+ */
+class ColumnRegistryTest {
+
+    private ColumnRegistry columnRegistry;
+
+    @BeforeEach
+    void setUp() {
+        columnRegistry = new ColumnRegistry();
+        columnRegistry.load(Map.of("T_USER", List.of("ID", "USERNAME", "EMAIL", "MEMO"), "t_post", List.of("id", "postTitle")));
+    }
+
+    private static DoytoQLRequest buildRequest(String domain, List<String> columns) {
+        DoytoQLRequest request = new DoytoQLRequest();
+        request.setOperation("query");
+        request.setDomain(domain);
+        request.setColumns(columns);
+        return request;
+    }
+
+    @Test
+    void canonicalizeColumns() {
+        DoytoQLRequest request = buildRequest("t_user", List.of("Username", "email"));
+
+        columnRegistry.project(request);
+
+        assertThat(request.getColumns()).containsExactly("username", "email");
+        assertThat(columnRegistry.getColumns("t_user")).containsExactly("id", "username", "email", "memo");
+    }
+
+    @Test
+    void keepMixedCaseColumns() {
+        DoytoQLRequest request = buildRequest("t_post", List.of("posttitle"));
+
+        columnRegistry.project(request);
+
+        assertThat(request.getColumns()).containsExactly("postTitle");
+    }
+
+    @Test
+    void rejectUnknownColumn() {
+        DoytoQLRequest request = buildRequest("t_user", List.of("username", "password"));
+
+        assertThatThrownBy(() -> columnRegistry.project(request))
+                .isInstanceOf(ErrorCodeException.class)
+                .hasMessage("COLUMN_IS_UNKNOWN");
+    }
+
+    @Test
+    void passColumnsOfUnloadedDomain() {
+        List<String> columns = List.of("anything");
+        DoytoQLRequest request = buildRequest("t_role", columns);
+
+        columnRegistry.project(request);
+
+        assertThat(request.getColumns()).isSameAs(columns);
+    }
+
+    @Test
+    void expandAllColumnsToDefaultColumns() {
+        columnRegistry.setDefaultColumns(Map.of("t_user", List.of("ID", "username")));
+
+        DoytoQLRequest absent = buildRequest("t_user", null);
+        columnRegistry.project(absent);
+        DoytoQLRequest all = buildRequest("t_user", List.of("*"));
+        columnRegistry.project(all);
+        DoytoQLRequest other = buildRequest("t_post", null);
+        columnRegistry.project(other);
+
+        assertThat(absent.getColumns()).containsExactly("id", "username");
+        assertThat(all.getColumns()).containsExactly("id", "username");
+        assertThat(other.getColumns()).isNull();
+    }
+
+    @Test
+    void tellNullableColumns() {
+        columnRegistry.load(Map.of("T_USER", List.of("ID", "MEMO")), Map.of("T_USER", List.of("MEMO")));
+
+        assertThat(columnRegistry.isNullable("t_user", "Memo")).isTrue();
+        assertThat(columnRegistry.isNullable("t_user", "id")).isFalse();
+        assertThat(columnRegistry.isNullable("t_role", "memo")).isFalse();
+    }
+
+    @Test
+    void precomputeLabels() {
+        assertThat(columnRegistry.labelOf("t_user", "email")).isEqualTo(GlobalConfiguration.dialect().wrapLabel("email"));
+        assertThat(columnRegistry.labelOf("t_role", "roleName")).isEqualTo(GlobalConfiguration.dialect().wrapLabel("roleName"));
+    }
+}
@@ -19,14 +19,22 @@ package win.doyto.query.sql;
 
 import com.fasterxml.jackson.core.type.TypeReference;
 import org.junit.jupiter.api.Test;
+import win.doyto.query.config.Dialect;
+import win.doyto.query.config.GlobalConfiguration;
+import win.doyto.query.config.SimpleDialect;
+import win.doyto.query.core.PageQuery;
 import win.doyto.query.language.doytoql.DoytoQLRequest;
 import win.doyto.query.language.doytoql.TestUtil;
 import win.doyto.query.util.BeanUtil;
 import win.doyto.query.web.response.ErrorCodeException;
 
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
@@ -75,6 +83,18 @@ class QLBuilderTest {
         assertThat(args).containsExactly(1, 2, 3, 4, 5, 6, 1, 2, 3, 5, 6, "%test%", "test%", "%test%");
     }
 
+    @Test
+    void supportNestedOrGroups() {
+        String conditions = "{\"idGt\": 1, \"accountOr\": {\"username\": \"f0rb\", \"email\": \"f0rb@163.com\"}," +
+                "\"levelOr\": {\"nickname\": \"测试1\", \"memoNull\": true}, \"valid\": true}";
+        LinkedHashMap<String, Object> filters = BeanUtil.parse(conditions, new TypeReference<>() {});
+        List<Object> args = new ArrayList<>();
+        String sql = QLBuilder.buildWhere(filters, args);
+
+        assertThat(sql).isEqualTo(" WHERE id > ? AND (username = ? OR email = ?) AND (nickname = ? OR memo IS NULL) AND valid = ?");
+        assertThat(args).containsExactly(1, "f0rb", "f0rb@163.com", "测试1", true);
+    }
+
     @Test
     void supportInsertMulti() {
         DoytoQLRequest doytoQLRequest = new DoytoQLRequest();
@@ -89,6 +109,37 @@ class QLBuilderTest {
                                    "VALUES (?, ?, ?, ?, ?, ?, ?), (?, ?, ?, ?, ?, ?, ?)");
     }
 
+    @Test
+    void supportInsertInBatch() {
+        DoytoQLRequest doytoQLRequest = new DoytoQLRequest();
+        doytoQLRequest.setOperation("insert");
+        doytoQLRequest.setDomain("t_user");
+        doytoQLRequest.setData(List.of(TestUtil.buildEntity("6"), TestUtil.buildEntity("7")));
+
+        BatchSqlAndArgs batchSqlAndArgs = QLBuilder.buildInsertBatchSql(doytoQLRequest);
+
+        assertThat(batchSqlAndArgs.getSql())
+                .isEqualTo("INSERT INTO t_user (username, mobile, email, nickname, password, user_level, valid) " +
+                                   "VALUES (?, ?, ?, ?, ?, ?, ?)");
+        assertThat(batchSqlAndArgs.getBatchArgs()).hasSize(2);
+        assertThat(batchSqlAndArgs.getBatchArgs().get(1))
+                .containsExactly("user7", "17778888887", "test7@qq.com", "测试7", "123456", "普通", false);
+    }
+
+    @Test
+    void shouldFailWhenInsertDataHaveDifferentColumns() {
+        LinkedHashMap<String, Object> entity = TestUtil.buildEntity("7");
+        entity.remove("mobile");
+        DoytoQLRequest doytoQLRequest = new DoytoQLRequest();
+        doytoQLRequest.setOperation("insert");
+        doytoQLRequest.setDomain("t_user");
+        doytoQLRequest.setData(List.of(TestUtil.buildEntity("6"), entity));
+
+        assertThatThrownBy(() -> QLBuilder.buildInsertBatchSql(doytoQLRequest))
+                .isInstanceOf(ErrorCodeException.class)
+                .hasMessage("DATA_SHOULD_SHARE_SAME_COLUMNS");
+    }
+
     @Test
     void supportQuerySpecifiedColumns() {
         DoytoQLRequest doytoQLRequest = new DoytoQLRequest();
@@ -102,6 +153,174 @@ class QLBuilderTest {
                 .isEqualTo("SELECT username, email, mobile FROM t_user");
     }
 
+    @Test
+    void supportQueryWithWindowTotal() {
+        DoytoQLRequest doytoQLRequest = new DoytoQLRequest();
+        doytoQLRequest.setOperation("query");
+        doytoQLRequest.setDomain("t_user");
+        doytoQLRequest.setFilters(new LinkedHashMap<>(Map.of("valid", true)));
+
+        SqlAndArgs sqlAndArgs = QLBuilder.buildQueryWithTotalSql(doytoQLRequest);
+
+        assertThat(sqlAndArgs.getSql())
+                .isEqualTo("SELECT t_user.*, count(*) OVER() AS doytoqltotal FROM t_user WHERE valid = ?");
+        assertThat(sqlAndArgs.getArgs()).containsExactly(true);
+    }
+
+    @Test
+    void supportSeekQueryWithMixedSortDirections() {
+        DoytoQLRequest doytoQLRequest = new DoytoQLRequest();
+        doytoQLRequest.setOperation("query");
+        doytoQLRequest.setDomain("t_user");
+        doytoQLRequest.setColumns(List.of("id", "username"));
+        doytoQLRequest.setFilters(new LinkedHashMap<>(Map.of("valid", true)));
+        doytoQLRequest.setPage(PageQuery.builder().pageSize(2).sort("valid,desc;id,asc").build());
+        List<Map<String, Object>> rows = List.of(Map.of("id", 1, "valid", true), Map.of("id", 3, "valid", true));
+        doytoQLRequest.setCursor(SeekPaging.nextCursor(doytoQLRequest.getPage(), rows, column -> column));
+
+        SqlAndArgs sqlAndArgs = QLBuilder.buildSeekQuerySql(doytoQLRequest);
+
+        assertThat(sqlAndArgs.getSql())
+                .startsWith("SELECT id, username, valid FROM t_user WHERE valid = ?" +
+                                    " AND (valid < ? OR valid = ? AND id > ?) ORDER BY valid desc, id asc LIMIT 2");
+        assertThat(sqlAndArgs.getArgs()).containsExactly(true, true, true, 3);
+    }
+
+    @Test
+    void keepTypesOfSortValuesInCursor() {
+        DoytoQLRequest doytoQLRequest = new DoytoQLRequest();
+        doytoQLRequest.setOperation("query");
+        doytoQLRequest.setDomain("t_order");
+        doytoQLRequest.setColumns(List.of("id"));
+        doytoQLRequest.setPage(PageQuery.builder().pageSize(1).sort("amount,desc;createTime,desc;payTime,desc").build());
+        BigDecimal amount = new BigDecimal("12345678901234567.10");
+        LocalDateTime createTime = LocalDateTime.of(2022, 4, 26, 10, 0, 0, 123456000);
+        Timestamp payTime = Timestamp.valueOf("2022-04-26 10:00:01.5");
+        List<Map<String, Object>> rows = List.of(Map.of("id", 1, "amount", amount, "createTime", createTime, "payTime", payTime));
+        doytoQLRequest.setCursor(SeekPaging.nextCursor(doytoQLRequest.getPage(), rows, column -> column));
+
+        SqlAndArgs sqlAndArgs = QLBuilder.buildSeekQuerySql(doytoQLRequest);
+
+        assertThat(sqlAndArgs.getSql()).startsWith("SELECT id, amount, createTime, payTime FROM t_order " +
+                                                           "WHERE (amount, createTime, payTime, id) < (?, ?, ?, ?)");
+        assertThat(sqlAndArgs.getArgs()).containsExactly(amount, createTime, payTime, 1);
+        assertThat(QLBuilder.appendedSortKeys(doytoQLRequest, column -> column)).containsExactly("amount", "createTime", "payTime");
+        assertThat(SeekPaging.withoutKeys(rows, List.of("amount", "createTime", "payTime"))).containsExactly(Map.of("id", 1));
+    }
+
+    @Test
+    void breakTiesOfSeekQueryByPrimaryKey() {
+        DoytoQLRequest doytoQLRequest = new DoytoQLRequest();
+        doytoQLRequest.setOperation("query");
+        doytoQLRequest.setDomain("t_user");
+        doytoQLRequest.setColumns(List.of("username"));
+        doytoQLRequest.setPage(PageQuery.builder().pageSize(2).sort("valid,desc").build());
+        List<Map<String, Object>> rows = List.of(Map.of("username", "user5", "valid", true, "id", 5),
+                                                 Map.of("username", "user4", "valid", true, "id", 4));
+        doytoQLRequest.setCursor(SeekPaging.nextCursor(doytoQLRequest.getPage(), rows, column -> column));
+
+        SqlAndArgs sqlAndArgs = QLBuilder.buildSeekQuerySql(doytoQLRequest);
+
+        assertThat(sqlAndArgs.getSql()).startsWith("SELECT username, valid, id FROM t_user " +
+                                                           "WHERE (valid, id) < (?, ?) ORDER BY valid desc, id desc LIMIT 2");
+        assertThat(sqlAndArgs.getArgs()).containsExactly(true, 4);
+        assertThat(QLBuilder.appendedSortKeys(doytoQLRequest, column -> column)).containsExactly("valid", "id");
+    }
+
+    @Test
+    void shouldFailWhenSortValueOfSeekPageIsNull() {
+        PageQuery pageQuery = PageQuery.builder().pageSize(2).sort("memo,asc").build();
+        Map<String, Object> row = new LinkedHashMap<>();
+        row.put("id", 1);
+        row.put("memo", null);
+        List<Map<String, Object>> rows = List.of(row);
+
+        assertThatThrownBy(() -> SeekPaging.nextCursor(pageQuery, rows, column -> column))
+                .isInstanceOf(ErrorCodeException.class)
+                .hasMessage("CURSOR_SORT_SHOULD_NOT_BE_NULL");
+    }
+
+    @Test
+    void shouldFailWhenSeekByNullableColumn() {
+        ColumnRegistry columnRegistry = QLBuilder.getColumnRegistry();
+        columnRegistry.load(Map.of("t_seek", List.of("id", "memo")), Map.of("t_seek", List.of("memo")));
+        try {
+            DoytoQLRequest doytoQLRequest = new DoytoQLRequest();
+            doytoQLRequest.setDomain("t_seek");
+            doytoQLRequest.setPage(PageQuery.builder().sort("memo,asc").build());
+            doytoQLRequest.setCursor("");
+
+            assertThatThrownBy(() -> QLBuilder.buildSeekQuerySql(doytoQLRequest))
+                    .isInstanceOf(ErrorCodeException.class)
+                    .hasMessage("CURSOR_SORT_SHOULD_NOT_BE_NULL");
+        } finally {
+            columnRegistry.clear();
+        }
+    }
+
+    @Test
+    void supportSeekQueryForFirstPage() {
+        DoytoQLRequest doytoQLRequest = new DoytoQLRequest();
+        doytoQLRequest.setOperation("query");
+        doytoQLRequest.setDomain("t_user");
+        doytoQLRequest.setPage(PageQuery.builder().pageSize(2).sort("id,asc").build());
+        doytoQLRequest.setCursor("");
+
+        SqlAndArgs sqlAndArgs = QLBuilder.buildSeekQuerySql(doytoQLRequest);
+
+        assertThat(sqlAndArgs.getSql()).startsWith("SELECT * FROM t_user ORDER BY id asc LIMIT 2");
+        assertThat(sqlAndArgs.getArgs()).isEmpty();
+    }
+
+    @Test
+    void supportShardQueryFromFirstRow() {
+        DoytoQLRequest doytoQLRequest = new DoytoQLRequest();
+        doytoQLRequest.setOperation("query");
+        doytoQLRequest.setDomain("t_user");
+        doytoQLRequest.setColumns(List.of("username"));
+        doytoQLRequest.setPage(PageQuery.builder().pageNumber(3).pageSize(10).sort("id,desc").build());
+
+        SqlAndArgs sqlAndArgs = QLBuilder.buildShardQuerySql(doytoQLRequest);
+
+        assertThat(sqlAndArgs.getSql()).startsWith("SELECT username, id FROM t_user ORDER BY id desc LIMIT ");
+        assertThat(sqlAndArgs.getSql()).doesNotContain("OFFSET 20");
+    }
+
+    @Test
+    void compareRowsBySort() {
+        PageQuery pageQuery = PageQuery.builder().sort("valid,desc;id,asc").build();
+        List<Map<String, Object>> rows = new ArrayList<>(List.of(
+                Map.of("id", 2L, "valid", true), Map.of("id", 3, "valid", false), Map.of("id", 1, "valid", true)));
+
+        rows.sort(SeekPaging.comparator(pageQuery, column -> column));
+
+        assertThat(rows).extracting(row -> row.get("id")).containsExactly(1, 2L, 3);
+    }
+
+    @Test
+    void shouldFailWhenSeekWithSortByField() {
+        DoytoQLRequest doytoQLRequest = new DoytoQLRequest();
+        doytoQLRequest.setDomain("t_user");
+        doytoQLRequest.setPage(PageQuery.builder().sort("field(id,3,1,2)").build());
+        doytoQLRequest.setCursor("");
+
+        assertThatThrownBy(() -> QLBuilder.buildSeekQuerySql(doytoQLRequest))
+                .isInstanceOf(ErrorCodeException.class)
+                .hasMessage("CURSOR_REQUIRES_SORT");
+    }
+
+    @Test
+    void shouldFailWhenCursorIsInvalid() {
+        DoytoQLRequest doytoQLRequest = new DoytoQLRequest();
+        doytoQLRequest.setDomain("t_user");
+        doytoQLRequest.setPage(PageQuery.builder().sort("id,desc").build());
+        doytoQLRequest.setCursor("not-a-cursor");
+
+        assertThatThrownBy(() -> QLBuilder.buildSeekQuerySql(doytoQLRequest))
+                .isInstanceOf(ErrorCodeException.class)
+                .hasMessage("CURSOR_IS_INVALID");
+    }
+
     @Test
     void supportUpdate() {
         DoytoQLRequest doytoQLRequest = TestUtil.buildUpdateRequest();
@@ -167,4 +386,233 @@ class QLBuilderTest {
         String where = QLBuilder.buildWhere(doytoQLRequest, List.of());
         assertThat(where).isEmpty();
     }
-}
\ No newline at end of file
+
+    @Test
+    void supportAggregateWithGroupByAndHaving() {
+        DoytoQLRequest doytoQLRequest = new DoytoQLRequest();
+        doytoQLRequest.setOperation("aggregate");
+        doytoQLRequest.setDomain("t_order");
+        doytoQLRequest.setColumns(List.of("status", "count", "sumAmount", "maxCreate_time"));
+        doytoQLRequest.setGroupBy(List.of("status"));
+        doytoQLRequest.setFilters(new LinkedHashMap<>(Map.of("valid", true)));
+        doytoQLRequest.setHaving(new LinkedHashMap<>(Map.of("countGt", 1)));
+        doytoQLRequest.setPage(PageQuery.builder().sort("count,desc").build());
+
+        SqlAndArgs sqlAndArgs = QLBuilder.buildAggregateSql(doytoQLRequest);
+
+        assertThat(sqlAndArgs.getSql()).isEqualTo(
+                "SELECT status, count(*) AS count, sum(amount) AS sumAmount, max(create_time) AS maxCreate_time" +
+                        " FROM t_order WHERE valid = ? GROUP BY status HAVING count(*) > ? ORDER BY count desc");
+        assertThat(sqlAndArgs.getArgs()).containsExactly(true, 1);
+    }
+
+    @Test
+    void countByGroupByColumnsWithoutColumns() {
+        DoytoQLRequest doytoQLRequest = new DoytoQLRequest();
+        doytoQLRequest.setOperation("aggregate");
+        doytoQLRequest.setDomain("t_user");
+        doytoQLRequest.setGroupBy(List.of("user_level"));
+        doytoQLRequest.setHaving(new LinkedHashMap<>(Map.of("countIn", List.of(1, 2))));
+
+        SqlAndArgs sqlAndArgs = QLBuilder.buildAggregateSql(doytoQLRequest);
+
+        assertThat(sqlAndArgs.getSql())
+                .isEqualTo("SELECT user_level, count(*) AS count FROM t_user GROUP BY user_level HAVING count(*) IN (?, ?)");
+        assertThat(sqlAndArgs.getArgs()).containsExactly(1, 2);
+    }
+
+    @Test
+    void tellAggregatesFromColumns() {
+        assertThat(QLBuilder.aggregateOf("avgScore")).isEqualTo("avg(score)");
+        assertThat(QLBuilder.aggregateOf("summary")).isNull();
+        assertThat(QLBuilder.aggregateOf("sum")).isNull();
+        assertThat(QLBuilder.aggregateOf("minute")).isNull();
+    }
+
+    @Test
+    void shouldFailWhenHavingReferToMissingAggregate() {
+        DoytoQLRequest doytoQLRequest = new DoytoQLRequest();
+        doytoQLRequest.setOperation("aggregate");
+        doytoQLRequest.setDomain("t_user");
+        doytoQLRequest.setGroupBy(List.of("user_level"));
+        doytoQLRequest.setHaving(new LinkedHashMap<>(Map.of("countIdGt", 1)));
+
+        assertThatThrownBy(() -> QLBuilder.buildAggregateSql(doytoQLRequest))
+                .isInstanceOf(ErrorCodeException.class)
+                .hasMessage("AGGREGATE_IS_INVALID");
+    }
+
+    @Test
+    void supportExistsWithLimitOne() {
+        DoytoQLRequest doytoQLRequest = new DoytoQLRequest();
+        doytoQLRequest.setOperation("exists");
+        doytoQLRequest.setDomain("t_user");
+        doytoQLRequest.setFilters(new LinkedHashMap<>(Map.of("username", "f0rb")));
+
+        SqlAndArgs sqlAndArgs = QLBuilder.buildExistsSql(doytoQLRequest);
+
+        assertThat(sqlAndArgs.getSql()).isEqualTo("SELECT 1 FROM t_user WHERE username = ? LIMIT 1");
+        assertThat(sqlAndArgs.getArgs()).containsExactly("f0rb");
+    }
+
+    @Test
+    void supportUpsertByKeysInChunks() {
+        DoytoQLRequest doytoQLRequest = new DoytoQLRequest();
+        doytoQLRequest.setOperation("upsert");
+        doytoQLRequest.setDomain("t_user");
+        doytoQLRequest.setKeys(List.of("username"));
+        doytoQLRequest.setData(List.of(TestUtil.buildEntity("6"), TestUtil.buildEntity("7"), TestUtil.buildEntity("8")));
+
+        Dialect dialect = GlobalConfiguration.dialect();
+        GlobalConfiguration.instance().setDialect(new H2Dialect());
+        List<SqlAndArgs> sqlAndArgsList;
+        try {
+            sqlAndArgsList = QLBuilder.buildUpsertSqls(doytoQLRequest, 2);
+        } finally {
+            GlobalConfiguration.instance().setDialect(dialect);
+        }
+
+        assertThat(sqlAndArgsList).hasSize(2);
+        assertThat(sqlAndArgsList.get(0).getSql())
+                .isEqualTo("MERGE INTO t_user (username, mobile, email, nickname, password, user_level, valid) " +
+                                   "KEY (username) VALUES (?, ?, ?, ?, ?, ?, ?), (?, ?, ?, ?, ?, ?, ?)");
+        assertThat(sqlAndArgsList.get(1).getArgs())
+                .containsExactly("user8", "17778888888", "test8@qq.com", "测试8", "123456", "普通", false);
+    }
+
+    @Test
+    void upsertAllRowsInOneStatementWhenChunkSizeIsZero() {
+        DoytoQLRequest doytoQLRequest = new DoytoQLRequest();
+        doytoQLRequest.setOperation("upsert");
+        doytoQLRequest.setDomain("t_user");
+        doytoQLRequest.setKeys(List.of("username"));
+        doytoQLRequest.setData(List.of(TestUtil.buildEntity("6"), TestUtil.buildEntity("7"), TestUtil.buildEntity("8")));
+
+        Dialect dialect = GlobalConfiguration.dialect();
+        GlobalConfiguration.instance().setDialect(new H2Dialect());
+        List<SqlAndArgs> sqlAndArgsList;
+        try {
+            sqlAndArgsList = QLBuilder.buildUpsertSqls(doytoQLRequest, 0);
+        } finally {
+            GlobalConfiguration.instance().setDialect(dialect);
+        }
+
+        assertThat(sqlAndArgsList).hasSize(1);
+        assertThat(sqlAndArgsList.get(0).getArgs()).hasSize(21);
+    }
+
+    @Test
+    void shouldFailWhenUpsertWithDefaultDialect() {
+        DoytoQLRequest doytoQLRequest = new DoytoQLRequest();
+        doytoQLRequest.setOperation("upsert");
+        doytoQLRequest.setDomain("t_user");
+        doytoQLRequest.setKeys(List.of("username"));
+        doytoQLRequest.setData(List.of(TestUtil.buildEntity("6")));
+
+        assertThatThrownBy(() -> QLBuilder.buildUpsertSqls(doytoQLRequest, 10))
+                .isInstanceOf(ErrorCodeException.class)
+                .hasMessage("OPERATION_NOT_SUPPORTED");
+    }
+
+    @Test
+    void shouldFailWhenUpsertKeysMissingFromData() {
+        DoytoQLRequest doytoQLRequest = new DoytoQLRequest();
+        doytoQLRequest.setOperation("upsert");
+        doytoQLRequest.setDomain("t_user");
+        doytoQLRequest.setData(List.of(TestUtil.buildEntity("6")));
+
+        assertThatThrownBy(() -> QLBuilder.buildUpsertSqls(doytoQLRequest, 10))
+                .isInstanceOf(ErrorCodeException.class)
+                .hasMessage("KEYS_SHOULD_BE_IN_DATA");
+    }
+
+    @Test
+    void supportUpdateByKeysWithCase() {
+        DoytoQLRequest doytoQLRequest = new DoytoQLRequest();
+        doytoQLRequest.setOperation("update");
+        doytoQLRequest.setDomain("t_user");
+        doytoQLRequest.setData(BeanUtil.parse("[{\"id\":1,\"nickname\":\"a\",\"valid\":true},{\"id\":3,\"nickname\":\"b\",\"valid\":false}]",
+                                              new TypeReference<>() {}));
+        doytoQLRequest.setFilters(new LinkedHashMap<>(Map.of("memoNull", true)));
+
+        SqlAndArgs sqlAndArgs = QLBuilder.buildUpdateCaseSql(doytoQLRequest);
+
+        assertThat(QLBuilder.isUpdateByKeys(doytoQLRequest)).isTrue();
+        assertThat(QLBuilder.canUpdateByCase(doytoQLRequest, 2)).isTrue();
+        assertThat(sqlAndArgs.getSql()).isEqualTo(
+                "UPDATE t_user SET nickname = CASE id WHEN ? THEN ? WHEN ? THEN ? ELSE nickname END, " +
+                        "valid = CASE id WHEN ? THEN ? WHEN ? THEN ? ELSE valid END WHERE id IN (?, ?) AND memo IS NULL");
+        assertThat(sqlAndArgs.getArgs()).containsExactly(1, "a", 3, "b", 1, true, 3, false, 1, 3);
+    }
+
+    @Test
+    void shouldKeepKeysOfDataWhenUpdateByCaseWithKeyFilter() {
+        DoytoQLRequest doytoQLRequest = new DoytoQLRequest();
+        doytoQLRequest.setOperation("update");
+        doytoQLRequest.setDomain("t_user");
+        doytoQLRequest.setData(BeanUtil.parse("[{\"id\":1,\"nickname\":\"a\"},{\"id\":3,\"nickname\":\"b\"}]",
+                                              new TypeReference<>() {}));
+        doytoQLRequest.setFilters(new LinkedHashMap<>(Map.of("idIn", List.of(1, 2, 3, 4))));
+
+        SqlAndArgs sqlAndArgs = QLBuilder.buildUpdateCaseSql(doytoQLRequest);
+
+        assertThat(sqlAndArgs.getSql()).isEqualTo(
+                "UPDATE t_user SET nickname = CASE id WHEN ? THEN ? WHEN ? THEN ? ELSE nickname END " +
+                        "WHERE id IN (?, ?) AND id IN (?, ?, ?, ?)");
+        assertThat(sqlAndArgs.getArgs()).containsExactly(1, "a", 3, "b", 1, 3, 1, 2, 3, 4);
+    }
+
+    @Test
+    void supportUpdateByKeysInBatch() {
+        DoytoQLRequest doytoQLRequest = new DoytoQLRequest();
+        doytoQLRequest.setOperation("update");
+        doytoQLRequest.setDomain("t_user");
+        doytoQLRequest.setKeys(List.of("username", "mobile"));
+        doytoQLRequest.setData(List.of(TestUtil.buildEntity("6"), TestUtil.buildEntity("7")));
+        doytoQLRequest.setFilters(new LinkedHashMap<>(Map.of("validNot", true)));
+
+        BatchSqlAndArgs batchSqlAndArgs = QLBuilder.buildUpdateBatchSql(doytoQLRequest);
+
+        assertThat(QLBuilder.canUpdateByCase(doytoQLRequest, 50)).isFalse();
+        assertThat(batchSqlAndArgs.getSql()).isEqualTo(
+                "UPDATE t_user SET email = ?, nickname = ?, password = ?, user_level = ?, valid = ? " +
+                        "WHERE username = ? AND mobile = ? AND valid != ?");
+        assertThat(batchSqlAndArgs.getBatchArgs().get(1))
+                .containsExactly("test7@qq.com", "测试7", "123456", "普通", false, "user7", "17778888887", true);
+    }
+
+    @Test
+    void shouldKeepKeysOfDataWhenUpdateInBatchWithKeyFilter() {
+        DoytoQLRequest doytoQLRequest = new DoytoQLRequest();
+        doytoQLRequest.setOperation("update");
+        doytoQLRequest.setDomain("t_user");
+        doytoQLRequest.setKeys(List.of("username"));
+        doytoQLRequest.setData(BeanUtil.parse("[{\"username\":\"user6\",\"valid\":true},{\"username\":\"user7\",\"valid\":false}]",
+                                              new TypeReference<>() {}));
+        doytoQLRequest.setFilters(new LinkedHashMap<>(Map.of("username", "user6")));
+
+        BatchSqlAndArgs batchSqlAndArgs = QLBuilder.buildUpdateBatchSql(doytoQLRequest);
+
+        assertThat(batchSqlAndArgs.getSql()).isEqualTo("UPDATE t_user SET valid = ? WHERE username = ? AND username = ?");
+        assertThat(batchSqlAndArgs.getBatchArgs().get(0)).containsExactly(true, "user6", "user6");
+        assertThat(batchSqlAndArgs.getBatchArgs().get(1)).containsExactly(false, "user7", "user6");
+    }
+
+    @Test
+    void shouldFailWhenUpdateKeyIsNull() {
+        LinkedHashMap<String, Object> entity = TestUtil.buildEntity("7");
+        entity.put("username", null);
+        DoytoQLRequest doytoQLRequest = new DoytoQLRequest();
+        doytoQLRequest.setOperation("update");
+        doytoQLRequest.setDomain("t_user");
+        doytoQLRequest.setKeys(List.of("username"));
+        doytoQLRequest.setData(List.of(TestUtil.buildEntity("6"), entity));
+
+        assertThatThrownBy(() -> QLBuilder.buildUpdateBatchSql(doytoQLRequest))
+                .isInstanceOf(ErrorCodeException.class)
+                .hasMessage("KEYS_SHOULD_BE_IN_DATA");
+    }
+
+    static class H2Dialect extends SimpleDialect {
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ *    Copyright 2022 Forb Yuan
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ *
+ */
+
+package win.doyto.query.sql;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import win.doyto.query.core.PageQuery;
+import win.doyto.query.language.doytoql.DoytoQLRequest;
+import win.doyto.query.language.doytoql.TestUtil;
+import win.doyto.query.util.BeanUtil;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * SqlTemplateCacheTest
+ *
+ * @author f0rb on 2022-04-20
+ */
+class SqlTemplateCacheTest {
+
+    private final SqlTemplateCache templateCache = QLBuilder.getTemplateCache();
+
+    @BeforeEach
+    void setUp() {
+        templateCache.clear();
+    }
+
+    @AfterEach
+    void tearDown() {
+        templateCache.setMaximumSize(SqlTemplateCache.DEFAULT_MAXIMUM_SIZE);
+        QLBuilder.setInListPadding(false);
+    }
+
+    private static DoytoQLRequest buildQueryRequest(String filters) {
+        DoytoQLRequest doytoQLRequest = new DoytoQLRequest();
+        doytoQLRequest.setOperation("query");
+        doytoQLRequest.setDomain("t_user");
+        doytoQLRequest.setFilters(BeanUtil.parse(filters, new TypeReference<>() {}));
+        return doytoQLRequest;
+    }
+
+    @Test
+    void shouldReuseTemplateForSameShape() {
+        long hitCount = templateCache.getHitCount();
+        SqlAndArgs first = QLBuilder.buildQuerySql(buildQueryRequest(
+                "{\"idIn\": [1,2,3], \"usernameContain\": \"f0rb\", \"memoNull\": true, \"accountOr\": {\"username\": \"a\", \"email\": \"b\"}}"));
+        SqlAndArgs second = QLBuilder.buildQuerySql(buildQueryRequest(
+                "{\"idIn\": [4,5,6], \"usernameContain\": \"test\", \"memoNull\": true, \"accountOr\": {\"username\": \"c\", \"email\": \"d\"}}"));
+
+        assertThat(templateCache.getHitCount()).isEqualTo(hitCount + 1);
+        assertThat(second.getSql()).isEqualTo(first.getSql());
+        assertThat(second.getArgs()).containsExactly(4, 5, 6, "%test%", "c", "d");
+    }
+
+    @Test
+    void shouldMissWhenSizeOfCollectionChanged() {
+        QLBuilder.buildQuerySql(buildQueryRequest("{\"idIn\": [1,2,3]}"));
+        SqlAndArgs sqlAndArgs = QLBuilder.buildQuerySql(buildQueryRequest("{\"idIn\": [1,2]}"));
+
+        assertThat(templateCache.size()).isEqualTo(2);
+        assertThat(sqlAndArgs.getSql()).isEqualTo("SELECT * FROM t_user WHERE id IN (?, ?)");
+        assertThat(sqlAndArgs.getArgs()).containsExactly(1, 2);
+    }
+
+    @Test
+    void shouldApplyPagingOutsideTemplate() {
+        DoytoQLRequest request = buildQueryRequest("{\"valid\": true}");
+        request.setPage(PageQuery.builder().pageNumber(1).pageSize(10).sort("id,desc").build());
+        QLBuilder.buildQuerySql(request);
+        request.setPage(PageQuery.builder().pageNumber(3).pageSize(10).sort("id,desc").build());
+        long hitCount = templateCache.getHitCount();
+
+        SqlAndArgs sqlAndArgs = QLBuilder.buildQuerySql(request);
+
+        assertThat(templateCache.getHitCount()).isEqualTo(hitCount + 1);
+        assertThat(sqlAndArgs.getSql()).startsWith("SELECT * FROM t_user WHERE valid = ? ORDER BY ");
+        assertThat(sqlAndArgs.getArgs()).containsExactly(true);
+    }
+
+    @Test
+    void shouldReuseUpdateTemplateWithDataArgs() {
+        QLBuilder.buildUpdateSql(TestUtil.buildUpdateRequest());
+        long hitCount = templateCache.getHitCount();
+        DoytoQLRequest request = TestUtil.buildUpdateRequest();
+        request.getData().get(0).put("nickname", "doggy");
+        request.getFilters().put("id", 2);
+
+        SqlAndArgs sqlAndArgs = QLBuilder.buildUpdateSql(request);
+
+        assertThat(templateCache.getHitCount()).isEqualTo(hitCount + 1);
+        assertThat(sqlAndArgs.getSql()).isEqualTo("UPDATE t_user SET nickname = ?, valid = ? WHERE id = ?");
+        assertThat(sqlAndArgs.getArgs()).containsExactly("doggy", true, 2);
+    }
+
+    @Test
+    void shouldEvictEldestTemplate() {
+        templateCache.setMaximumSize(1);
+        long evictionCount = templateCache.getEvictionCount();
+
+        QLBuilder.buildCountSql(buildQueryRequest("{\"id\": 1}"));
+        QLBuilder.buildCountSql(buildQueryRequest("{\"username\": \"f0rb\"}"));
+
+        assertThat(templateCache.size()).isEqualTo(1);
+        assertThat(templateCache.getEvictionCount()).isEqualTo(evictionCount + 1);
+    }
+
+    @Test
+    void shouldBuildDirectlyWhenDisabled() {
+        templateCache.setMaximumSize(0);
+
+        SqlAndArgs sqlAndArgs = QLBuilder.buildDeleteSql(buildQueryRequest("{\"idLt\": 3}"));
+
+        assertThat(templateCache.size()).isZero();
+        assertThat(sqlAndArgs.getSql()).isEqualTo("DELETE FROM t_user WHERE id < ?");
+        assertThat(sqlAndArgs.getArgs()).containsExactly(3);
+    }
+
+    @Test
+    void shouldPadInListToBucketSize() {
+        QLBuilder.setInListPadding(true);
+
+        QLBuilder.buildQuerySql(buildQueryRequest("{\"idIn\": [1,2,3], \"idNotIn\": [7]}"));
+        SqlAndArgs sqlAndArgs = QLBuilder.buildQuerySql(buildQueryRequest("{\"idIn\": [4,5], \"idNotIn\": [8]}"));
+
+        assertThat(sqlAndArgs.getSql()).isEqualTo("SELECT * FROM t_user WHERE id IN (?, ?) AND id NOT IN (?)");
+        assertThat(sqlAndArgs.getArgs()).containsExactly(4, 5, 8);
+
+        SqlAndArgs padded = QLBuilder.buildQuerySql(buildQueryRequest("{\"idIn\": [1,2,3], \"idNotIn\": [9]}"));
+        assertThat(padded.getSql()).isEqualTo("SELECT * FROM t_user WHERE id IN (?, ?, ?, ?) AND id NOT IN (?)");
+        assertThat(padded.getArgs()).containsExactly(1, 2, 3, 3, 9);
+        assertThat(templateCache.getStatementStatistics(1))
+                .extracting(SqlTemplateCache.StatementStatistic::hitCount)
+                .containsExactly(1L);
+    }
+}
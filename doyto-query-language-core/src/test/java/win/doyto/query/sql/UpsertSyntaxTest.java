@@ -0,0 +1,84 @@
+/*
+ *    Copyright 2022 Forb Yuan
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ *
+ */
+
+package win.doyto.query.sql;
+
+import org.junit.jupiter.api.Test;
+import win.doyto.query.web.response.ErrorCodeException;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * UpsertSyntaxTest
+ *
+ * @author f0rb on 2022-05-09
+ */
+class UpsertSyntaxTest {
+
+    private static final String COLUMNS = "(id, name, score)";
+    private static final String VALUES = "(?, ?, ?), (?, ?, ?)";
+
+    @Test
+    void chooseSyntaxByDialectName() {
+        assertThat(UpsertSyntax.of("MySQL8Dialect")).isEqualTo(UpsertSyntax.MYSQL);
+        assertThat(UpsertSyntax.of("PostgreSQLDialect")).isEqualTo(UpsertSyntax.POSTGRESQL);
+        assertThat(UpsertSyntax.of("SQLiteDialect")).isEqualTo(UpsertSyntax.POSTGRESQL);
+        assertThat(UpsertSyntax.of("H2Dialect")).isEqualTo(UpsertSyntax.MERGE_KEY);
+    }
+
+    @Test
+    void rejectDialectsWithoutKnownSyntax() {
+        for (String dialectName : List.of("SimpleDialect", "HSQLDBDialect", "OracleDialect", "SQLServer2012Dialect", "SqlServerDialect", "DB2Dialect")) {
+            assertThatThrownBy(() -> UpsertSyntax.of(dialectName))
+                    .isInstanceOf(ErrorCodeException.class)
+                    .hasMessage("OPERATION_NOT_SUPPORTED");
+        }
+    }
+
+    @Test
+    void buildOnDuplicateKeyUpdateForMySQL() {
+        String sql = UpsertSyntax.MYSQL.build("t_score", COLUMNS, VALUES, List.of("id"), List.of("name", "score"));
+
+        assertThat(sql).isEqualTo("INSERT INTO t_score (id, name, score) VALUES (?, ?, ?), (?, ?, ?) " +
+                                          "ON DUPLICATE KEY UPDATE name = VALUES(name), score = VALUES(score)");
+    }
+
+    @Test
+    void buildOnConflictDoUpdateForPostgreSQL() {
+        String sql = UpsertSyntax.POSTGRESQL.build("t_score", COLUMNS, VALUES, List.of("id", "name"), List.of("score"));
+
+        assertThat(sql).isEqualTo("INSERT INTO t_score (id, name, score) VALUES (?, ?, ?), (?, ?, ?) " +
+                                          "ON CONFLICT (id, name) DO UPDATE SET score = EXCLUDED.score");
+    }
+
+    @Test
+    void doNothingWhenAllColumnsAreKeys() {
+        String sql = UpsertSyntax.POSTGRESQL.build("t_score", "(id)", "(?)", List.of("id"), List.of());
+
+        assertThat(sql).isEqualTo("INSERT INTO t_score (id) VALUES (?) ON CONFLICT (id) DO NOTHING");
+    }
+
+    @Test
+    void buildMergeKeyForH2() {
+        String sql = UpsertSyntax.MERGE_KEY.build("t_score", COLUMNS, VALUES, List.of("id"), List.of("name", "score"));
+
+        assertThat(sql).isEqualTo("MERGE INTO t_score (id, name, score) KEY (id) VALUES (?, ?, ?), (?, ?, ?)");
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ *    Copyright 2022 Forb Yuan
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ *
+ */
+
+package win.doyto.query.language.web;
+
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.jdbc.support.JdbcUtils;
+import win.doyto.query.language.doytoql.QLArrowWriter;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+
+/**
+ * ArrowResultSetExtractor
+ * <p>
+ * Write the rows of a ResultSet to an Arrow stream when they come off the ResultSet,
+ * with the schema resolved from the metadata even for an empty result,
+ * and sums the time spent on writing when timed.
+ *
+ * @author f0rb on 2022-05-11
+ */
+class ArrowResultSetExtractor implements ResultSetExtractor<Void> {
+
+    private final QLArrowWriter writer;
+    private final boolean timed;
+    private long writingNanos;
+
+    ArrowResultSetExtractor(QLArrowWriter writer, boolean timed) {
+        this.writer = writer;
+        this.timed = timed;
+    }
+
+    long getWritingNanos() {
+        return writingNanos;
+    }
+
+    @Override
+    public Void extractData(ResultSet rs) throws SQLException {
+        ResultSetMetaData metaData = rs.getMetaData();
+        int columnCount = metaData.getColumnCount();
+        String[] names = new String[columnCount];
+        Class<?>[] types = new Class<?>[columnCount];
+        for (int i = 0; i < columnCount; i++) {
+            names[i] = QLController.toColumnKey(JdbcUtils.lookupColumnName(metaData, i + 1));
+            types[i] = typeOf(metaData.getColumnClassName(i + 1));
+        }
+        try {
+            long start = timed ? System.nanoTime() : 0;
+            writer.start(names, types);
+            if (timed) {
+                writingNanos += System.nanoTime() - start;
+            }
+            while (rs.next()) {
+                Object[] values = new Object[columnCount];
+                for (int i = 0; i < columnCount; i++) {
+                    values[i] = JdbcUtils.getResultSetValue(rs, i + 1);
+                }
+                write(values);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return null;
+    }
+
+    /**
+     * Write the rows left and the end of the stream.
+     */
+    void end() throws IOException {
+        long start = timed ? System.nanoTime() : 0;
+        writer.end();
+        if (timed) {
+            writingNanos += System.nanoTime() - start;
+        }
+    }
+
+    private void write(Object[] values) throws IOException {
+        if (!timed) {
+            writer.write(values);
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            writer.write(values);
+        } finally {
+            writingNanos += System.nanoTime() - start;
+        }
+    }
+
+    private static Class<?> typeOf(String className) {
+        try {
+            return className == null ? null : Class.forName(className);
+        } catch (ClassNotFoundException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ *    Copyright 2022 Forb Yuan
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ *
+ */
+
+package win.doyto.query.language.web;
+
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.support.JdbcUtils;
+import win.doyto.query.language.doytoql.CompactRowMap;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.Map;
+
+/**
+ * CompactRowMapper
+ * <p>
+ * Map rows to {@link CompactRowMap} sharing the keys resolved from the first row.
+ * An instance is bound to one query since it keeps the keys of the first row,
+ * and sums the time spent on mapping when timed.
+ *
+ * @author f0rb on 2022-04-29
+ */
+class CompactRowMapper implements RowMapper<Map<String, Object>> {
+
+    private final boolean timed;
+    private CompactRowMap.Keys keys;
+    private long mappingNanos;
+
+    CompactRowMapper() {
+        this(false);
+    }
+
+    CompactRowMapper(boolean timed) {
+        this.timed = timed;
+    }
+
+    long getMappingNanos() {
+        return mappingNanos;
+    }
+
+    @Override
+    public Map<String, Object> mapRow(ResultSet rs, int rowNum) throws SQLException {
+        if (!timed) {
+            return doMapRow(rs);
+        }
+        long start = System.nanoTime();
+        try {
+            return doMapRow(rs);
+        } finally {
+            mappingNanos += System.nanoTime() - start;
+        }
+    }
+
+    private Map<String, Object> doMapRow(ResultSet rs) throws SQLException {
+        if (keys == null) {
+            ResultSetMetaData metaData = rs.getMetaData();
+            String[] columnKeys = new String[metaData.getColumnCount()];
+            for (int i = 0; i < columnKeys.length; i++) {
+                columnKeys[i] = QLController.toColumnKey(JdbcUtils.lookupColumnName(metaData, i + 1));
+            }
+            keys = new CompactRowMap.Keys(columnKeys);
+        }
+        Object[] values = new Object[keys.size()];
+        for (int i = 0, columnCount = keys.columnCount(); i < columnCount; i++) {
+            values[keys.slotOf(i)] = JdbcUtils.getResultSetValue(rs, i + 1);
+        }
+        return new CompactRowMap(keys, values);
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ *    Copyright 2022 Forb Yuan
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ *
+ */
+
+package win.doyto.query.language.web;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.support.JdbcUtils;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+
+/**
+ * JsonRowCallbackHandler
+ * <p>
+ * Write each row of a ResultSet as a JSON object followed by a newline,
+ * with the keys resolved and encoded once for the ResultSet.
+ *
+ * @author f0rb on 2022-04-29
+ */
+class JsonRowCallbackHandler implements RowCallbackHandler {
+
+    private final JsonGenerator generator;
+    private SerializedString[] keys;
+
+    JsonRowCallbackHandler(JsonGenerator generator) {
+        this.generator = generator;
+        this.generator.setRootValueSeparator(null);
+    }
+
+    @Override
+    public void processRow(ResultSet rs) throws SQLException {
+        if (keys == null) {
+            keys = resolveKeys(rs.getMetaData());
+        }
+        try {
+            generator.writeStartObject();
+            for (int i = 0; i < keys.length; i++) {
+                generator.writeFieldName(keys[i]);
+                generator.writeObject(JdbcUtils.getResultSetValue(rs, i + 1));
+            }
+            generator.writeEndObject();
+            generator.writeRaw('\n');
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static SerializedString[] resolveKeys(ResultSetMetaData metaData) throws SQLException {
+        SerializedString[] keys = new SerializedString[metaData.getColumnCount()];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = new SerializedString(QLController.toColumnKey(JdbcUtils.lookupColumnName(metaData, i + 1)));
+        }
+        return keys;
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ *    Copyright 2022 Forb Yuan
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ *
+ */
+
+package win.doyto.query.language.web;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import win.doyto.query.language.doytoql.DoytoQLRequest;
+import win.doyto.query.language.doytoql.QLErrorCode;
+import win.doyto.query.language.doytoql.QLProperties;
+import win.doyto.query.language.doytoql.QLThreads;
+import win.doyto.query.web.response.ErrorCode;
+import win.doyto.query.web.response.JsonBody;
+import win.doyto.query.web.response.PresetErrorCode;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import javax.validation.Validator;
+
+/**
+ * QLBatchController
+ * <p>
+ * Execute an array of requests in one round-trip and return the results in order.
+ * A batch of queries runs in parallel on a bounded executor, while a batch
+ * containing any write runs in order, optionally in one transaction.
+ *
+ * @author f0rb on 2022-04-23
+ */
+@JsonBody
+@RestController
+public class QLBatchController implements DisposableBean {
+
+    private final QLController qlController;
+    private final Validator validator;
+    private final QLProperties qlProperties;
+    private final TransactionTemplate transactionTemplate;
+    private final ExecutorService executorService;
+    private final QLReadWriteRouter readWriteRouter;
+
+    public QLBatchController(
+            QLController qlController, Validator validator, QLProperties qlProperties,
+            PlatformTransactionManager transactionManager, QLReadWriteRouter readWriteRouter
+    ) {
+        this.qlController = qlController;
+        this.readWriteRouter = readWriteRouter;
+        this.validator = validator;
+        this.qlProperties = qlProperties;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.executorService = QLThreads.newBoundedExecutor(
+                qlProperties.getBatchParallelism(), qlProperties.isVirtualThreads(), "doytoql-batch-");
+    }
+
+    @PostMapping("DoytoQL/batch")
+    public List<Object> batch(
+            @RequestBody List<DoytoQLRequest> requests,
+            @RequestParam(defaultValue = "false") boolean transactional
+    ) {
+        ErrorCode.assertTrue(requests.size() <= qlProperties.getBatchMaxSize(), QLErrorCode.BATCH_SIZE_SHOULD_NOT_EXCEED_LIMIT);
+        requests.forEach(request -> ErrorCode.assertTrue(
+                validator.validate(request).isEmpty(), PresetErrorCode.ARGUMENT_VALIDATION_FAILED));
+
+        if (requests.stream().allMatch(request -> DoytoQLRequest.isRead(request.getOperation()))) {
+            return queryInParallel(requests);
+        }
+        if (transactional) {
+            // keep the queries in the transaction on the primary database along with the writes
+            return readWriteRouter.onPrimary(() -> transactionTemplate.execute(status -> executeInOrder(requests)));
+        }
+        // the later requests read the writes of the earlier ones on the primary database
+        return readWriteRouter.onPrimary(() -> executeInOrder(requests));
+    }
+
+    private List<Object> queryInParallel(List<DoytoQLRequest> requests) {
+        // the session is not visible to the pool threads
+        boolean pinned = readWriteRouter.isPinned(readWriteRouter.currentSession());
+        List<CompletableFuture<Object>> futures = requests
+                .stream()
+                .map(request -> CompletableFuture.supplyAsync(() -> pinned
+                        ? readWriteRouter.onPrimary(() -> qlController.execute(request))
+                        : qlController.execute(request), executorService))
+                .toList();
+        List<Object> results = new ArrayList<>(futures.size());
+        try {
+            for (CompletableFuture<Object> future : futures) {
+                results.add(future.join());
+            }
+        } catch (CompletionException e) {
+            futures.forEach(future -> future.cancel(false));
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+        return results;
+    }
+
+    private List<Object> executeInOrder(List<DoytoQLRequest> requests) {
+        List<Object> results = new ArrayList<>(requests.size());
+        for (DoytoQLRequest request : requests) {
+            results.add(qlController.execute(request));
+        }
+        return results;
+    }
+
+    @Override
+    public void destroy() {
+        executorService.shutdown();
+    }
+}
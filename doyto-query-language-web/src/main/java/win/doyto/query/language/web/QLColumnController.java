@@ -0,0 +1,54 @@
+/*
+ *    Copyright 2022 Forb Yuan
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ *
+ */
+
+package win.doyto.query.language.web;
+
+import lombok.AllArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RestController;
+import win.doyto.query.sql.ColumnRegistry;
+import win.doyto.query.web.response.JsonBody;
+
+import java.util.Collection;
+
+/**
+ * QLColumnController
+ *
+ * @author f0rb on 2022-05-07
+ */
+@JsonBody
+@RestController
+@AllArgsConstructor
+@ConditionalOnProperty("doytoql.admin-endpoints")
+public class QLColumnController {
+
+    private ColumnRegistry columnRegistry;
+    private QLColumnLoader qlColumnLoader;
+
+    @GetMapping("DoytoQL/columns/{domain}")
+    public Collection<String> columns(@PathVariable String domain) {
+        return columnRegistry.getColumns(domain);
+    }
+
+    @PostMapping("DoytoQL/columns/refresh")
+    public int refresh() {
+        return qlColumnLoader.refresh();
+    }
+}
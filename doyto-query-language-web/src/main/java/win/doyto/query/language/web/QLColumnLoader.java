@@ -0,0 +1,93 @@
+/*
+ *    Copyright 2022 Forb Yuan
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ *
+ */
+
+package win.doyto.query.language.web;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcOperations;
+import win.doyto.query.sql.ColumnRegistry;
+import win.doyto.query.sql.SqlTemplateCache;
+
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * QLColumnLoader
+ * <p>
+ * Load the columns of the tables from the JDBC metadata into {@link ColumnRegistry},
+ * once the singletons including the initializer of the database are created.
+ *
+ * @author f0rb on 2022-05-07
+ */
+@Slf4j
+public class QLColumnLoader implements SmartInitializingSingleton {
+
+    private final JdbcOperations jdbcOperations;
+    private final ColumnRegistry columnRegistry;
+    private final SqlTemplateCache sqlTemplateCache;
+    private final boolean loadOnStartup;
+
+    public QLColumnLoader(JdbcOperations jdbcOperations, ColumnRegistry columnRegistry,
+                          SqlTemplateCache sqlTemplateCache, boolean loadOnStartup) {
+        this.jdbcOperations = jdbcOperations;
+        this.columnRegistry = columnRegistry;
+        this.sqlTemplateCache = sqlTemplateCache;
+        this.loadOnStartup = loadOnStartup;
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        if (loadOnStartup) {
+            refresh();
+        }
+    }
+
+    /**
+     * Reload the columns of the tables in the current catalog and schema,
+     * and drop the templates built with the former columns.
+     *
+     * @return the count of tables loaded
+     */
+    public int refresh() {
+        Map<String, List<String>> columnsByTable = new HashMap<>();
+        Map<String, List<String>> nullableColumnsByTable = new HashMap<>();
+        jdbcOperations.execute((ConnectionCallback<Void>) connection -> {
+            DatabaseMetaData metaData = connection.getMetaData();
+            try (ResultSet rs = metaData.getColumns(connection.getCatalog(), connection.getSchema(), "%", "%")) {
+                while (rs.next()) {
+                    String table = rs.getString("TABLE_NAME");
+                    String column = rs.getString("COLUMN_NAME");
+                    columnsByTable.computeIfAbsent(table, key -> new ArrayList<>()).add(column);
+                    if (rs.getInt("NULLABLE") != DatabaseMetaData.columnNoNulls) {
+                        nullableColumnsByTable.computeIfAbsent(table, key -> new ArrayList<>()).add(column);
+                    }
+                }
+            }
+            return null;
+        });
+        columnRegistry.load(columnsByTable, nullableColumnsByTable);
+        sqlTemplateCache.clear();
+        log.info("Loaded the columns of {} tables", columnsByTable.size());
+        return columnsByTable.size();
+    }
+}
@@ -18,19 +18,44 @@
 package win.doyto.query.language.web;
 
 import lombok.AllArgsConstructor;
-import org.springframework.jdbc.core.ColumnMapRowMapper;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.jdbc.core.ArgumentPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcOperations;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionTimedOutException;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RestController;
 import win.doyto.query.jdbc.DatabaseOperations;
+import win.doyto.query.language.doytoql.CursorPageList;
 import win.doyto.query.language.doytoql.DoytoQLRequest;
+import win.doyto.query.language.doytoql.QLCostGuard;
+import win.doyto.query.language.doytoql.QLCountMode;
 import win.doyto.query.language.doytoql.QLErrorCode;
+import win.doyto.query.language.doytoql.QLLimiter;
+import win.doyto.query.language.doytoql.QLMetrics;
+import win.doyto.query.language.doytoql.QLProperties;
+import win.doyto.query.language.doytoql.QLResultCache;
+import win.doyto.query.language.doytoql.QLSlowQueryLog;
+import win.doyto.query.language.doytoql.QLTotalHelper;
 import win.doyto.query.service.PageList;
+import win.doyto.query.sql.BatchSqlAndArgs;
+import win.doyto.query.sql.QLBuilder;
+import win.doyto.query.sql.SeekPaging;
+import win.doyto.query.sql.SqlAndArgs;
 import win.doyto.query.util.ColumnUtil;
 import win.doyto.query.web.response.ErrorCodeException;
 import win.doyto.query.web.response.JsonBody;
 
+import java.sql.Statement;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
 import javax.validation.Valid;
 
 import static win.doyto.query.sql.QLBuilder.*;
@@ -45,28 +70,199 @@ import static win.doyto.query.sql.QLBuilder.*;
 @AllArgsConstructor
 public class QLController {
 
-    public static final ColumnMapRowMapper ROW_MAPPER = new ColumnMapRowMapper() {
-        @Override
-        protected String getColumnKey(String columnName) {
-            return ColumnUtil.convertColumn(columnName.toLowerCase());
-        }
-    };
+    static String toColumnKey(String columnName) {
+        return ColumnUtil.convertColumn(columnName.toLowerCase());
+    }
 
     private final DatabaseOperations databaseOperations;
+    private final JdbcOperations jdbcOperations;
+    private final QLProperties qlProperties;
+    private final QLResultCache resultCache;
+    private final QLShardExecutor shardExecutor;
+    private final QLReadWriteRouter readWriteRouter;
+    private final QLLimiter limiter;
+    private final QLCostGuard costGuard;
+    private final PlatformTransactionManager transactionManager;
+    private final QLMetrics metrics;
+    private final QLSlowQueryLog slowQueryLog;
+    private final QLSlowQueryExplainer slowQueryExplainer;
 
     @SuppressWarnings("java:S1452")
     @PostMapping("DoytoQL")
-    @Transactional
     public Object execute(@RequestBody @Valid DoytoQLRequest request) {
+        return metrics.time(QLMetrics.Stage.REQUEST, request, () -> executeWithinLimits(request));
+    }
+
+    private Object executeWithinLimits(DoytoQLRequest request) {
+        costGuard.guard(request);
+        String domain = request.getDomain();
+        limiter.acquire(domain);
+        try {
+            int timeout = limiter.timeoutSecondsOf(request);
+            return readWriteRouter.route(request.getOperation(), readWriteRouter.currentSession(), () -> {
+                if (shardExecutor.isSharded(domain)) {
+                    return shardExecutor.execute(request, timeout);
+                }
+                // the statements take the time left in the transaction as their query timeout
+                TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+                if (timeout > 0) {
+                    transactionTemplate.setTimeout(timeout);
+                }
+                return transactionTemplate.execute(status -> doExecute(request));
+            });
+        } catch (QueryTimeoutException | TransactionTimedOutException e) {
+            throw new ErrorCodeException(QLErrorCode.QUERY_TIMEOUT);
+        } finally {
+            limiter.release(domain);
+        }
+    }
+
+    private Object doExecute(DoytoQLRequest request) {
         return switch (request.getOperation()) {
-            case "delete" -> databaseOperations.update(buildDeleteSql(request));
-            case "insert" -> databaseOperations.update(buildInsertSql(request));
-            case "update" -> databaseOperations.update(buildUpdateSql(request));
-            case "query" -> new PageList<>(
-                    databaseOperations.query(buildQuerySql(request), ROW_MAPPER),
-                    databaseOperations.count(buildCountSql(request))
-            );
+            case "delete" -> invalidateAfterWrite(request, update(request, build(request, QLBuilder::buildDeleteSql)));
+            case "insert" -> invalidateAfterWrite(request, insert(request));
+            case "upsert" -> invalidateAfterWrite(request, upsert(request));
+            case "update" -> invalidateAfterWrite(request, isUpdateByKeys(request)
+                    ? updateByKeys(request) : update(request, build(request, QLBuilder::buildUpdateSql)));
+            case "query" -> request.getCursor() != null ? seek(request) : query(request);
+            case "aggregate" -> queryForList(request, build(request, QLBuilder::buildAggregateSql));
+            case "exists" -> !queryForList(request, build(request, QLBuilder::buildExistsSql)).isEmpty();
             default -> throw new ErrorCodeException(QLErrorCode.OPERATION_NOT_SUPPORTED);
         };
     }
+
+    private SqlAndArgs build(DoytoQLRequest request, Function<DoytoQLRequest, SqlAndArgs> builder) {
+        SqlAndArgs sqlAndArgs = metrics.time(QLMetrics.Stage.BUILD, request, () -> builder.apply(request));
+        metrics.recordSql(request, sqlAndArgs);
+        return sqlAndArgs;
+    }
+
+    private int update(DoytoQLRequest request, SqlAndArgs sqlAndArgs) {
+        return timed(QLMetrics.Stage.EXECUTE, request, sqlAndArgs, () -> databaseOperations.update(sqlAndArgs));
+    }
+
+    private <T> T timed(QLMetrics.Stage stage, DoytoQLRequest request, SqlAndArgs sqlAndArgs, Supplier<T> statement) {
+        long start = System.nanoTime();
+        try {
+            return metrics.time(stage, request, statement);
+        } finally {
+            if (slowQueryLog.record(request, sqlAndArgs, System.nanoTime() - start)) {
+                slowQueryExplainer.explain(sqlAndArgs);
+            }
+        }
+    }
+
+    private int insert(DoytoQLRequest request) {
+        if (request.getData() == null || request.getData().size() <= 1) {
+            return update(request, build(request, QLBuilder::buildInsertSql));
+        }
+        return batchUpdate(request, metrics.time(QLMetrics.Stage.BUILD, request, () -> buildInsertBatchSql(request)));
+    }
+
+    private int updateByKeys(DoytoQLRequest request) {
+        if (canUpdateByCase(request, qlProperties.getUpdateCaseMaxRows())) {
+            return update(request, build(request, QLBuilder::buildUpdateCaseSql));
+        }
+        return batchUpdate(request, metrics.time(QLMetrics.Stage.BUILD, request, () -> buildUpdateBatchSql(request)));
+    }
+
+    private int batchUpdate(DoytoQLRequest request, BatchSqlAndArgs batchSqlAndArgs) {
+        return metrics.time(QLMetrics.Stage.EXECUTE, request,
+                            () -> batchUpdate(jdbcOperations, batchSqlAndArgs, qlProperties.getInsertBatchSize()));
+    }
+
+    static int batchUpdate(JdbcOperations jdbcOperations, BatchSqlAndArgs batchSqlAndArgs, int batchSize) {
+        int[][] counts = jdbcOperations.batchUpdate(
+                batchSqlAndArgs.getSql(), batchSqlAndArgs.getBatchArgs(), batchSize,
+                (ps, args) -> new ArgumentPreparedStatementSetter(args).setValues(ps)
+        );
+        int total = 0;
+        for (int[] chunk : counts) {
+            for (int count : chunk) {
+                total += count == Statement.SUCCESS_NO_INFO ? 1 : count;
+            }
+        }
+        return total;
+    }
+
+    private int upsert(DoytoQLRequest request) {
+        List<SqlAndArgs> sqlAndArgsList = metrics.time(QLMetrics.Stage.BUILD, request,
+                () -> buildUpsertSqls(request, qlProperties.getInsertBatchSize()));
+        int total = 0;
+        for (SqlAndArgs sqlAndArgs : sqlAndArgsList) {
+            metrics.recordSql(request, sqlAndArgs);
+            total += update(request, sqlAndArgs);
+        }
+        return total;
+    }
+
+    private <T> T invalidateAfterWrite(DoytoQLRequest request, T result) {
+        String domain = request.getDomain();
+        if (resultCache.isEnabled(domain)) {
+            resultCache.invalidate(domain);
+            if (TransactionSynchronizationManager.isSynchronizationActive()) {
+                // drop the results cached by other requests before the commit
+                TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                    @Override
+                    public void afterCompletion(int status) {
+                        resultCache.invalidate(domain);
+                    }
+                });
+            }
+        }
+        return result;
+    }
+
+    private PageList<Map<String, Object>> query(DoytoQLRequest request) {
+        QLCountMode countMode = QLCountMode.resolve(request.getCount());
+        if (countMode == QLCountMode.WINDOW) {
+            SqlAndArgs sqlAndArgs = build(request, QLBuilder::buildQueryWithTotalSql);
+            return cached(request, sqlAndArgs, () -> {
+                List<Map<String, Object>> list = queryRows(request, sqlAndArgs);
+                long total = QLTotalHelper.extractWindowTotal(list);
+                return new PageList<>(list, total != QLTotalHelper.UNKNOWN_TOTAL ? total : count(request, list));
+            }, pageList -> QLResultCache.weigh(pageList.getList()));
+        }
+        List<Map<String, Object>> list = queryForList(request, build(request, QLBuilder::buildQuerySql));
+        return new PageList<>(list, countMode == QLCountMode.NONE ? QLTotalHelper.UNKNOWN_TOTAL : count(request, list));
+    }
+
+    private CursorPageList<Map<String, Object>> seek(DoytoQLRequest request) {
+        List<Map<String, Object>> list = queryForList(request, build(request, QLBuilder::buildSeekQuerySql));
+        String cursor = SeekPaging.nextCursor(request.getPage(), list, QLController::toColumnKey);
+        // the sort columns are only selected to locate the next page
+        return new CursorPageList<>(SeekPaging.withoutKeys(list, appendedSortKeys(request, QLController::toColumnKey)), cursor);
+    }
+
+    private List<Map<String, Object>> queryForList(DoytoQLRequest request, SqlAndArgs sqlAndArgs) {
+        return cached(request, sqlAndArgs, () -> queryRows(request, sqlAndArgs), QLResultCache::weigh);
+    }
+
+    private <T> T cached(DoytoQLRequest request, SqlAndArgs sqlAndArgs, Supplier<T> loader, ToLongFunction<? super T> weigher) {
+        if (readWriteRouter.isOnPrimary()) {
+            // the results cached from a lagging replica may miss the writes of a pinned session
+            return loader.get();
+        }
+        return resultCache.get(request.getDomain(), sqlAndArgs, loader, weigher);
+    }
+
+    private List<Map<String, Object>> queryRows(DoytoQLRequest request, SqlAndArgs sqlAndArgs) {
+        CompactRowMapper rowMapper = new CompactRowMapper(metrics.isEnabled());
+        // the time of execution includes the time of mapping recorded separately
+        List<Map<String, Object>> list = timed(QLMetrics.Stage.EXECUTE, request, sqlAndArgs, () -> databaseOperations.query(sqlAndArgs, rowMapper));
+        metrics.recordNanos(QLMetrics.Stage.MAP, request, QLMetrics.SUCCESS, rowMapper.getMappingNanos());
+        metrics.recordRows(request, list.size());
+        return list;
+    }
+
+    private long count(DoytoQLRequest request, List<Map<String, Object>> list) {
+        long total = QLTotalHelper.totalOfShortPage(request.getPage(), list.size());
+        if (total != QLTotalHelper.UNKNOWN_TOTAL) {
+            return total;
+        }
+        SqlAndArgs sqlAndArgs = build(request, QLBuilder::buildCountSql);
+        return cached(request, sqlAndArgs,
+                      () -> timed(QLMetrics.Stage.COUNT, request, sqlAndArgs, () -> databaseOperations.count(sqlAndArgs)),
+                      QLResultCache::weigh);
+    }
 }
@@ -0,0 +1,89 @@
+/*
+ *    Copyright 2022 Forb Yuan
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ *
+ */
+
+package win.doyto.query.language.web;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.http.converter.HttpMessageNotWritableException;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import win.doyto.query.language.doytoql.DoytoQLRequest;
+import win.doyto.query.language.doytoql.QLMetrics;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+
+/**
+ * QLMetricsMessageConverter
+ * <p>
+ * Time the deserialization of the request and the serialization of the response.
+ * The request read is kept in the request attributes to tag the serialization.
+ *
+ * @author f0rb on 2022-05-03
+ */
+class QLMetricsMessageConverter extends MappingJackson2HttpMessageConverter {
+
+    private static final String REQUEST_ATTRIBUTE = QLMetricsMessageConverter.class.getName() + ".request";
+
+    private final QLMetrics metrics;
+
+    QLMetricsMessageConverter(ObjectMapper objectMapper, QLMetrics metrics) {
+        super(objectMapper);
+        this.metrics = metrics;
+    }
+
+    @Override
+    public Object read(Type type, Class<?> contextClass, HttpInputMessage inputMessage) throws IOException {
+        long start = metrics.start();
+        try {
+            Object body = super.read(type, contextClass, inputMessage);
+            DoytoQLRequest request = body instanceof DoytoQLRequest qlRequest ? qlRequest : null;
+            if (request != null) {
+                RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+                if (attributes != null) {
+                    attributes.setAttribute(REQUEST_ATTRIBUTE, request, RequestAttributes.SCOPE_REQUEST);
+                }
+            }
+            metrics.record(QLMetrics.Stage.DESERIALIZE, request, QLMetrics.SUCCESS, start);
+            return body;
+        } catch (IOException | HttpMessageNotReadableException e) {
+            metrics.record(QLMetrics.Stage.DESERIALIZE, null, QLMetrics.outcomeOf(e), start);
+            throw e;
+        }
+    }
+
+    @Override
+    protected void writeInternal(Object object, Type type, HttpOutputMessage outputMessage) throws IOException {
+        DoytoQLRequest request = null;
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (attributes != null) {
+            request = (DoytoQLRequest) attributes.getAttribute(REQUEST_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST);
+        }
+        long start = metrics.start();
+        try {
+            super.writeInternal(object, type, outputMessage);
+            metrics.record(QLMetrics.Stage.SERIALIZE, request, QLMetrics.SUCCESS, start);
+        } catch (IOException | HttpMessageNotWritableException e) {
+            metrics.record(QLMetrics.Stage.SERIALIZE, request, QLMetrics.outcomeOf(e), start);
+            throw e;
+        }
+    }
+}
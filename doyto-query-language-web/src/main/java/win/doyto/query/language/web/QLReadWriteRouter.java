@@ -0,0 +1,112 @@
+/*
+ *    Copyright 2022 Forb Yuan
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ *
+ */
+
+package win.doyto.query.language.web;
+
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import win.doyto.query.language.doytoql.DoytoQLRequest;
+import win.doyto.query.language.doytoql.QLProperties;
+import win.doyto.query.language.doytoql.QLReplicaBalancer;
+import win.doyto.query.language.doytoql.QLSessionPins;
+
+import java.util.function.Supplier;
+
+/**
+ * QLReadWriteRouter
+ * <p>
+ * Send the queries to the replicas and the writes to the primary database.
+ * The queries of a session stay on the primary database for a window after its write.
+ *
+ * @author f0rb on 2022-05-01
+ */
+public class QLReadWriteRouter {
+
+    private final String sessionHeader;
+    private final QLReplicaBalancer balancer;
+    private final QLSessionPins sessionPins;
+    private final boolean enabled;
+
+    public QLReadWriteRouter(QLProperties qlProperties) {
+        int replicaCount = qlProperties.getReplicas().size();
+        this.sessionHeader = qlProperties.getSessionHeader();
+        this.balancer = new QLReplicaBalancer(qlProperties.getReplicaBalance(), Math.max(replicaCount, 1));
+        this.sessionPins = new QLSessionPins(qlProperties.getReadYourWritesWindow());
+        this.enabled = replicaCount > 0;
+    }
+
+    /**
+     * Read the session of the current request from the session header.
+     */
+    public String currentSession() {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (attributes instanceof ServletRequestAttributes servletAttributes) {
+            return servletAttributes.getRequest().getHeader(sessionHeader);
+        }
+        return null;
+    }
+
+    public boolean isPinned(String session) {
+        return enabled && sessionPins.isPinned(session);
+    }
+
+    /**
+     * @return true when the statements of the current thread go to the primary database
+     * while the queries are sent to the replicas
+     */
+    public boolean isOnPrimary() {
+        return enabled && QLRoutingDataSource.PRIMARY.equals(QLRoutingDataSource.currentRoute());
+    }
+
+    public <T> T route(String operation, String session, Supplier<T> supplier) {
+        if (!enabled) {
+            return supplier.get();
+        }
+        if (!DoytoQLRequest.isRead(operation)) {
+            T result = onPrimary(supplier);
+            sessionPins.pin(session);
+            return result;
+        }
+        if (QLRoutingDataSource.currentRoute() != null || sessionPins.isPinned(session)) {
+            return onPrimary(supplier);
+        }
+        int replica = balancer.acquire();
+        QLRoutingDataSource.setRoute(replica);
+        try {
+            return supplier.get();
+        } finally {
+            QLRoutingDataSource.setRoute(null);
+            balancer.release(replica);
+        }
+    }
+
+    /**
+     * Run on the primary database, unless a route is bound already.
+     */
+    public <T> T onPrimary(Supplier<T> supplier) {
+        if (!enabled || QLRoutingDataSource.currentRoute() != null) {
+            return supplier.get();
+        }
+        QLRoutingDataSource.setRoute(QLRoutingDataSource.PRIMARY);
+        try {
+            return supplier.get();
+        } finally {
+            QLRoutingDataSource.setRoute(null);
+        }
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ *    Copyright 2022 Forb Yuan
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ *
+ */
+
+package win.doyto.query.language.web;
+
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+
+import java.util.Collection;
+import javax.sql.DataSource;
+
+/**
+ * QLRoutingDataSource
+ * <p>
+ * Route a connection to the primary database or a replica
+ * by the route bound to the current thread.
+ *
+ * @author f0rb on 2022-05-01
+ */
+class QLRoutingDataSource extends AbstractRoutingDataSource implements AutoCloseable {
+
+    static final String PRIMARY = "primary";
+
+    private static final ThreadLocal<Object> ROUTE = new ThreadLocal<>();
+
+    static Object currentRoute() {
+        return ROUTE.get();
+    }
+
+    static void setRoute(Object route) {
+        if (route == null) {
+            ROUTE.remove();
+        } else {
+            ROUTE.set(route);
+        }
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        Object route = ROUTE.get();
+        return route != null ? route : PRIMARY;
+    }
+
+    @Override
+    public void close() throws Exception {
+        close(getResolvedDataSources().values());
+    }
+
+    /**
+     * Close the connection pools, which are not managed by Spring as beans.
+     */
+    static void close(Collection<DataSource> dataSources) throws Exception {
+        for (DataSource dataSource : dataSources) {
+            if (dataSource instanceof AutoCloseable closeable) {
+                closeable.close();
+            }
+        }
+    }
+
+    /**
+     * Defer the connection to the first statement, by when the route is bound,
+     * and close the routed databases along with the bean.
+     */
+    static class LazyProxy extends LazyConnectionDataSourceProxy implements AutoCloseable {
+
+        private final QLRoutingDataSource routingDataSource;
+
+        LazyProxy(QLRoutingDataSource routingDataSource) {
+            super(routingDataSource);
+            this.routingDataSource = routingDataSource;
+        }
+
+        @Override
+        public void close() throws Exception {
+            routingDataSource.close();
+        }
+    }
+}
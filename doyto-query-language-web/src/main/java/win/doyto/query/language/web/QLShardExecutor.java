@@ -0,0 +1,297 @@
+/*
+ *    Copyright 2022 Forb Yuan
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ *
+ */
+
+package win.doyto.query.language.web;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.jdbc.UncategorizedSQLException;
+import org.springframework.jdbc.core.ArgumentPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.JdbcUtils;
+import win.doyto.query.config.GlobalConfiguration;
+import win.doyto.query.core.PageQuery;
+import win.doyto.query.jdbc.DatabaseOperations;
+import win.doyto.query.jdbc.DatabaseTemplate;
+import win.doyto.query.language.doytoql.*;
+import win.doyto.query.service.PageList;
+import win.doyto.query.sql.SeekPaging;
+import win.doyto.query.sql.SqlAndArgs;
+import win.doyto.query.web.response.ErrorCode;
+import win.doyto.query.web.response.ErrorCodeException;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Consumer;
+import java.util.function.IntUnaryOperator;
+import javax.sql.DataSource;
+
+import static win.doyto.query.sql.QLBuilder.*;
+
+/**
+ * QLShardExecutor
+ * <p>
+ * Execute the requests of the sharded domains on the shard databases.
+ * Writes go to the shards routed by the shard key, while a query is sent
+ * to the routed shards in parallel, and its page is merged by <code>page.sort</code>
+ * from the rows streamed off each shard, with at most <code>pageSize</code> rows
+ * fetched from a shard at a time. The merged rows are also streamed one at a time
+ * for <code>DoytoQL/stream</code>. A write across shards is not atomic.
+ *
+ * @author f0rb on 2022-04-30
+ */
+public class QLShardExecutor implements DisposableBean {
+
+    private final QLShardRouter shardRouter;
+    private final List<DataSource> dataSources;
+    private final List<DatabaseOperations> shardOperations;
+    private final List<JdbcTemplate> shardJdbcTemplates;
+    private final QLProperties qlProperties;
+    private final ExecutorService executorService;
+
+    public QLShardExecutor(List<DataSource> dataSources, QLProperties qlProperties) {
+        this.shardRouter = new QLShardRouter(qlProperties.getShardKeys(), dataSources.size());
+        this.dataSources = dataSources;
+        this.shardJdbcTemplates = dataSources.stream().map(JdbcTemplate::new).toList();
+        this.shardOperations = shardJdbcTemplates.stream().<DatabaseOperations>map(DatabaseTemplate::new).toList();
+        this.qlProperties = qlProperties;
+        this.executorService = dataSources.isEmpty() ? null : QLThreads.newBoundedExecutor(
+                qlProperties.getShardPoolSize(), qlProperties.isVirtualThreads(), "doytoql-shard-");
+    }
+
+    public boolean isSharded(String domain) {
+        return shardRouter.isSharded(domain);
+    }
+
+    /**
+     * @param queryTimeout the seconds to wait for each query on a shard, 0 for unlimited
+     */
+    public Object execute(DoytoQLRequest request, int queryTimeout) {
+        return switch (request.getOperation()) {
+            case "delete" -> sum(shardRouter.route(request), shard -> shardOperations.get(shard).update(buildDeleteSql(request)));
+            case "insert" -> shardRouter.splitData(request).entrySet().stream()
+                                        .mapToInt(entry -> QLController.batchUpdate(shardJdbcTemplates.get(entry.getKey()),
+                                                buildInsertBatchSql(entry.getValue()), qlProperties.getInsertBatchSize()))
+                                        .sum();
+            case "upsert" -> shardRouter.splitData(request).entrySet().stream()
+                                        .mapToInt(entry -> upsert(shardOperations.get(entry.getKey()), entry.getValue()))
+                                        .sum();
+            case "update" -> {
+                // the rows of an update by keys are not split by the shard key
+                ErrorCode.assertFalse(isUpdateByKeys(request), QLErrorCode.OPERATION_NOT_SUPPORTED);
+                yield sum(shardRouter.route(request), shard -> shardOperations.get(shard).update(buildUpdateSql(request)));
+            }
+            case "query" -> query(request, queryTimeout);
+            default -> throw new ErrorCodeException(QLErrorCode.OPERATION_NOT_SUPPORTED);
+        };
+    }
+
+    private int upsert(DatabaseOperations databaseOperations, DoytoQLRequest request) {
+        return buildUpsertSqls(request, qlProperties.getInsertBatchSize()).stream().mapToInt(databaseOperations::update).sum();
+    }
+
+    private static int sum(int[] shards, IntUnaryOperator update) {
+        return Arrays.stream(shards).map(update).sum();
+    }
+
+    /**
+     * Pass the merged rows of a query to the consumer one at a time.
+     *
+     * @param queryTimeout the seconds to wait for each query on a shard, 0 for unlimited
+     */
+    public void stream(DoytoQLRequest request, int queryTimeout, Consumer<Map<String, Object>> consumer) {
+        int[] shards = shardRouter.route(request);
+        SqlAndArgs sqlAndArgs = buildShardQuerySql(request);
+        List<String> appendedKeys = appendedSortKeys(request, QLController::toColumnKey);
+        mergeQuery(request, shards, sqlAndArgs, queryTimeout, row -> {
+            appendedKeys.forEach(row::remove);
+            consumer.accept(row);
+        });
+    }
+
+    private Object query(DoytoQLRequest request, int queryTimeout) {
+        int[] shards = shardRouter.route(request);
+        PageQuery pageQuery = request.getPage();
+        SqlAndArgs sqlAndArgs = buildShardQuerySql(request);
+        List<String> appendedKeys = appendedSortKeys(request, QLController::toColumnKey);
+        List<Map<String, Object>> list = new ArrayList<>();
+        mergeQuery(request, shards, sqlAndArgs, queryTimeout, list::add);
+        String cursor = request.getCursor() != null ? SeekPaging.nextCursor(pageQuery, list, QLController::toColumnKey) : null;
+        // the sort columns are only selected to compare the rows
+        list.forEach(row -> appendedKeys.forEach(row::remove));
+        if (request.getCursor() != null) {
+            return new CursorPageList<>(list, cursor);
+        }
+        QLCountMode countMode = QLCountMode.resolve(request.getCount());
+        if (countMode == QLCountMode.NONE) {
+            return new PageList<>(list, QLTotalHelper.UNKNOWN_TOTAL);
+        }
+        long total = QLTotalHelper.totalOfShortPage(pageQuery, list.size());
+        if (total == QLTotalHelper.UNKNOWN_TOTAL) {
+            SqlAndArgs countSqlAndArgs = buildCountSql(request);
+            List<CompletableFuture<Long>> futures = Arrays
+                    .stream(shards)
+                    .mapToObj(shard -> CompletableFuture.supplyAsync(() -> count(shard, countSqlAndArgs, queryTimeout), executorService))
+                    .toList();
+            try {
+                total = futures.stream().mapToLong(CompletableFuture::join).sum();
+            } catch (CompletionException e) {
+                throw unwrap(e);
+            }
+        }
+        return new PageList<>(list, total);
+    }
+
+    private long count(int shard, SqlAndArgs sqlAndArgs, int queryTimeout) {
+        // the shared template is not touched to apply the timeout of this request
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSources.get(shard));
+        jdbcTemplate.setQueryTimeout(queryTimeout);
+        Long count = jdbcTemplate.queryForObject(sqlAndArgs.getSql(), Long.class, sqlAndArgs.getArgs());
+        return count != null ? count : 0;
+    }
+
+    private static RuntimeException unwrap(CompletionException e) {
+        return e.getCause() instanceof RuntimeException cause ? cause : e;
+    }
+
+    private void mergeQuery(
+            DoytoQLRequest request, int[] shards, SqlAndArgs sqlAndArgs,
+            int queryTimeout, Consumer<Map<String, Object>> consumer
+    ) {
+        PageQuery pageQuery = request.getPage();
+        boolean paging = request.getCursor() != null || (pageQuery != null && pageQuery.needPaging());
+        long offset = paging && request.getCursor() == null ? GlobalConfiguration.calcOffset(pageQuery) : 0;
+        long limit = paging ? pageQuery.getPageSize() : Long.MAX_VALUE;
+        int fetchSize = paging ? pageQuery.getPageSize() : qlProperties.getStreamFetchSize();
+
+        Comparator<Map<String, Object>> rowComparator = request.getCursor() != null
+                ? SeekPaging.seekComparator(pageQuery, QLController::toColumnKey) : SeekPaging.comparator(pageQuery, QLController::toColumnKey);
+        PriorityQueue<ShardCursor> queue = new PriorityQueue<>(Comparator.comparing((ShardCursor cursor) -> cursor.current, rowComparator)
+                                                                         .thenComparingInt(cursor -> cursor.shard));
+        List<CompletableFuture<ShardCursor>> futures = Arrays
+                .stream(shards)
+                .mapToObj(shard -> CompletableFuture.supplyAsync(() -> open(shard, sqlAndArgs, fetchSize, queryTimeout), executorService))
+                .toList();
+        List<ShardCursor> cursors = new ArrayList<>(shards.length);
+        try {
+            for (CompletableFuture<ShardCursor> future : futures) {
+                ShardCursor cursor = future.join();
+                cursors.add(cursor);
+                if (cursor.current != null) {
+                    queue.add(cursor);
+                }
+            }
+            long skipped = 0;
+            long taken = 0;
+            while (!queue.isEmpty() && taken < limit) {
+                ShardCursor cursor = queue.poll();
+                if (skipped < offset) {
+                    skipped++;
+                } else {
+                    consumer.accept(cursor.current);
+                    taken++;
+                }
+                if (cursor.advance(sqlAndArgs)) {
+                    queue.add(cursor);
+                }
+            }
+        } catch (CompletionException e) {
+            throw unwrap(e);
+        } finally {
+            futures.forEach(future -> future.thenAccept(ShardCursor::close));
+        }
+    }
+
+    private ShardCursor open(int shard, SqlAndArgs sqlAndArgs, int fetchSize, int queryTimeout) {
+        ShardCursor cursor = new ShardCursor(shard);
+        try {
+            cursor.connection = dataSources.get(shard).getConnection();
+            cursor.connection.setReadOnly(true);
+            // PostgreSQL only fetches the rows by fetchSize within a transaction
+            if (cursor.connection.getAutoCommit()) {
+                cursor.connection.setAutoCommit(false);
+                cursor.restoreAutoCommit = true;
+            }
+            cursor.ps = cursor.connection.prepareStatement(sqlAndArgs.getSql(), ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            cursor.ps.setFetchSize(fetchSize);
+            cursor.ps.setQueryTimeout(queryTimeout);
+            new ArgumentPreparedStatementSetter(sqlAndArgs.getArgs()).setValues(cursor.ps);
+            cursor.rs = cursor.ps.executeQuery();
+            cursor.advance(sqlAndArgs);
+            return cursor;
+        } catch (SQLTimeoutException e) {
+            cursor.close();
+            throw new QueryTimeoutException("Query shard " + shard, e);
+        } catch (SQLException e) {
+            cursor.close();
+            throw new UncategorizedSQLException("Query shard " + shard, sqlAndArgs.getSql(), e);
+        }
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        if (executorService != null) {
+            executorService.shutdown();
+        }
+        QLRoutingDataSource.close(dataSources);
+    }
+
+    private static class ShardCursor {
+        private final int shard;
+        private final CompactRowMapper rowMapper = new CompactRowMapper();
+        private Connection connection;
+        private PreparedStatement ps;
+        private ResultSet rs;
+        private boolean restoreAutoCommit;
+        private Map<String, Object> current;
+
+        private ShardCursor(int shard) {
+            this.shard = shard;
+        }
+
+        private boolean advance(SqlAndArgs sqlAndArgs) {
+            try {
+                current = rs.next() ? rowMapper.mapRow(rs, 0) : null;
+                return current != null;
+            } catch (SQLException e) {
+                throw new UncategorizedSQLException("Query shard " + shard, sqlAndArgs.getSql(), e);
+            }
+        }
+
+        private void close() {
+            JdbcUtils.closeResultSet(rs);
+            JdbcUtils.closeStatement(ps);
+            if (restoreAutoCommit) {
+                try {
+                    // end the read-only transaction before the connection goes back to the pool
+                    connection.rollback();
+                    connection.setAutoCommit(true);
+                } catch (SQLException e) {
+                    // the connection is closed below, and a pool validates it before reuse
+                }
+            }
+            JdbcUtils.closeConnection(connection);
+        }
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ *    Copyright 2022 Forb Yuan
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ *
+ */
+
+package win.doyto.query.language.web;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.jdbc.core.JdbcOperations;
+import win.doyto.query.language.doytoql.QLSlowQueryLog;
+import win.doyto.query.sql.SqlAndArgs;
+
+import java.util.List;
+import java.util.StringJoiner;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * QLSlowQueryExplainer
+ * <p>
+ * Run EXPLAIN for a slow query on a single thread in the background,
+ * so that the request does not wait for the plan.
+ *
+ * @author f0rb on 2022-05-04
+ */
+@Slf4j
+public class QLSlowQueryExplainer implements DisposableBean {
+
+    private final JdbcOperations jdbcOperations;
+    private final QLSlowQueryLog slowQueryLog;
+    private final ExecutorService executorService = Executors.newSingleThreadExecutor();
+
+    public QLSlowQueryExplainer(JdbcOperations jdbcOperations, QLSlowQueryLog slowQueryLog) {
+        this.jdbcOperations = jdbcOperations;
+        this.slowQueryLog = slowQueryLog;
+    }
+
+    public void explain(SqlAndArgs sqlAndArgs) {
+        String explainSql = QLSlowQueryLog.explainSqlOf(sqlAndArgs.getSql());
+        try {
+            executorService.execute(() -> {
+                try {
+                    List<String> lines = jdbcOperations.query(explainSql, (rs, rn) -> {
+                        StringJoiner line = new StringJoiner(" | ");
+                        for (int i = 1, count = rs.getMetaData().getColumnCount(); i <= count; i++) {
+                            line.add(String.valueOf(rs.getObject(i)));
+                        }
+                        return line.toString();
+                    }, sqlAndArgs.getArgs());
+                    slowQueryLog.recordPlan(sqlAndArgs, String.join("\n", lines));
+                } catch (RuntimeException e) {
+                    log.warn("Failed to explain: {}", explainSql, e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            log.debug("Skip explaining on shutdown: {}", explainSql);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        executorService.shutdownNow();
+    }
+}
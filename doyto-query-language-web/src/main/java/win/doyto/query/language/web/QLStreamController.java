@@ -0,0 +1,233 @@
+/*
+ *    Copyright 2022 Forb Yuan
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ *
+ */
+
+package win.doyto.query.language.web;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.ArgumentPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcOperations;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import win.doyto.query.language.doytoql.DoytoQLRequest;
+import win.doyto.query.language.doytoql.QLArrowWriter;
+import win.doyto.query.language.doytoql.QLCostGuard;
+import win.doyto.query.language.doytoql.QLErrorCode;
+import win.doyto.query.language.doytoql.QLLimiter;
+import win.doyto.query.language.doytoql.QLMetrics;
+import win.doyto.query.language.doytoql.QLProperties;
+import win.doyto.query.language.doytoql.QLSlowQueryLog;
+import win.doyto.query.sql.SqlAndArgs;
+import win.doyto.query.web.response.ErrorCode;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import javax.validation.Valid;
+
+import static win.doyto.query.sql.QLBuilder.buildAggregateSql;
+import static win.doyto.query.sql.QLBuilder.buildQuerySql;
+
+/**
+ * QLStreamController
+ * <p>
+ * Write the rows of a query as NDJSON when they come off the ResultSet,
+ * so that the memory stays flat regardless of the size of the result.
+ * The rows are written to the JSON generator without being mapped first,
+ * except for the sharded domains, whose rows are merged from the shards.
+ * The rows of <code>DoytoQL</code> are written the same way as an Arrow stream
+ * when the client accepts <code>application/vnd.apache.arrow.stream</code>.
+ *
+ * @author f0rb on 2022-04-22
+ */
+@RestController
+public class QLStreamController {
+
+    private final JdbcOperations jdbcOperations;
+    private final ObjectMapper objectMapper;
+    private final QLProperties qlProperties;
+    private final TransactionTemplate transactionTemplate;
+    private final QLReadWriteRouter readWriteRouter;
+    private final QLLimiter limiter;
+    private final QLCostGuard costGuard;
+    private final QLShardExecutor shardExecutor;
+    private final QLMetrics metrics;
+    private final QLSlowQueryLog slowQueryLog;
+    private final QLSlowQueryExplainer slowQueryExplainer;
+
+    public QLStreamController(
+            JdbcOperations jdbcOperations, ObjectMapper objectMapper, QLProperties qlProperties,
+            PlatformTransactionManager transactionManager, QLReadWriteRouter readWriteRouter, QLLimiter limiter,
+            QLCostGuard costGuard, QLShardExecutor shardExecutor, QLMetrics metrics,
+            QLSlowQueryLog slowQueryLog, QLSlowQueryExplainer slowQueryExplainer
+    ) {
+        this.jdbcOperations = jdbcOperations;
+        this.objectMapper = objectMapper;
+        this.qlProperties = qlProperties;
+        this.readWriteRouter = readWriteRouter;
+        this.limiter = limiter;
+        this.costGuard = costGuard;
+        this.shardExecutor = shardExecutor;
+        this.metrics = metrics;
+        this.slowQueryLog = slowQueryLog;
+        this.slowQueryExplainer = slowQueryExplainer;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        // some drivers only fetch by cursor when the auto-commit is off, e.g. PostgreSQL
+        this.transactionTemplate.setReadOnly(true);
+    }
+
+    @PostMapping(value = "DoytoQL/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public StreamingResponseBody stream(@RequestBody @Valid DoytoQLRequest request) {
+        ErrorCode.assertTrue("query".equals(request.getOperation()), QLErrorCode.OPERATION_NOT_SUPPORTED);
+        // a stream is neither paged nor counted, so it is only rejected by its cost
+        costGuard.check(request);
+        String domain = request.getDomain();
+        if (shardExecutor.isSharded(domain)) {
+            return streamShards(request);
+        }
+        SqlAndArgs sqlAndArgs = buildQuerySql(request);
+        TransactionTemplate timedTemplate = transactionTemplateOf(request);
+        // the body is written on another thread without the request context
+        String session = readWriteRouter.currentSession();
+        return withinBulkhead(domain, outputStream -> {
+            JsonGenerator generator = objectMapper.createGenerator(outputStream);
+            readWriteRouter.route(request.getOperation(), session, () -> {
+                timedTemplate.executeWithoutResult(status -> jdbcOperations.query(
+                        connection -> prepareStatement(connection, sqlAndArgs),
+                        new JsonRowCallbackHandler(generator)
+                ));
+                return null;
+            });
+            generator.flush();
+        });
+    }
+
+    /**
+     * Write the rows merged from the shards in the order of <code>page.sort</code>.
+     */
+    private StreamingResponseBody streamShards(DoytoQLRequest request) {
+        String domain = request.getDomain();
+        int timeout = limiter.timeoutSecondsOf(request);
+        return withinBulkhead(domain, outputStream -> {
+            JsonGenerator generator = objectMapper.createGenerator(outputStream);
+            generator.setRootValueSeparator(null);
+            shardExecutor.stream(request, timeout, row -> {
+                try {
+                    generator.writeObject(row);
+                    generator.writeRaw('\n');
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            generator.flush();
+        });
+    }
+
+    /**
+     * Write the rows of a query or an aggregate on <code>DoytoQL</code> as an Arrow stream,
+     * in record batches of <code>doytoql.arrow-batch-size</code> rows, without the total.
+     * The sharded domains are not supported, since their rows are merged as maps.
+     */
+    @PostMapping(value = "DoytoQL", produces = QLArrowWriter.ARROW_STREAM_VALUE)
+    public StreamingResponseBody arrow(@RequestBody @Valid DoytoQLRequest request) {
+        boolean aggregate = "aggregate".equals(request.getOperation());
+        ErrorCode.assertTrue(aggregate || "query".equals(request.getOperation()), QLErrorCode.OPERATION_NOT_SUPPORTED);
+        String domain = request.getDomain();
+        ErrorCode.assertFalse(shardExecutor.isSharded(domain), QLErrorCode.OPERATION_NOT_SUPPORTED);
+        costGuard.guard(request);
+        SqlAndArgs sqlAndArgs = metrics.time(QLMetrics.Stage.BUILD, request,
+                                             () -> aggregate ? buildAggregateSql(request) : buildQuerySql(request));
+        metrics.recordSql(request, sqlAndArgs);
+        TransactionTemplate timedTemplate = transactionTemplateOf(request);
+        String session = readWriteRouter.currentSession();
+        return withinBulkhead(domain, outputStream -> writeArrow(request, sqlAndArgs, session, timedTemplate, outputStream));
+    }
+
+    /**
+     * Enter the bulkhead of the domain on the thread writing the body, so that no permit is held
+     * for a body which is never written, e.g. when the client leaves before the async dispatch.
+     */
+    private StreamingResponseBody withinBulkhead(String domain, StreamingResponseBody body) {
+        return outputStream -> {
+            limiter.acquire(domain);
+            try {
+                body.writeTo(outputStream);
+            } finally {
+                limiter.release(domain);
+            }
+        };
+    }
+
+    private void writeArrow(
+            DoytoQLRequest request, SqlAndArgs sqlAndArgs, String session,
+            TransactionTemplate timedTemplate, OutputStream outputStream
+    ) throws IOException {
+        long start = System.nanoTime();
+        String outcome = QLMetrics.SUCCESS;
+        try (QLArrowWriter writer = new QLArrowWriter(outputStream, qlProperties.getArrowBatchSize())) {
+            // the time of execution includes the time of writing recorded separately
+            ArrowResultSetExtractor extractor = new ArrowResultSetExtractor(writer, metrics.isEnabled());
+            try {
+                readWriteRouter.route(request.getOperation(), session, () -> {
+                    timedTemplate.executeWithoutResult(status -> jdbcOperations.query(
+                            connection -> prepareStatement(connection, sqlAndArgs), extractor
+                    ));
+                    return null;
+                });
+                extractor.end();
+            } catch (IOException | RuntimeException e) {
+                outcome = QLMetrics.outcomeOf(e);
+                throw e;
+            } finally {
+                metrics.recordNanos(QLMetrics.Stage.SERIALIZE, request, outcome, extractor.getWritingNanos());
+            }
+        } finally {
+            long nanos = System.nanoTime() - start;
+            metrics.recordNanos(QLMetrics.Stage.EXECUTE, request, outcome, nanos);
+            if (slowQueryLog.record(request, sqlAndArgs, nanos)) {
+                slowQueryExplainer.explain(sqlAndArgs);
+            }
+        }
+    }
+
+    private TransactionTemplate transactionTemplateOf(DoytoQLRequest request) {
+        int timeout = limiter.timeoutSecondsOf(request);
+        if (timeout <= 0) {
+            return transactionTemplate;
+        }
+        // the statement takes the time left in the transaction as its query timeout
+        TransactionTemplate template = new TransactionTemplate(transactionTemplate.getTransactionManager(), transactionTemplate);
+        template.setTimeout(timeout);
+        return template;
+    }
+
+    private PreparedStatement prepareStatement(Connection connection, SqlAndArgs sqlAndArgs) throws SQLException {
+        PreparedStatement ps = connection.prepareStatement(sqlAndArgs.getSql(), ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        ps.setFetchSize(qlProperties.getStreamFetchSize());
+        new ArgumentPreparedStatementSetter(sqlAndArgs.getArgs()).setValues(ps);
+        return ps;
+    }
+}
@@ -17,14 +17,47 @@
 
 package win.doyto.query.language.web;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import org.apache.coyote.ProtocolHandler;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.support.TaskExecutorAdapter;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
 import org.springframework.jdbc.core.JdbcOperations;
 import org.springframework.transaction.annotation.EnableTransactionManagement;
 import win.doyto.query.jdbc.DatabaseOperations;
 import win.doyto.query.jdbc.DatabaseTemplate;
+import win.doyto.query.language.doytoql.QLCostGuard;
+import win.doyto.query.language.doytoql.QLLimiter;
+import win.doyto.query.language.doytoql.QLMetrics;
+import win.doyto.query.language.doytoql.QLProperties;
+import win.doyto.query.language.doytoql.QLResultCache;
+import win.doyto.query.language.doytoql.QLSlowQueryLog;
+import win.doyto.query.language.doytoql.QLThreads;
+import win.doyto.query.sql.ColumnRegistry;
+import win.doyto.query.sql.QLBuilder;
+import win.doyto.query.sql.SqlTemplateCache;
 import win.doyto.query.web.WebMvcConfigurerAdapter;
 
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.sql.DataSource;
+
 /**
  * WebMvcConfiguration
  *
@@ -39,4 +72,143 @@ public class WebMvcConfiguration extends WebMvcConfigurerAdapter {
         return new DatabaseTemplate(jdbcOperations);
     }
 
+    @Bean
+    @ConfigurationProperties("doytoql")
+    public QLProperties qlProperties() {
+        return new QLProperties();
+    }
+
+    @Bean
+    public SqlTemplateCache sqlTemplateCache(QLProperties qlProperties) {
+        SqlTemplateCache templateCache = QLBuilder.getTemplateCache();
+        templateCache.setMaximumSize(qlProperties.getTemplateCacheSize());
+        QLBuilder.setInListPadding(qlProperties.isInListPadding());
+        return templateCache;
+    }
+
+    @Bean
+    public ColumnRegistry columnRegistry(QLProperties qlProperties) {
+        ColumnRegistry columnRegistry = QLBuilder.getColumnRegistry();
+        columnRegistry.setDefaultColumns(qlProperties.getDefaultColumns());
+        return columnRegistry;
+    }
+
+    @Bean
+    public QLColumnLoader qlColumnLoader(JdbcOperations jdbcOperations, ColumnRegistry columnRegistry,
+                                         SqlTemplateCache sqlTemplateCache, QLProperties qlProperties) {
+        return new QLColumnLoader(jdbcOperations, columnRegistry, sqlTemplateCache, qlProperties.isColumnWhitelist());
+    }
+
+    @Bean
+    public QLShardExecutor qlShardExecutor(QLProperties qlProperties) {
+        List<DataSource> dataSources = qlProperties
+                .getShards().stream()
+                .map(WebMvcConfiguration::buildDataSource)
+                .toList();
+        return new QLShardExecutor(dataSources, qlProperties);
+    }
+
+    @Bean
+    @ConditionalOnProperty("doytoql.replicas[0].url")
+    public DataSource dataSource(DataSourceProperties dataSourceProperties, QLProperties qlProperties) {
+        Map<Object, Object> targetDataSources = new HashMap<>();
+        DataSource primary = dataSourceProperties.initializeDataSourceBuilder().build();
+        targetDataSources.put(QLRoutingDataSource.PRIMARY, primary);
+        List<QLProperties.DatabaseProperties> replicas = qlProperties.getReplicas();
+        for (int i = 0; i < replicas.size(); i++) {
+            targetDataSources.put(i, buildDataSource(replicas.get(i)));
+        }
+        QLRoutingDataSource routingDataSource = new QLRoutingDataSource();
+        routingDataSource.setTargetDataSources(targetDataSources);
+        routingDataSource.setDefaultTargetDataSource(primary);
+        routingDataSource.afterPropertiesSet();
+        return new QLRoutingDataSource.LazyProxy(routingDataSource);
+    }
+
+    @Bean
+    public QLReadWriteRouter qlReadWriteRouter(QLProperties qlProperties) {
+        return new QLReadWriteRouter(qlProperties);
+    }
+
+    private static DataSource buildDataSource(QLProperties.DatabaseProperties database) {
+        return DataSourceBuilder.create().url(database.getUrl())
+                                .username(database.getUsername())
+                                .password(database.getPassword())
+                                .build();
+    }
+
+    @Bean
+    public QLLimiter qlLimiter(QLProperties qlProperties, ColumnRegistry columnRegistry) {
+        return QLLimiter.of(qlProperties, columnRegistry);
+    }
+
+    @Bean
+    public QLCostGuard qlCostGuard(QLProperties qlProperties) {
+        return QLCostGuard.of(qlProperties);
+    }
+
+    @Bean
+    public QLMetrics qlMetrics(QLProperties qlProperties, ObjectProvider<MeterRegistry> meterRegistry) {
+        if (!qlProperties.isMetricsEnabled()) {
+            return QLMetrics.NOOP;
+        }
+        return new QLMetrics(meterRegistry.getIfAvailable(() -> Metrics.globalRegistry));
+    }
+
+    @Bean
+    @ConditionalOnProperty("doytoql.metrics-enabled")
+    public MappingJackson2HttpMessageConverter mappingJackson2HttpMessageConverter(ObjectMapper objectMapper, QLMetrics qlMetrics) {
+        return new QLMetricsMessageConverter(objectMapper, qlMetrics);
+    }
+
+    /**
+     * Read and write the requests and responses in Smile by content negotiation,
+     * with the settings of the ObjectMapper of Spring Boot.
+     */
+    @Bean
+    public MappingJackson2SmileHttpMessageConverter mappingJackson2SmileHttpMessageConverter(Jackson2ObjectMapperBuilder builder) {
+        return new MappingJackson2SmileHttpMessageConverter(builder.factory(new SmileFactory()).build());
+    }
+
+    /**
+     * Read and write the requests and responses in CBOR by content negotiation.
+     */
+    @Bean
+    public MappingJackson2CborHttpMessageConverter mappingJackson2CborHttpMessageConverter(Jackson2ObjectMapperBuilder builder) {
+        return new MappingJackson2CborHttpMessageConverter(builder.factory(new CBORFactory()).build());
+    }
+
+    @Bean
+    public QLSlowQueryLog qlSlowQueryLog(QLProperties qlProperties) {
+        return QLSlowQueryLog.of(qlProperties);
+    }
+
+    @Bean
+    public QLSlowQueryExplainer qlSlowQueryExplainer(JdbcOperations jdbcOperations, QLSlowQueryLog qlSlowQueryLog) {
+        return new QLSlowQueryExplainer(jdbcOperations, qlSlowQueryLog);
+    }
+
+    /**
+     * Run each request of Tomcat on a new virtual thread instead of the worker pool.
+     */
+    @Bean
+    @ConditionalOnProperty("doytoql.virtual-threads")
+    public TomcatProtocolHandlerCustomizer<ProtocolHandler> qlVirtualThreadCustomizer() {
+        return protocolHandler -> protocolHandler.setExecutor(QLThreads.newVirtualThreadPerTaskExecutor("doytoql-http-"));
+    }
+
+    /**
+     * Replace the task executor of Spring Boot, which writes the responses of DoytoQL/stream.
+     */
+    @Bean
+    @ConditionalOnProperty("doytoql.virtual-threads")
+    public AsyncTaskExecutor applicationTaskExecutor() {
+        return new TaskExecutorAdapter(QLThreads.newVirtualThreadPerTaskExecutor("doytoql-async-"));
+    }
+
+    @Bean
+    public QLResultCache qlResultCache(QLProperties qlProperties) {
+        return QLResultCache.of(qlProperties);
+    }
+
 }
@@ -0,0 +1,64 @@
+/*
+ *    Copyright 2022 Forb Yuan
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ *
+ */
+
+package win.doyto.query.language.web;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.MediaType;
+import win.doyto.query.language.doytoql.DoytoQLRequest;
+import win.doyto.query.util.BeanUtil;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * QLBatchControllerTest
+ *
+ * @author f0rb on 2022-04-23
+ */
+@SuppressWarnings("java:S2699")
+class QLBatchControllerTest extends DoytoQLApplicationTest {
+
+    private static DoytoQLRequest buildQueryRequest(Object id) {
+        DoytoQLRequest doytoQLRequest = new DoytoQLRequest();
+        doytoQLRequest.setOperation("query");
+        doytoQLRequest.setDomain(DOMAIN_USER);
+        LinkedHashMap<String, Object> filters = new LinkedHashMap<>();
+        filters.put("id", id);
+        doytoQLRequest.setFilters(filters);
+        return doytoQLRequest;
+    }
+
+    @Test
+    void shouldQueryInParallelAndKeepOrder() throws Exception {
+        List<DoytoQLRequest> requests = List.of(buildQueryRequest(3), buildQueryRequest(1), buildQueryRequest(2));
+
+        mockMvc.perform(post("/DoytoQL/batch")
+                                .content(BeanUtil.stringify(requests))
+                                .contentType(MediaType.APPLICATION_JSON))
+               .andExpect(status().isOk())
+               .andExpect(jsonPath("$.success").value(true))
+               .andExpect(jsonPath("$.data.size()").value(3))
+               .andExpect(jsonPath("$.data[0].list[0].id").value(3))
+               .andExpect(jsonPath("$.data[1].list[0].id").value(1))
+               .andExpect(jsonPath("$.data[2].list[0].id").value(2));
+    }
+}
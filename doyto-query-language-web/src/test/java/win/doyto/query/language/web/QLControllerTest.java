@@ -17,10 +17,30 @@
 
 package win.doyto.query.language.web;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
 import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import win.doyto.query.config.Dialect;
+import win.doyto.query.config.GlobalConfiguration;
+import win.doyto.query.config.SimpleDialect;
+import win.doyto.query.core.PageQuery;
 import win.doyto.query.language.doytoql.DoytoQLRequest;
+import win.doyto.query.language.test.TestUtil;
 
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.annotation.Resource;
+import javax.sql.DataSource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 /**
  * QLControllerTest
@@ -30,6 +50,9 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
 @SuppressWarnings("java:S2699")
 class QLControllerTest extends DoytoQLApplicationTest {
 
+    @Resource
+    private DataSource dataSource;
+
     @Test
     void requestShouldReturnOK() throws Exception {
         DoytoQLRequest doytoQLRequest = new DoytoQLRequest();
@@ -44,4 +67,96 @@ class QLControllerTest extends DoytoQLApplicationTest {
         ;
     }
 
-}
\ No newline at end of file
+    @Test
+    void supportWindowCount() throws Exception {
+        DoytoQLRequest doytoQLRequest = new DoytoQLRequest();
+        doytoQLRequest.setOperation("query");
+        doytoQLRequest.setDomain(DOMAIN_USER);
+        doytoQLRequest.setCount("window");
+        doytoQLRequest.setPage(PageQuery.builder().pageNumber(1).pageSize(2).build());
+
+        postAndSuccess(doytoQLRequest)
+                .andExpect(jsonPath("$.data.total").value(5))
+                .andExpect(jsonPath("$.data.list.size()").value(2))
+                .andExpect(jsonPath("$.data.list[0].doytoqltotal").doesNotExist())
+        ;
+    }
+
+    @Test
+    void supportAggregate() throws Exception {
+        DoytoQLRequest doytoQLRequest = new DoytoQLRequest();
+        doytoQLRequest.setOperation("aggregate");
+        doytoQLRequest.setDomain(DOMAIN_USER);
+        doytoQLRequest.setGroupBy(List.of("user_level"));
+        doytoQLRequest.setHaving(new LinkedHashMap<>(Map.of("countGt", 1)));
+
+        postAndSuccess(doytoQLRequest)
+                .andExpect(jsonPath("$.data.size()").value(1))
+                .andExpect(jsonPath("$.data[0].count").value(4))
+        ;
+    }
+
+    @Test
+    void supportExists() throws Exception {
+        DoytoQLRequest doytoQLRequest = new DoytoQLRequest();
+        doytoQLRequest.setOperation("exists");
+        doytoQLRequest.setDomain(DOMAIN_USER);
+        doytoQLRequest.setFilters(new LinkedHashMap<>(Map.of("username", "user3")));
+
+        postAndSuccess(doytoQLRequest)
+                .andExpect(jsonPath("$.data").value(true))
+        ;
+    }
+
+    @Test
+    void supportUpsertByKeysOnH2() throws Exception {
+        LinkedHashMap<String, Object> existing = TestUtil.buildEntity("1");
+        existing.put("username", "f0rb");
+        existing.put("nickname", "kitty");
+        DoytoQLRequest doytoQLRequest = new DoytoQLRequest();
+        doytoQLRequest.setOperation("upsert");
+        doytoQLRequest.setDomain(DOMAIN_USER);
+        doytoQLRequest.setKeys(List.of("username"));
+        doytoQLRequest.setData(List.of(existing, TestUtil.buildEntity("6")));
+        DoytoQLRequest queryRequest = new DoytoQLRequest();
+        queryRequest.setOperation("query");
+        queryRequest.setDomain(DOMAIN_USER);
+
+        Dialect dialect = GlobalConfiguration.dialect();
+        GlobalConfiguration.instance().setDialect(new H2Dialect());
+        try {
+            postAndSuccess(doytoQLRequest)
+                    .andExpect(jsonPath("$.data").value(2));
+            postAndSuccess(queryRequest)
+                    .andExpect(jsonPath("$.data.total").value(6))
+                    .andExpect(jsonPath("$.data.list[0].nickname").value("kitty"))
+                    .andExpect(jsonPath("$.data.list[5].username").value("user6"));
+        } finally {
+            GlobalConfiguration.instance().setDialect(dialect);
+            new ResourceDatabasePopulator(new ClassPathResource("schema.sql")).execute(dataSource);
+        }
+    }
+
+    @Test
+    void supportSmileByContentNegotiation() throws Exception {
+        ObjectMapper smileMapper = new ObjectMapper(new SmileFactory());
+        DoytoQLRequest doytoQLRequest = new DoytoQLRequest();
+        doytoQLRequest.setOperation("query");
+        doytoQLRequest.setDomain(DOMAIN_USER);
+
+        byte[] body = mockMvc.perform(post("/DoytoQL/")
+                                              .content(smileMapper.writeValueAsBytes(doytoQLRequest))
+                                              .contentType("application/x-jackson-smile")
+                                              .accept("application/x-jackson-smile"))
+                             .andExpect(status().isOk())
+                             .andExpect(content().contentTypeCompatibleWith("application/x-jackson-smile"))
+                             .andReturn().getResponse().getContentAsByteArray();
+
+        JsonNode response = smileMapper.readTree(body);
+        assertThat(response.at("/data/total").asInt()).isEqualTo(5);
+        assertThat(response.at("/data/list/0/username").asText()).isEqualTo("f0rb");
+    }
+
+    static class H2Dialect extends SimpleDialect {
+    }
+}
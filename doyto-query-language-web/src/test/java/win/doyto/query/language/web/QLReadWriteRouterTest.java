@@ -0,0 +1,143 @@
+/*
+ *    Copyright 2022 Forb Yuan
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ *
+ */
+
+package win.doyto.query.language.web;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultActions;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+import win.doyto.query.language.doytoql.DoytoQLRequest;
+import win.doyto.query.language.test.TestUtil;
+import win.doyto.query.util.BeanUtil;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.annotation.Resource;
+import javax.sql.DataSource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * QLReadWriteRouterTest
+ * <p>
+ * Route the requests between two H2 databases, where the replica never receives
+ * the writes to the primary database, as a replica lagging behind.
+ *
+ * @author f0rb on 2022-05-01
+ */
+@SpringBootTest(classes = DoytoQLApplication.class, properties = {
+        "spring.sql.init.mode=always",
+        "doytoql.replicas[0].url=" + QLReadWriteRouterTest.REPLICA_URL,
+        "doytoql.replicas[0].username=sa",
+        "doytoql.read-your-writes-window=1m",
+        "doytoql.result-cache-domains=t_user",
+})
+@AutoConfigureMockMvc
+@SuppressWarnings("java:S2699")
+class QLReadWriteRouterTest {
+
+    static final String REPLICA_URL = "jdbc:h2:mem:doytoql-replica;DB_CLOSE_DELAY=-1";
+
+    @Resource
+    private MockMvc mockMvc;
+    @Resource
+    private DataSource dataSource;
+
+    @BeforeEach
+    void setUp() {
+        ResourceDatabasePopulator populator = new ResourceDatabasePopulator(new ClassPathResource("schema.sql"));
+        populator.execute(dataSource);
+        populator.execute(new DriverManagerDataSource(REPLICA_URL, "sa", ""));
+    }
+
+    private static DoytoQLRequest buildQueryRequest() {
+        DoytoQLRequest request = new DoytoQLRequest();
+        request.setOperation("query");
+        request.setDomain("t_user");
+        request.setFilters(new LinkedHashMap<>(Map.of("id", 1)));
+        return request;
+    }
+
+    private ResultActions postAndSuccess(DoytoQLRequest request, String session) throws Exception {
+        MockHttpServletRequestBuilder requestBuilder = post("/DoytoQL/")
+                .content(BeanUtil.stringify(request)).contentType(MediaType.APPLICATION_JSON);
+        if (session != null) {
+            requestBuilder.header("X-Session-Id", session);
+        }
+        return mockMvc.perform(requestBuilder)
+                      .andExpect(status().isOk())
+                      .andExpect(jsonPath("$.success").value(true));
+    }
+
+    @Test
+    void sendWritesToPrimaryAndQueriesToReplica() throws Exception {
+        postAndSuccess(TestUtil.buildUpdateRequest(), null)
+                .andExpect(jsonPath("$.data").value(1));
+
+        postAndSuccess(buildQueryRequest(), null)
+                .andExpect(jsonPath("$.data.list[0].nickname").value("测试1"));
+        assertThat(new JdbcTemplate(dataSource).queryForObject("SELECT nickname FROM t_user WHERE id = 1", String.class))
+                .isEqualTo("kitty");
+    }
+
+    @Test
+    void keepQueriesOfSessionOnPrimaryAfterItsWrite() throws Exception {
+        postAndSuccess(TestUtil.buildUpdateRequest(), "writer");
+
+        postAndSuccess(buildQueryRequest(), "writer")
+                .andExpect(jsonPath("$.data.list[0].nickname").value("kitty"));
+        postAndSuccess(buildQueryRequest(), "reader")
+                .andExpect(jsonPath("$.data.list[0].nickname").value("测试1"));
+    }
+
+    @Test
+    void readEarlierWritesOfBatchOnPrimary() throws Exception {
+        List<DoytoQLRequest> requests = List.of(TestUtil.buildUpdateRequest(), buildQueryRequest());
+
+        mockMvc.perform(post("/DoytoQL/batch")
+                                .content(BeanUtil.stringify(requests))
+                                .contentType(MediaType.APPLICATION_JSON))
+               .andExpect(status().isOk())
+               .andExpect(jsonPath("$.success").value(true))
+               .andExpect(jsonPath("$.data[0]").value(1))
+               .andExpect(jsonPath("$.data[1].list[0].nickname").value("kitty"));
+    }
+
+    @Test
+    void skipResultsCachedFromReplicaForPinnedSession() throws Exception {
+        postAndSuccess(TestUtil.buildUpdateRequest(), "pinned");
+        // cached from the replica after the write invalidated the domain
+        postAndSuccess(buildQueryRequest(), null)
+                .andExpect(jsonPath("$.data.list[0].nickname").value("测试1"));
+
+        postAndSuccess(buildQueryRequest(), "pinned")
+                .andExpect(jsonPath("$.data.list[0].nickname").value("kitty"));
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ *    Copyright 2022 Forb Yuan
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ *
+ */
+
+package win.doyto.query.language.web;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.test.context.TestPropertySource;
+import win.doyto.query.core.PageQuery;
+import win.doyto.query.language.doytoql.DoytoQLRequest;
+import win.doyto.query.language.test.TestUtil;
+import win.doyto.query.sql.SeekPaging;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+
+/**
+ * QLShardExecutorTest
+ * <p>
+ * Spread t_user across two H2 databases by id, where the odd ids go to shard 1
+ * and the even ids go to shard 0.
+ *
+ * @author f0rb on 2022-04-30
+ */
+@TestPropertySource(properties = {
+        "doytoql.shards[0].url=" + QLShardExecutorTest.SHARD0_URL,
+        "doytoql.shards[0].username=sa",
+        "doytoql.shards[1].url=" + QLShardExecutorTest.SHARD1_URL,
+        "doytoql.shards[1].username=sa",
+        "doytoql.shard-keys.t_user=id",
+})
+@SuppressWarnings("java:S2699")
+class QLShardExecutorTest extends DoytoQLApplicationTest {
+
+    static final String SHARD0_URL = "jdbc:h2:mem:doytoql-shard0;DB_CLOSE_DELAY=-1";
+    static final String SHARD1_URL = "jdbc:h2:mem:doytoql-shard1;DB_CLOSE_DELAY=-1";
+
+    private final List<JdbcTemplate> shards = List.of(
+            new JdbcTemplate(new DriverManagerDataSource(SHARD0_URL, "sa", "")),
+            new JdbcTemplate(new DriverManagerDataSource(SHARD1_URL, "sa", ""))
+    );
+
+    @BeforeEach
+    void setUp() throws Exception {
+        ResourceDatabasePopulator populator = new ResourceDatabasePopulator(new ClassPathResource("schema.sql"));
+        for (JdbcTemplate shard : shards) {
+            populator.execute(shard.getDataSource());
+            shard.update("DELETE FROM t_user");
+        }
+
+        DoytoQLRequest insertRequest = new DoytoQLRequest();
+        insertRequest.setOperation("insert");
+        insertRequest.setDomain(DOMAIN_USER);
+        List<LinkedHashMap<String, Object>> data = new ArrayList<>();
+        for (int i = 1; i <= 6; i++) {
+            LinkedHashMap<String, Object> entity = new LinkedHashMap<>();
+            entity.put("id", i);
+            entity.putAll(TestUtil.buildEntity(String.valueOf(i)));
+            data.add(entity);
+        }
+        insertRequest.setData(data);
+        postAndSuccess(insertRequest).andExpect(jsonPath("$.data").value(6));
+    }
+
+    private static DoytoQLRequest buildQueryRequest(PageQuery pageQuery) {
+        DoytoQLRequest request = new DoytoQLRequest();
+        request.setOperation("query");
+        request.setDomain(DOMAIN_USER);
+        request.setColumns(List.of("username"));
+        request.setPage(pageQuery);
+        return request;
+    }
+
+    @Test
+    void insertRowsToShardOfKey() {
+        assertThat(shards.get(0).queryForList("SELECT id FROM t_user ORDER BY id", Long.class)).containsExactly(2L, 4L, 6L);
+        assertThat(shards.get(1).queryForList("SELECT id FROM t_user ORDER BY id", Long.class)).containsExactly(1L, 3L, 5L);
+    }
+
+    @Test
+    void mergeRowsOfShardsBySort() throws Exception {
+        DoytoQLRequest request = buildQueryRequest(PageQuery.builder().pageSize(10).sort("id,desc").build());
+
+        postAndSuccess(request)
+                .andExpect(jsonPath("$.data.list[*].username").value(contains("user6", "user5", "user4", "user3", "user2", "user1")))
+                .andExpect(jsonPath("$.data.total").value(6));
+    }
+
+    @Test
+    void pageMergedRowsAndSumCountsOfShards() throws Exception {
+        DoytoQLRequest request = buildQueryRequest(PageQuery.builder().pageNumber(2).pageSize(2).sort("id,asc").build());
+
+        postAndSuccess(request)
+                .andExpect(jsonPath("$.data.list[*].username").value(contains("user3", "user4")))
+                .andExpect(jsonPath("$.data.list[0].id").doesNotExist())
+                .andExpect(jsonPath("$.data.total").value(6));
+    }
+
+    @Test
+    void seekMergedRowsAcrossShards() throws Exception {
+        DoytoQLRequest request = buildQueryRequest(PageQuery.builder().pageSize(4).sort("id,desc").build());
+        request.setCursor("");
+
+        postAndSuccess(request)
+                .andExpect(jsonPath("$.data.list[*].username").value(contains("user6", "user5", "user4", "user3")))
+                .andExpect(jsonPath("$.data.cursor").isNotEmpty());
+
+        request.setCursor(SeekPaging.nextCursor(request.getPage(), List.of(
+                Map.of("id", 6), Map.of("id", 5), Map.of("id", 4), Map.of("id", 3)), column -> column));
+        postAndSuccess(request)
+                .andExpect(jsonPath("$.data.list[*].username").value(contains("user2", "user1")))
+                .andExpect(jsonPath("$.data.cursor").doesNotExist());
+    }
+
+    @Test
+    void queryOnlyShardOfKey() throws Exception {
+        DoytoQLRequest request = buildQueryRequest(null);
+        request.setFilters(new LinkedHashMap<>(Map.of("id", 3)));
+        shards.get(0).update("INSERT INTO t_user (id, username, valid) VALUES (3, 'misplaced', false)");
+
+        postAndSuccess(request)
+                .andExpect(jsonPath("$.data.list[*].username").value(contains("user3")))
+                .andExpect(jsonPath("$.data.total").value(1));
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ *    Copyright 2022 Forb Yuan
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ *
+ */
+
+package win.doyto.query.language.web;
+
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.ipc.ArrowStreamReader;
+import org.apache.arrow.vector.types.pojo.Field;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MvcResult;
+import win.doyto.query.language.doytoql.DoytoQLRequest;
+import win.doyto.query.language.doytoql.QLArrowWriter;
+import win.doyto.query.util.BeanUtil;
+
+import java.io.ByteArrayInputStream;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * QLStreamControllerTest
+ *
+ * @author f0rb on 2022-04-22
+ */
+class QLStreamControllerTest extends DoytoQLApplicationTest {
+
+    @Test
+    void shouldStreamRowsAsNdjson() throws Exception {
+        DoytoQLRequest doytoQLRequest = new DoytoQLRequest();
+        doytoQLRequest.setOperation("query");
+        doytoQLRequest.setDomain(DOMAIN_USER);
+
+        MvcResult mvcResult = mockMvc.perform(post("/DoytoQL/stream")
+                                                      .content(BeanUtil.stringify(doytoQLRequest))
+                                                      .contentType(MediaType.APPLICATION_JSON)
+                                                      .accept(MediaType.APPLICATION_NDJSON))
+                                     .andExpect(request().asyncStarted())
+                                     .andReturn();
+        mockMvc.perform(asyncDispatch(mvcResult)).andExpect(status().isOk());
+
+        String[] lines = mvcResult.getResponse().getContentAsString().split("\n");
+        assertThat(lines).hasSize(5);
+        assertThat(lines[0]).contains("\"username\":\"f0rb\"");
+    }
+
+    @Test
+    void shouldWriteRowsAsArrowStream() throws Exception {
+        DoytoQLRequest doytoQLRequest = new DoytoQLRequest();
+        doytoQLRequest.setOperation("query");
+        doytoQLRequest.setDomain(DOMAIN_USER);
+        doytoQLRequest.setColumns(List.of("id", "username"));
+
+        MvcResult mvcResult = mockMvc.perform(post("/DoytoQL")
+                                                      .content(BeanUtil.stringify(doytoQLRequest))
+                                                      .contentType(MediaType.APPLICATION_JSON)
+                                                      .accept(QLArrowWriter.ARROW_STREAM_VALUE))
+                                     .andExpect(request().asyncStarted())
+                                     .andReturn();
+        mockMvc.perform(asyncDispatch(mvcResult)).andExpect(status().isOk());
+
+        byte[] body = mvcResult.getResponse().getContentAsByteArray();
+        try (RootAllocator allocator = new RootAllocator();
+             ArrowStreamReader reader = new ArrowStreamReader(new ByteArrayInputStream(body), allocator)) {
+            VectorSchemaRoot root = reader.getVectorSchemaRoot();
+            assertThat(root.getSchema().getFields()).extracting(Field::getName).containsExactly("id", "username");
+            assertThat(reader.loadNextBatch()).isTrue();
+            assertThat(root.getRowCount()).isEqualTo(5);
+            assertThat(root.getVector("username").getObject(0)).hasToString("f0rb");
+        }
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ *    Copyright 2022 Forb Yuan
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ *
+ */
+
+package win.doyto.query.language.webflux;
+
+import io.r2dbc.spi.ColumnMetadata;
+import io.r2dbc.spi.Row;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import win.doyto.query.language.doytoql.QLArrowWriter;
+import win.doyto.query.r2dbc.RowMapper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+
+/**
+ * ArrowRowMapper
+ * <p>
+ * Append each row to an Arrow stream, and map it to the bytes written so far,
+ * which are empty until a record batch is full. The schema is resolved from
+ * the metadata of the first row, so an empty result comes with an empty schema.
+ * An instance is bound to one query and should be closed after it,
+ * and sums the time spent on writing when timed.
+ *
+ * @author f0rb on 2022-05-11
+ */
+class ArrowRowMapper implements RowMapper<DataBuffer>, AutoCloseable {
+
+    private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    private final QLArrowWriter writer;
+    private final boolean timed;
+    private Object[] values;
+    private long writingNanos;
+
+    ArrowRowMapper(int batchSize, boolean timed) {
+        this.writer = new QLArrowWriter(buffer, batchSize);
+        this.timed = timed;
+    }
+
+    long getWritingNanos() {
+        return writingNanos;
+    }
+
+    @Override
+    public DataBuffer map(Row row, int rn) {
+        if (!timed) {
+            return doMap(row);
+        }
+        long start = System.nanoTime();
+        try {
+            return doMap(row);
+        } finally {
+            writingNanos += System.nanoTime() - start;
+        }
+    }
+
+    private DataBuffer doMap(Row row) {
+        try {
+            if (!writer.isStarted()) {
+                List<? extends ColumnMetadata> columnMetadatas = row.getMetadata().getColumnMetadatas();
+                start(columnMetadatas);
+                values = new Object[columnMetadatas.size()];
+            }
+            for (int i = 0; i < values.length; i++) {
+                values[i] = row.get(i);
+            }
+            writer.write(values);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return drain();
+    }
+
+    private void start(List<? extends ColumnMetadata> columnMetadatas) throws IOException {
+        String[] names = new String[columnMetadatas.size()];
+        Class<?>[] types = new Class<?>[names.length];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = columnMetadatas.get(i).getName().toLowerCase();
+            types[i] = columnMetadatas.get(i).getJavaType();
+        }
+        writer.start(names, types);
+    }
+
+    /**
+     * @return the bytes of the rows left and the end of the stream
+     */
+    DataBuffer end() {
+        long start = timed ? System.nanoTime() : 0;
+        try {
+            writer.end();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (timed) {
+            writingNanos += System.nanoTime() - start;
+        }
+        return drain();
+    }
+
+    private DataBuffer drain() {
+        byte[] bytes = buffer.toByteArray();
+        buffer.reset();
+        return DefaultDataBufferFactory.sharedInstance.wrap(bytes);
+    }
+
+    @Override
+    public void close() {
+        writer.close();
+    }
+}
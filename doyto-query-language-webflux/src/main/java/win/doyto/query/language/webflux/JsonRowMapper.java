@@ -0,0 +1,106 @@
+/*
+ *    Copyright 2022 Forb Yuan
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ *
+ */
+
+package win.doyto.query.language.webflux;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.core.util.ByteArrayBuilder;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.r2dbc.spi.ColumnMetadata;
+import io.r2dbc.spi.Row;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import win.doyto.query.r2dbc.RowMapper;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * JsonRowMapper
+ * <p>
+ * Map each row to the bytes of a JSON object followed by a newline,
+ * with the keys resolved and encoded once for the query, or map each row
+ * merged from the shards the same way by its own keys.
+ * An instance is bound to one query since it keeps the keys of the first row.
+ *
+ * @author f0rb on 2022-04-29
+ */
+class JsonRowMapper implements RowMapper<DataBuffer> {
+
+    private final ByteArrayBuilder buffer = new ByteArrayBuilder();
+    private final JsonGenerator generator;
+    private SerializedString[] keys;
+
+    JsonRowMapper(ObjectMapper objectMapper) {
+        try {
+            this.generator = objectMapper.createGenerator(buffer);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        this.generator.setRootValueSeparator(null);
+    }
+
+    @Override
+    public DataBuffer map(Row row, int rn) {
+        if (keys == null) {
+            keys = resolveKeys(row.getMetadata().getColumnMetadatas());
+        }
+        try {
+            generator.writeStartObject();
+            for (int i = 0; i < keys.length; i++) {
+                generator.writeFieldName(keys[i]);
+                generator.writeObject(row.get(i));
+            }
+            generator.writeEndObject();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return drain();
+    }
+
+    DataBuffer map(Map<String, Object> row) {
+        try {
+            generator.writeObject(row);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return drain();
+    }
+
+    private DataBuffer drain() {
+        try {
+            generator.writeRaw('\n');
+            generator.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        byte[] bytes = buffer.toByteArray();
+        buffer.reset();
+        return DefaultDataBufferFactory.sharedInstance.wrap(bytes);
+    }
+
+    private static SerializedString[] resolveKeys(List<? extends ColumnMetadata> columnMetadatas) {
+        SerializedString[] keys = new SerializedString[columnMetadatas.size()];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = new SerializedString(columnMetadatas.get(i).getName().toLowerCase());
+        }
+        return keys;
+    }
+}
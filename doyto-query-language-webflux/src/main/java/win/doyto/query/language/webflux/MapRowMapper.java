@@ -19,28 +19,65 @@ package win.doyto.query.language.webflux;
 
 import io.r2dbc.spi.ColumnMetadata;
 import io.r2dbc.spi.Row;
+import win.doyto.query.language.doytoql.CompactRowMap;
 import win.doyto.query.r2dbc.RowMapper;
 
-import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
 /**
  * MapRowMapper
+ * <p>
+ * Map rows to {@link CompactRowMap} sharing the keys resolved from the first row.
+ * An instance is bound to one query since it keeps the keys of the first row,
+ * and sums the time spent on mapping when timed.
  *
  * @author f0rb on 2022-03-31
  */
 public class MapRowMapper implements RowMapper<Map<String, Object>> {
 
+    private final boolean timed;
+    private CompactRowMap.Keys keys;
+    private long mappingNanos;
+
+    public MapRowMapper() {
+        this(false);
+    }
+
+    public MapRowMapper(boolean timed) {
+        this.timed = timed;
+    }
+
+    long getMappingNanos() {
+        return mappingNanos;
+    }
+
     @Override
     public Map<String, Object> map(Row row, int rn) {
-        Map<String, Object> ret = new LinkedHashMap<>();
+        if (!timed) {
+            return doMap(row);
+        }
+        long start = System.nanoTime();
+        try {
+            return doMap(row);
+        } finally {
+            mappingNanos += System.nanoTime() - start;
+        }
+    }
 
-        List<? extends ColumnMetadata> mds = row.getMetadata().getColumnMetadatas();
-        for (ColumnMetadata md : mds) {
-            String colName = md.getName();
-            ret.put(colName.toLowerCase(), row.get(colName));
+    private Map<String, Object> doMap(Row row) {
+        if (keys == null) {
+            List<? extends ColumnMetadata> mds = row.getMetadata().getColumnMetadatas();
+            String[] columnKeys = new String[mds.size()];
+            for (int i = 0; i < columnKeys.length; i++) {
+                columnKeys[i] = mds.get(i).getName().toLowerCase();
+            }
+            keys = new CompactRowMap.Keys(columnKeys);
+        }
+        Object[] values = new Object[keys.size()];
+        for (int i = 0, columnCount = keys.columnCount(); i < columnCount; i++) {
+            values[keys.slotOf(i)] = row.get(i);
         }
-        return ret;
+        return new CompactRowMap(keys, values);
     }
 }
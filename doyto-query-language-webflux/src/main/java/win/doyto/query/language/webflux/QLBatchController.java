@@ -0,0 +1,86 @@
+/*
+ *    Copyright 2022 Forb Yuan
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ *
+ */
+
+package win.doyto.query.language.webflux;
+
+import lombok.AllArgsConstructor;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import win.doyto.query.language.doytoql.DoytoQLRequest;
+import win.doyto.query.language.doytoql.QLErrorCode;
+import win.doyto.query.language.doytoql.QLProperties;
+import win.doyto.query.web.response.ErrorCode;
+import win.doyto.query.web.response.JsonBody;
+import win.doyto.query.web.response.PresetErrorCode;
+
+import java.util.List;
+import javax.validation.Validator;
+
+/**
+ * QLBatchController
+ * <p>
+ * Execute an array of requests in one round-trip and return the results in order.
+ * A batch of queries is merged with at most <code>doytoql.batch-parallelism</code>
+ * queries in flight, while a batch containing any write runs in order,
+ * optionally in one transaction.
+ *
+ * @author f0rb on 2022-04-23
+ */
+@JsonBody
+@RestController
+@AllArgsConstructor
+public class QLBatchController {
+
+    private QLController qlController;
+    private Validator validator;
+    private QLProperties qlProperties;
+    private TransactionalOperator transactionalOperator;
+    private QLReadWriteRouter readWriteRouter;
+
+    @PostMapping("DoytoQL/batch")
+    public Mono<List<Object>> batch(
+            @RequestBody List<DoytoQLRequest> requests,
+            @RequestParam(defaultValue = "false") boolean transactional
+    ) {
+        ErrorCode.assertTrue(requests.size() <= qlProperties.getBatchMaxSize(), QLErrorCode.BATCH_SIZE_SHOULD_NOT_EXCEED_LIMIT);
+        requests.forEach(request -> ErrorCode.assertTrue(
+                validator.validate(request).isEmpty(), PresetErrorCode.ARGUMENT_VALIDATION_FAILED));
+
+        Flux<DoytoQLRequest> requestFlux = Flux.fromIterable(requests);
+        if (requests.stream().allMatch(request -> DoytoQLRequest.isRead(request.getOperation()))) {
+            return requestFlux
+                    .flatMapSequential(this::execute, qlProperties.getBatchParallelism())
+                    .collectList();
+        }
+        Flux<Object> results = requestFlux.concatMap(this::execute);
+        if (transactional) {
+            results = transactionalOperator.transactional(results);
+        }
+        // the later requests read the writes of the earlier ones on the primary database,
+        // where the queries in a transaction also stay along with the writes
+        return readWriteRouter.onPrimary(results).collectList();
+    }
+
+    private Mono<Object> execute(DoytoQLRequest request) {
+        return Mono.defer(() -> qlController.execute(request)).cast(Object.class);
+    }
+}
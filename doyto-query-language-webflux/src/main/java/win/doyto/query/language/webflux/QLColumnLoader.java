@@ -0,0 +1,110 @@
+/*
+ *    Copyright 2022 Forb Yuan
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ *
+ */
+
+package win.doyto.query.language.webflux;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import reactor.core.publisher.Mono;
+import win.doyto.query.config.GlobalConfiguration;
+import win.doyto.query.r2dbc.R2dbcOperations;
+import win.doyto.query.sql.ColumnRegistry;
+import win.doyto.query.sql.SqlAndArgs;
+import win.doyto.query.sql.SqlTemplateCache;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * QLColumnLoader
+ * <p>
+ * Load the columns of the tables from <code>INFORMATION_SCHEMA.COLUMNS</code>
+ * into {@link ColumnRegistry}, since R2DBC provides no metadata of the database.
+ *
+ * @author f0rb on 2022-05-07
+ */
+@Slf4j
+public class QLColumnLoader implements SmartInitializingSingleton {
+
+    static final String COLUMNS_SQL = "SELECT TABLE_NAME, COLUMN_NAME, IS_NULLABLE FROM INFORMATION_SCHEMA.COLUMNS WHERE TABLE_SCHEMA = ";
+
+    private final R2dbcOperations r2dbcOperations;
+    private final ColumnRegistry columnRegistry;
+    private final SqlTemplateCache sqlTemplateCache;
+    private final boolean loadOnStartup;
+
+    public QLColumnLoader(R2dbcOperations r2dbcOperations, ColumnRegistry columnRegistry,
+                          SqlTemplateCache sqlTemplateCache, boolean loadOnStartup) {
+        this.r2dbcOperations = r2dbcOperations;
+        this.columnRegistry = columnRegistry;
+        this.sqlTemplateCache = sqlTemplateCache;
+        this.loadOnStartup = loadOnStartup;
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        if (loadOnStartup) {
+            refresh().block();
+        }
+    }
+
+    /**
+     * Build the query of the columns in the current schema by the simple class name of the dialect,
+     * where MySQL names the current database as the schema.
+     */
+    static String columnsSqlOf(String dialectName) {
+        String name = dialectName.toLowerCase(Locale.ROOT);
+        if (name.contains("mysql") || name.contains("mariadb")) {
+            return COLUMNS_SQL + "DATABASE()";
+        }
+        if (name.contains("sqlserver")) {
+            return COLUMNS_SQL + "SCHEMA_NAME()";
+        }
+        return COLUMNS_SQL + "CURRENT_SCHEMA";
+    }
+
+    /**
+     * Reload the columns of the tables in the current schema,
+     * and drop the templates built with the former columns.
+     *
+     * @return the count of tables loaded
+     */
+    public Mono<Integer> refresh() {
+        String sql = columnsSqlOf(GlobalConfiguration.dialect().getClass().getSimpleName());
+        return r2dbcOperations
+                .query(SqlAndArgs.buildSqlWithArgs(args -> sql),
+                       (row, rn) -> new String[]{row.get(0, String.class), row.get(1, String.class), row.get(2, String.class)})
+                .collectList()
+                .map(rows -> {
+                    Map<String, List<String>> columnsByTable = new HashMap<>();
+                    Map<String, List<String>> nullableColumnsByTable = new HashMap<>();
+                    for (String[] row : rows) {
+                        columnsByTable.computeIfAbsent(row[0], table -> new ArrayList<>()).add(row[1]);
+                        if (!"NO".equalsIgnoreCase(row[2])) {
+                            nullableColumnsByTable.computeIfAbsent(row[0], table -> new ArrayList<>()).add(row[1]);
+                        }
+                    }
+                    columnRegistry.load(columnsByTable, nullableColumnsByTable);
+                    sqlTemplateCache.clear();
+                    log.info("Loaded the columns of {} tables", columnsByTable.size());
+                    return columnsByTable.size();
+                });
+    }
+}
@@ -18,18 +18,41 @@
 package win.doyto.query.language.webflux;
 
 import lombok.AllArgsConstructor;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.NoTransactionException;
+import org.springframework.transaction.reactive.TransactionSynchronization;
+import org.springframework.transaction.reactive.TransactionSynchronizationManager;
+import org.springframework.transaction.reactive.TransactionalOperator;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import win.doyto.query.language.doytoql.CursorPageList;
 import win.doyto.query.language.doytoql.DoytoQLRequest;
+import win.doyto.query.language.doytoql.QLCostGuard;
+import win.doyto.query.language.doytoql.QLCountMode;
 import win.doyto.query.language.doytoql.QLErrorCode;
+import win.doyto.query.language.doytoql.QLLimiter;
+import win.doyto.query.language.doytoql.QLMetrics;
+import win.doyto.query.language.doytoql.QLProperties;
+import win.doyto.query.language.doytoql.QLResultCache;
+import win.doyto.query.language.doytoql.QLSlowQueryLog;
+import win.doyto.query.language.doytoql.QLTotalHelper;
 import win.doyto.query.r2dbc.R2dbcOperations;
 import win.doyto.query.service.PageList;
+import win.doyto.query.sql.BatchSqlAndArgs;
+import win.doyto.query.sql.QLBuilder;
+import win.doyto.query.sql.SeekPaging;
+import win.doyto.query.sql.SqlAndArgs;
 import win.doyto.query.web.response.ErrorCodeException;
 import win.doyto.query.web.response.JsonBody;
 
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
 import javax.validation.Valid;
 
 import static win.doyto.query.sql.QLBuilder.*;
@@ -45,21 +68,203 @@ import static win.doyto.query.sql.QLBuilder.*;
 public class QLController {
 
     private R2dbcOperations r2dbcOperations;
+    private R2dbcBatchOperations r2dbcBatchOperations;
+    private QLProperties qlProperties;
+    private QLResultCache resultCache;
+    private QLShardExecutor shardExecutor;
+    private QLReadWriteRouter readWriteRouter;
+    private TransactionalOperator transactionalOperator;
+    private QLLimiter limiter;
+    private QLCostGuard costGuard;
+    private QLMetrics metrics;
+    private QLSlowQueryLog slowQueryLog;
+    private QLSlowQueryExplainer slowQueryExplainer;
 
     @SuppressWarnings("java:S1452")
     @PostMapping("DoytoQL")
-    @Transactional
     public Mono<?> execute(@RequestBody @Valid DoytoQLRequest request) {
-        return switch (request.getOperation()) {
-            case "delete" -> r2dbcOperations.update(buildDeleteSql(request));
-            case "insert" -> r2dbcOperations.update(buildInsertSql(request));
-            case "update" -> r2dbcOperations.update(buildUpdateSql(request));
-            case "query" -> r2dbcOperations
-                    .query(buildQuerySql(request), new MapRowMapper())
-                    .collectList()
-                    .zipWith(r2dbcOperations.count(buildCountSql(request)))
-                    .map(t -> new PageList<>(t.getT1(), t.getT2()));
+        String domain = request.getDomain();
+        Duration timeout = limiter.timeoutOf(request);
+        return timed(QLMetrics.Stage.REQUEST, request, Mono.defer(() -> {
+            costGuard.guard(request);
+            limiter.tryAcquire(domain);
+            Mono<?> result = Mono.defer(() -> doExecute(request));
+            if (!timeout.isZero()) {
+                // the statement is cancelled along with the subscription
+                result = result.timeout(timeout, Mono.error(() -> new ErrorCodeException(QLErrorCode.QUERY_TIMEOUT)));
+            }
+            return result.doFinally(signal -> limiter.release(domain));
+        }));
+    }
+
+    private Mono<?> doExecute(DoytoQLRequest request) {
+        if (shardExecutor.isSharded(request.getDomain())) {
+            return shardExecutor.execute(request);
+        }
+        Mono<?> result = switch (request.getOperation()) {
+            case "delete" -> write(request, update(request, build(request, QLBuilder::buildDeleteSql)));
+            case "insert" -> write(request, insert(request));
+            case "upsert" -> write(request, upsert(request));
+            case "update" -> write(request, isUpdateByKeys(request)
+                    ? updateByKeys(request) : update(request, build(request, QLBuilder::buildUpdateSql)));
+            case "query" -> request.getCursor() != null ? seek(request) : query(request);
+            case "aggregate" -> queryForList(request, build(request, QLBuilder::buildAggregateSql));
+            case "exists" -> queryForList(request, build(request, QLBuilder::buildExistsSql)).map(list -> !list.isEmpty());
             default -> throw new ErrorCodeException(QLErrorCode.OPERATION_NOT_SUPPORTED);
         };
+        // the transaction is opened inside the route, since it takes the connection on begin
+        return readWriteRouter.route(request.getOperation(), result);
+    }
+
+    private SqlAndArgs build(DoytoQLRequest request, Function<DoytoQLRequest, SqlAndArgs> builder) {
+        SqlAndArgs sqlAndArgs = metrics.time(QLMetrics.Stage.BUILD, request, () -> builder.apply(request));
+        metrics.recordSql(request, sqlAndArgs);
+        return sqlAndArgs;
+    }
+
+    private Mono<Integer> update(DoytoQLRequest request, SqlAndArgs sqlAndArgs) {
+        return timed(QLMetrics.Stage.EXECUTE, request, sqlAndArgs, r2dbcOperations.update(sqlAndArgs));
+    }
+
+    private Mono<Integer> insert(DoytoQLRequest request) {
+        if (request.getData() == null || request.getData().size() <= 1) {
+            return update(request, build(request, QLBuilder::buildInsertSql));
+        }
+        BatchSqlAndArgs batchSqlAndArgs = metrics.time(QLMetrics.Stage.BUILD, request, () -> buildInsertBatchSql(request));
+        return timed(QLMetrics.Stage.EXECUTE, request, r2dbcBatchOperations.batchUpdate(batchSqlAndArgs, qlProperties.getInsertBatchSize()));
+    }
+
+    private Mono<Integer> updateByKeys(DoytoQLRequest request) {
+        if (canUpdateByCase(request, qlProperties.getUpdateCaseMaxRows())) {
+            return update(request, build(request, QLBuilder::buildUpdateCaseSql));
+        }
+        BatchSqlAndArgs batchSqlAndArgs = metrics.time(QLMetrics.Stage.BUILD, request, () -> buildUpdateBatchSql(request));
+        return timed(QLMetrics.Stage.EXECUTE, request, r2dbcBatchOperations.batchUpdate(batchSqlAndArgs, qlProperties.getInsertBatchSize()));
+    }
+
+    private Mono<Integer> upsert(DoytoQLRequest request) {
+        List<SqlAndArgs> sqlAndArgsList = metrics.time(QLMetrics.Stage.BUILD, request,
+                () -> buildUpsertSqls(request, qlProperties.getInsertBatchSize()));
+        sqlAndArgsList.forEach(sqlAndArgs -> metrics.recordSql(request, sqlAndArgs));
+        return Flux.fromIterable(sqlAndArgsList)
+                   .concatMap(sqlAndArgs -> update(request, sqlAndArgs))
+                   .reduce(0, Integer::sum);
+    }
+
+    private <T> Mono<T> timed(QLMetrics.Stage stage, DoytoQLRequest request, SqlAndArgs sqlAndArgs, Mono<T> statement) {
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            return timed(stage, request, statement).doFinally(signal -> {
+                if (slowQueryLog.record(request, sqlAndArgs, System.nanoTime() - start)) {
+                    slowQueryExplainer.explain(sqlAndArgs);
+                }
+            });
+        });
+    }
+
+    private <T> Mono<T> timed(QLMetrics.Stage stage, DoytoQLRequest request, Mono<T> mono) {
+        if (!metrics.isEnabled()) {
+            return mono;
+        }
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            return mono.doOnSuccess(result -> metrics.record(stage, request, QLMetrics.SUCCESS, start))
+                       .doOnError(e -> metrics.record(stage, request, QLMetrics.outcomeOf(e), start));
+        });
+    }
+
+    private <T> Mono<T> write(DoytoQLRequest request, Mono<T> write) {
+        return transactionalOperator.transactional(invalidateAfterWrite(request, write));
+    }
+
+    private <T> Mono<T> invalidateAfterWrite(DoytoQLRequest request, Mono<T> write) {
+        String domain = request.getDomain();
+        if (!resultCache.isEnabled(domain)) {
+            return write;
+        }
+        return write
+                .flatMap(result -> TransactionSynchronizationManager
+                        .forCurrentTransaction()
+                        .filter(TransactionSynchronizationManager::isSynchronizationActive)
+                        // drop the results cached by other requests before the commit
+                        .doOnNext(manager -> manager.registerSynchronization(new TransactionSynchronization() {
+                            @Override
+                            public Mono<Void> afterCompletion(int status) {
+                                return Mono.fromRunnable(() -> resultCache.invalidate(domain));
+                            }
+                        }))
+                        .onErrorResume(NoTransactionException.class, e -> Mono.empty())
+                        .thenReturn(result))
+                .doFinally(signal -> resultCache.invalidate(domain));
+    }
+
+    private Mono<PageList<Map<String, Object>>> query(DoytoQLRequest request) {
+        QLCountMode countMode = QLCountMode.resolve(request.getCount());
+        if (countMode == QLCountMode.WINDOW) {
+            SqlAndArgs sqlAndArgs = build(request, QLBuilder::buildQueryWithTotalSql);
+            return cached(request, sqlAndArgs, () -> queryRows(request, sqlAndArgs)
+                    .flatMap(list -> {
+                        long total = QLTotalHelper.extractWindowTotal(list);
+                        return total != QLTotalHelper.UNKNOWN_TOTAL ? Mono.just(new PageList<>(list, total)) : count(request, list);
+                    }), pageList -> QLResultCache.weigh(pageList.getList()));
+        }
+        Mono<List<Map<String, Object>>> listMono = queryForList(request, build(request, QLBuilder::buildQuerySql));
+        if (countMode == QLCountMode.NONE) {
+            return listMono.map(list -> new PageList<>(list, QLTotalHelper.UNKNOWN_TOTAL));
+        }
+        return listMono.flatMap(list -> count(request, list));
+    }
+
+    private Mono<CursorPageList<Map<String, Object>>> seek(DoytoQLRequest request) {
+        SqlAndArgs sqlAndArgs = build(request, QLBuilder::buildSeekQuerySql);
+        // the sort columns are only selected to locate the next page
+        List<String> appendedKeys = appendedSortKeys(request, String::toLowerCase);
+        return queryForList(request, sqlAndArgs).map(list -> new CursorPageList<>(
+                SeekPaging.withoutKeys(list, appendedKeys), SeekPaging.nextCursor(request.getPage(), list, String::toLowerCase)));
+    }
+
+    private Mono<List<Map<String, Object>>> queryForList(DoytoQLRequest request, SqlAndArgs sqlAndArgs) {
+        return cached(request, sqlAndArgs, () -> queryRows(request, sqlAndArgs), QLResultCache::weigh);
+    }
+
+    private Mono<List<Map<String, Object>>> queryRows(DoytoQLRequest request, SqlAndArgs sqlAndArgs) {
+        return Mono.defer(() -> {
+            MapRowMapper rowMapper = new MapRowMapper(metrics.isEnabled());
+            // the time of execution includes the time of mapping recorded separately
+            return timed(QLMetrics.Stage.EXECUTE, request, sqlAndArgs, r2dbcOperations.query(sqlAndArgs, rowMapper).collectList())
+                    .doOnNext(list -> {
+                        metrics.recordNanos(QLMetrics.Stage.MAP, request, QLMetrics.SUCCESS, rowMapper.getMappingNanos());
+                        metrics.recordRows(request, list.size());
+                    });
+        });
+    }
+
+    private Mono<PageList<Map<String, Object>>> count(DoytoQLRequest request, List<Map<String, Object>> list) {
+        long total = QLTotalHelper.totalOfShortPage(request.getPage(), list.size());
+        if (total != QLTotalHelper.UNKNOWN_TOTAL) {
+            return Mono.just(new PageList<>(list, total));
+        }
+        SqlAndArgs sqlAndArgs = build(request, QLBuilder::buildCountSql);
+        return cached(request, sqlAndArgs, () -> timed(QLMetrics.Stage.COUNT, request, sqlAndArgs, r2dbcOperations.count(sqlAndArgs)), QLResultCache::weigh)
+                .map(t -> new PageList<>(list, t));
+    }
+
+    private <T> Mono<T> cached(DoytoQLRequest request, SqlAndArgs sqlAndArgs, Supplier<Mono<T>> loader, ToLongFunction<? super T> weigher) {
+        String domain = request.getDomain();
+        if (!resultCache.isEnabled(domain)) {
+            return loader.get();
+        }
+        return Mono.deferContextual(context -> {
+            if (readWriteRouter.isOnPrimary(context)) {
+                // the results cached from a lagging replica may miss the writes of a pinned session
+                return loader.get();
+            }
+            T value = resultCache.getIfPresent(domain, sqlAndArgs);
+            if (value != null) {
+                return Mono.just(value);
+            }
+            long generation = resultCache.generation(domain);
+            return loader.get().doOnNext(result -> resultCache.put(domain, sqlAndArgs, generation, result, weigher.applyAsLong(result)));
+        });
     }
 }
@@ -0,0 +1,73 @@
+/*
+ *    Copyright 2022 Forb Yuan
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ *
+ */
+
+package win.doyto.query.language.webflux;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.reactivestreams.Publisher;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.codec.DecodingException;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.codec.json.Jackson2JsonDecoder;
+import org.springframework.util.MimeType;
+import reactor.core.publisher.Mono;
+import win.doyto.query.language.doytoql.DoytoQLRequest;
+import win.doyto.query.language.doytoql.QLMetrics;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * QLMetricsJsonDecoder
+ * <p>
+ * Time the deserialization of the request body.
+ *
+ * @author f0rb on 2022-05-03
+ */
+class QLMetricsJsonDecoder extends Jackson2JsonDecoder {
+
+    private final QLMetrics metrics;
+
+    QLMetricsJsonDecoder(ObjectMapper objectMapper, QLMetrics metrics) {
+        super(objectMapper);
+        this.metrics = metrics;
+    }
+
+    @Override
+    public Mono<Object> decodeToMono(Publisher<DataBuffer> input, ResolvableType elementType, MimeType mimeType, Map<String, Object> hints) {
+        return Mono.deferContextual(context -> super.decodeToMono(
+                input, elementType, mimeType, QLMetricsWebFilter.withRequestHolder(hints, context)));
+    }
+
+    @Override
+    public Object decode(DataBuffer dataBuffer, ResolvableType targetType, MimeType mimeType, Map<String, Object> hints) {
+        long start = metrics.start();
+        try {
+            Object value = super.decode(dataBuffer, targetType, mimeType, hints);
+            DoytoQLRequest request = value instanceof DoytoQLRequest qlRequest ? qlRequest : null;
+            AtomicReference<DoytoQLRequest> holder = QLMetricsWebFilter.requestHolder(hints);
+            if (holder != null) {
+                holder.set(request);
+            }
+            metrics.record(QLMetrics.Stage.DESERIALIZE, request, QLMetrics.SUCCESS, start);
+            return value;
+        } catch (DecodingException e) {
+            metrics.record(QLMetrics.Stage.DESERIALIZE, null, QLMetrics.outcomeOf(e), start);
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ *    Copyright 2022 Forb Yuan
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ *
+ */
+
+package win.doyto.query.language.webflux;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.reactivestreams.Publisher;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.codec.EncodingException;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.http.codec.json.Jackson2JsonEncoder;
+import org.springframework.util.MimeType;
+import reactor.core.publisher.Flux;
+import win.doyto.query.language.doytoql.DoytoQLRequest;
+import win.doyto.query.language.doytoql.QLMetrics;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * QLMetricsJsonEncoder
+ * <p>
+ * Time the serialization of the response body,
+ * tagged by the request decoded by {@link QLMetricsJsonDecoder}.
+ *
+ * @author f0rb on 2022-05-03
+ */
+class QLMetricsJsonEncoder extends Jackson2JsonEncoder {
+
+    private final QLMetrics metrics;
+
+    QLMetricsJsonEncoder(ObjectMapper objectMapper, QLMetrics metrics) {
+        super(objectMapper);
+        this.metrics = metrics;
+    }
+
+    @Override
+    public Flux<DataBuffer> encode(Publisher<?> inputStream, DataBufferFactory bufferFactory,
+                                   ResolvableType elementType, MimeType mimeType, Map<String, Object> hints) {
+        return Flux.deferContextual(context -> super.encode(
+                inputStream, bufferFactory, elementType, mimeType, QLMetricsWebFilter.withRequestHolder(hints, context)));
+    }
+
+    @Override
+    public DataBuffer encodeValue(Object value, DataBufferFactory bufferFactory,
+                                  ResolvableType valueType, MimeType mimeType, Map<String, Object> hints) {
+        AtomicReference<DoytoQLRequest> holder = QLMetricsWebFilter.requestHolder(hints);
+        DoytoQLRequest request = holder != null ? holder.get() : null;
+        long start = metrics.start();
+        try {
+            DataBuffer dataBuffer = super.encodeValue(value, bufferFactory, valueType, mimeType, hints);
+            metrics.record(QLMetrics.Stage.SERIALIZE, request, QLMetrics.SUCCESS, start);
+            return dataBuffer;
+        } catch (EncodingException e) {
+            metrics.record(QLMetrics.Stage.SERIALIZE, request, QLMetrics.outcomeOf(e), start);
+            throw e;
+        }
+    }
+}
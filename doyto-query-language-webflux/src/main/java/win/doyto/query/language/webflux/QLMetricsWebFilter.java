@@ -0,0 +1,65 @@
+/*
+ *    Copyright 2022 Forb Yuan
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ *
+ */
+
+package win.doyto.query.language.webflux;
+
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+import reactor.util.context.ContextView;
+import win.doyto.query.language.doytoql.DoytoQLRequest;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * QLMetricsWebFilter
+ * <p>
+ * Keep a holder of the request in the subscriber context, which is filled by
+ * {@link QLMetricsJsonDecoder} and read by {@link QLMetricsJsonEncoder}
+ * to tag the serialization by the request decoded.
+ *
+ * @author f0rb on 2022-05-03
+ */
+class QLMetricsWebFilter implements WebFilter {
+
+    private static final String REQUEST_KEY = QLMetricsWebFilter.class.getName() + ".request";
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        return chain.filter(exchange).contextWrite(context -> context.put(REQUEST_KEY, new AtomicReference<DoytoQLRequest>()));
+    }
+
+    /**
+     * Copy the holder from the context to the hints, since the codecs only see the hints.
+     */
+    static Map<String, Object> withRequestHolder(Map<String, Object> hints, ContextView context) {
+        if (!context.hasKey(REQUEST_KEY)) {
+            return hints;
+        }
+        Map<String, Object> newHints = new HashMap<>(hints);
+        newHints.put(REQUEST_KEY, context.get(REQUEST_KEY));
+        return newHints;
+    }
+
+    @SuppressWarnings("unchecked")
+    static AtomicReference<DoytoQLRequest> requestHolder(Map<String, Object> hints) {
+        return hints == null ? null : (AtomicReference<DoytoQLRequest>) hints.get(REQUEST_KEY);
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ *    Copyright 2022 Forb Yuan
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ *
+ */
+
+package win.doyto.query.language.webflux;
+
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.context.ContextView;
+import win.doyto.query.language.doytoql.DoytoQLRequest;
+import win.doyto.query.language.doytoql.QLProperties;
+import win.doyto.query.language.doytoql.QLReplicaBalancer;
+import win.doyto.query.language.doytoql.QLSessionPins;
+
+/**
+ * QLReadWriteRouter
+ * <p>
+ * Send the queries to the replicas and the writes to the primary database.
+ * The queries of a session stay on the primary database for a window after its write.
+ * The session is read from the session header into the subscriber context as a {@link WebFilter}.
+ *
+ * @author f0rb on 2022-05-01
+ */
+public class QLReadWriteRouter implements WebFilter {
+
+    static final String SESSION_KEY = QLReadWriteRouter.class.getName() + ".session";
+
+    private final String sessionHeader;
+    private final QLReplicaBalancer balancer;
+    private final QLSessionPins sessionPins;
+    private final boolean enabled;
+
+    public QLReadWriteRouter(QLProperties qlProperties) {
+        int replicaCount = qlProperties.getReplicas().size();
+        this.sessionHeader = qlProperties.getSessionHeader();
+        this.balancer = new QLReplicaBalancer(qlProperties.getReplicaBalance(), Math.max(replicaCount, 1));
+        this.sessionPins = new QLSessionPins(qlProperties.getReadYourWritesWindow());
+        this.enabled = replicaCount > 0;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        String session = exchange.getRequest().getHeaders().getFirst(sessionHeader);
+        if (!enabled || session == null) {
+            return chain.filter(exchange);
+        }
+        return chain.filter(exchange).contextWrite(context -> context.put(SESSION_KEY, session));
+    }
+
+    public <T> Mono<T> route(String operation, Mono<T> mono) {
+        if (!enabled) {
+            return mono;
+        }
+        return Mono.deferContextual(context -> {
+            String session = context.<String>getOrEmpty(SESSION_KEY).orElse(null);
+            if (!DoytoQLRequest.isRead(operation)) {
+                return onPrimary(mono).doOnSuccess(result -> sessionPins.pin(session));
+            }
+            if (context.hasKey(QLRoutingConnectionFactory.ROUTE_KEY) || sessionPins.isPinned(session)) {
+                return onPrimary(mono);
+            }
+            int replica = balancer.acquire();
+            return mono.contextWrite(ctx -> ctx.put(QLRoutingConnectionFactory.ROUTE_KEY, replica))
+                       .doFinally(signal -> balancer.release(replica));
+        });
+    }
+
+    public <T> Flux<T> routeQuery(Flux<T> flux) {
+        if (!enabled) {
+            return flux;
+        }
+        return Flux.deferContextual(context -> {
+            String session = context.<String>getOrEmpty(SESSION_KEY).orElse(null);
+            if (context.hasKey(QLRoutingConnectionFactory.ROUTE_KEY) || sessionPins.isPinned(session)) {
+                return onPrimary(flux);
+            }
+            int replica = balancer.acquire();
+            return flux.contextWrite(ctx -> ctx.put(QLRoutingConnectionFactory.ROUTE_KEY, replica))
+                       .doFinally(signal -> balancer.release(replica));
+        });
+    }
+
+    /**
+     * @return true when the statements of the subscriber go to the primary database
+     * while the queries are sent to the replicas
+     */
+    public boolean isOnPrimary(ContextView context) {
+        return enabled && QLRoutingConnectionFactory.PRIMARY.equals(context.getOrEmpty(QLRoutingConnectionFactory.ROUTE_KEY).orElse(null));
+    }
+
+    /**
+     * Run on the primary database, unless a route is written already.
+     */
+    public <T> Mono<T> onPrimary(Mono<T> mono) {
+        return mono.contextWrite(context -> context.hasKey(QLRoutingConnectionFactory.ROUTE_KEY)
+                ? context : context.put(QLRoutingConnectionFactory.ROUTE_KEY, QLRoutingConnectionFactory.PRIMARY));
+    }
+
+    public <T> Flux<T> onPrimary(Flux<T> flux) {
+        return flux.contextWrite(context -> context.hasKey(QLRoutingConnectionFactory.ROUTE_KEY)
+                ? context : context.put(QLRoutingConnectionFactory.ROUTE_KEY, QLRoutingConnectionFactory.PRIMARY));
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ *    Copyright 2022 Forb Yuan
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ *
+ */
+
+package win.doyto.query.language.webflux;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.r2dbc.connection.lookup.AbstractRoutingConnectionFactory;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * QLRoutingConnectionFactory
+ * <p>
+ * Route a connection to the primary database or a replica
+ * by the route written to the subscriber context.
+ *
+ * @author f0rb on 2022-05-01
+ */
+class QLRoutingConnectionFactory extends AbstractRoutingConnectionFactory implements DisposableBean {
+
+    static final String PRIMARY = "primary";
+    static final String ROUTE_KEY = QLRoutingConnectionFactory.class.getName() + ".route";
+
+    private Collection<?> targetConnectionFactories = List.of();
+
+    @Override
+    public void setTargetConnectionFactories(Map<?, ?> targetConnectionFactories) {
+        super.setTargetConnectionFactories(targetConnectionFactories);
+        this.targetConnectionFactories = targetConnectionFactories.values();
+    }
+
+    @Override
+    protected Mono<Object> determineCurrentLookupKey() {
+        return Mono.deferContextual(context -> Mono.justOrEmpty(context.getOrEmpty(ROUTE_KEY)));
+    }
+
+    @Override
+    public void destroy() {
+        dispose(targetConnectionFactories);
+    }
+
+    /**
+     * Close the connection pools, which are not managed by Spring as beans.
+     */
+    static void dispose(Collection<?> connectionFactories) {
+        for (Object connectionFactory : connectionFactories) {
+            if (connectionFactory instanceof Disposable disposable) {
+                disposable.dispose();
+            }
+        }
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ *    Copyright 2022 Forb Yuan
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ *
+ */
+
+package win.doyto.query.language.webflux;
+
+import io.r2dbc.spi.ConnectionFactory;
+import org.reactivestreams.Publisher;
+import org.springframework.beans.factory.DisposableBean;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import win.doyto.query.config.GlobalConfiguration;
+import win.doyto.query.core.PageQuery;
+import win.doyto.query.language.doytoql.*;
+import win.doyto.query.r2dbc.R2dbcOperations;
+import win.doyto.query.r2dbc.R2dbcTemplate;
+import win.doyto.query.service.PageList;
+import win.doyto.query.sql.SeekPaging;
+import win.doyto.query.sql.SqlAndArgs;
+import win.doyto.query.web.response.ErrorCode;
+import win.doyto.query.web.response.ErrorCodeException;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntFunction;
+
+import static win.doyto.query.sql.QLBuilder.*;
+
+/**
+ * QLShardExecutor
+ * <p>
+ * Execute the requests of the sharded domains on the shard databases.
+ * Writes go to the shards routed by the shard key, while a query subscribes
+ * to the routed shards at the same time, and its page is merged by <code>page.sort</code>
+ * with at most <code>pageSize</code> rows prefetched from a shard. The merged rows are also
+ * emitted as they come for <code>DoytoQL/stream</code>. A write across shards is not atomic.
+ *
+ * @author f0rb on 2022-04-30
+ */
+public class QLShardExecutor implements DisposableBean {
+
+    private final QLShardRouter shardRouter;
+    private final List<ConnectionFactory> connectionFactories;
+    private final List<R2dbcOperations> shardOperations;
+    private final List<R2dbcBatchOperations> shardBatchOperations;
+    private final QLProperties qlProperties;
+
+    public QLShardExecutor(List<ConnectionFactory> connectionFactories, QLProperties qlProperties) {
+        this.shardRouter = new QLShardRouter(qlProperties.getShardKeys(), connectionFactories.size());
+        this.connectionFactories = connectionFactories;
+        this.shardOperations = connectionFactories.stream().<R2dbcOperations>map(R2dbcTemplate::new).toList();
+        this.shardBatchOperations = connectionFactories.stream().map(R2dbcBatchOperations::new).toList();
+        this.qlProperties = qlProperties;
+    }
+
+    public boolean isSharded(String domain) {
+        return shardRouter.isSharded(domain);
+    }
+
+    public Mono<?> execute(DoytoQLRequest request) {
+        return switch (request.getOperation()) {
+            case "delete" -> sum(shardRouter.route(request), shard -> shardOperations.get(shard).update(buildDeleteSql(request)));
+            case "insert" -> Flux.fromIterable(shardRouter.splitData(request).entrySet())
+                                 .flatMap(entry -> shardBatchOperations.get(entry.getKey()).batchUpdate(
+                                         buildInsertBatchSql(entry.getValue()), qlProperties.getInsertBatchSize()))
+                                 .reduce(0, Integer::sum);
+            case "upsert" -> Flux.fromIterable(shardRouter.splitData(request).entrySet())
+                                 .flatMap(entry -> Flux.fromIterable(buildUpsertSqls(entry.getValue(), qlProperties.getInsertBatchSize()))
+                                                       .concatMap(shardOperations.get(entry.getKey())::update))
+                                 .reduce(0, Integer::sum);
+            case "update" -> {
+                // the rows of an update by keys are not split by the shard key
+                ErrorCode.assertFalse(isUpdateByKeys(request), QLErrorCode.OPERATION_NOT_SUPPORTED);
+                yield sum(shardRouter.route(request), shard -> shardOperations.get(shard).update(buildUpdateSql(request)));
+            }
+            case "query" -> query(request);
+            default -> throw new ErrorCodeException(QLErrorCode.OPERATION_NOT_SUPPORTED);
+        };
+    }
+
+    private static Mono<Integer> sum(int[] shards, IntFunction<Mono<Integer>> update) {
+        return Flux.fromStream(Arrays.stream(shards).boxed()).flatMap(update::apply).reduce(0, Integer::sum);
+    }
+
+    /**
+     * Emit the merged rows of a query in the order of <code>page.sort</code>.
+     */
+    public Flux<Map<String, Object>> stream(DoytoQLRequest request) {
+        Flux<Map<String, Object>> merged = mergeQuery(request, shardRouter.route(request));
+        List<String> appendedKeys = appendedSortKeys(request, String::toLowerCase);
+        return merged.map(row -> dropKeys(row, appendedKeys));
+    }
+
+    private static Map<String, Object> dropKeys(Map<String, Object> row, List<String> keys) {
+        keys.forEach(row::remove);
+        return row;
+    }
+
+    private Mono<?> query(DoytoQLRequest request) {
+        PageQuery pageQuery = request.getPage();
+        int[] shards = shardRouter.route(request);
+        Mono<List<Map<String, Object>>> listMono = mergeQuery(request, shards).collectList();
+        // the sort columns are only selected to compare the rows
+        List<String> appendedKeys = appendedSortKeys(request, String::toLowerCase);
+        if (request.getCursor() != null) {
+            return listMono.map(list -> {
+                String cursor = SeekPaging.nextCursor(pageQuery, list, String::toLowerCase);
+                list.forEach(row -> dropKeys(row, appendedKeys));
+                return new CursorPageList<>(list, cursor);
+            });
+        }
+        listMono = listMono.doOnNext(list -> list.forEach(row -> dropKeys(row, appendedKeys)));
+        if (QLCountMode.resolve(request.getCount()) == QLCountMode.NONE) {
+            return listMono.map(list -> new PageList<>(list, QLTotalHelper.UNKNOWN_TOTAL));
+        }
+        return listMono.flatMap(list -> {
+            long total = QLTotalHelper.totalOfShortPage(pageQuery, list.size());
+            if (total != QLTotalHelper.UNKNOWN_TOTAL) {
+                return Mono.just(new PageList<>(list, total));
+            }
+            SqlAndArgs sqlAndArgs = buildCountSql(request);
+            return Flux.fromStream(Arrays.stream(shards).boxed())
+                       .flatMap(shard -> shardOperations.get(shard).count(sqlAndArgs))
+                       .reduce(0L, Long::sum)
+                       .map(sum -> new PageList<>(list, sum));
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private Flux<Map<String, Object>> mergeQuery(DoytoQLRequest request, int[] shards) {
+        PageQuery pageQuery = request.getPage();
+        boolean paging = request.getCursor() != null || (pageQuery != null && pageQuery.needPaging());
+        long offset = paging && request.getCursor() == null ? GlobalConfiguration.calcOffset(pageQuery) : 0;
+        int prefetch = paging ? pageQuery.getPageSize() : qlProperties.getStreamFetchSize();
+        SqlAndArgs sqlAndArgs = buildShardQuerySql(request);
+
+        Comparator<Map<String, Object>> rowComparator = request.getCursor() != null
+                ? SeekPaging.seekComparator(pageQuery, String::toLowerCase) : SeekPaging.comparator(pageQuery, String::toLowerCase);
+        Publisher<Map<String, Object>>[] sources = Arrays
+                .stream(shards)
+                .mapToObj(shard -> shardOperations.get(shard).query(sqlAndArgs, new MapRowMapper()))
+                .toArray(Publisher[]::new);
+        Flux<Map<String, Object>> merged = Flux.mergeComparing(prefetch, rowComparator, sources).skip(offset);
+        return paging ? merged.take(pageQuery.getPageSize()) : merged;
+    }
+
+    @Override
+    public void destroy() {
+        QLRoutingConnectionFactory.dispose(connectionFactories);
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ *    Copyright 2022 Forb Yuan
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ *
+ */
+
+package win.doyto.query.language.webflux;
+
+import lombok.extern.slf4j.Slf4j;
+import win.doyto.query.language.doytoql.QLSlowQueryLog;
+import win.doyto.query.r2dbc.R2dbcOperations;
+import win.doyto.query.sql.SqlAndArgs;
+
+import java.util.Arrays;
+import java.util.StringJoiner;
+
+/**
+ * QLSlowQueryExplainer
+ * <p>
+ * Run EXPLAIN for a slow query in the background,
+ * so that the request does not wait for the plan.
+ *
+ * @author f0rb on 2022-05-04
+ */
+@Slf4j
+public class QLSlowQueryExplainer {
+
+    private final R2dbcOperations r2dbcOperations;
+    private final QLSlowQueryLog slowQueryLog;
+
+    public QLSlowQueryExplainer(R2dbcOperations r2dbcOperations, QLSlowQueryLog slowQueryLog) {
+        this.r2dbcOperations = r2dbcOperations;
+        this.slowQueryLog = slowQueryLog;
+    }
+
+    public void explain(SqlAndArgs sqlAndArgs) {
+        String explainSql = QLSlowQueryLog.explainSqlOf(sqlAndArgs.getSql());
+        SqlAndArgs explainSqlAndArgs = SqlAndArgs.buildSqlWithArgs(args -> {
+            args.addAll(Arrays.asList(sqlAndArgs.getArgs()));
+            return explainSql;
+        });
+        r2dbcOperations
+                .query(explainSqlAndArgs, (row, rn) -> {
+                    StringJoiner line = new StringJoiner(" | ");
+                    for (int i = 0, count = row.getMetadata().getColumnMetadatas().size(); i < count; i++) {
+                        line.add(String.valueOf(row.get(i)));
+                    }
+                    return line.toString();
+                })
+                .collectList()
+                .subscribe(lines -> slowQueryLog.recordPlan(sqlAndArgs, String.join("\n", lines)),
+                           e -> log.warn("Failed to explain: {}", explainSql, e));
+    }
+}
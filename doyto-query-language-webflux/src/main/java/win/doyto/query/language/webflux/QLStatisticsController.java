@@ -0,0 +1,61 @@
+/*
+ *    Copyright 2022 Forb Yuan
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ *
+ */
+
+package win.doyto.query.language.webflux;
+
+import lombok.AllArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import win.doyto.query.language.doytoql.QLResultCache;
+import win.doyto.query.language.doytoql.QLSlowQueryLog;
+import win.doyto.query.sql.SqlTemplateCache;
+import win.doyto.query.web.response.JsonBody;
+
+import java.util.List;
+
+/**
+ * QLStatisticsController
+ *
+ * @author f0rb on 2022-04-25
+ */
+@JsonBody
+@RestController
+@AllArgsConstructor
+@ConditionalOnProperty("doytoql.admin-endpoints")
+public class QLStatisticsController {
+
+    private SqlTemplateCache sqlTemplateCache;
+    private QLResultCache qlResultCache;
+    private QLSlowQueryLog qlSlowQueryLog;
+
+    @GetMapping("DoytoQL/statistics/statements")
+    public SqlTemplateCache.Statistics statements(@RequestParam(defaultValue = "20") int top) {
+        return sqlTemplateCache.getStatistics(top);
+    }
+
+    @GetMapping("DoytoQL/statistics/results")
+    public QLResultCache.Statistics results() {
+        return qlResultCache.getStatistics();
+    }
+
+    @GetMapping("DoytoQL/statistics/slow")
+    public List<QLSlowQueryLog.SlowStatement> slow(@RequestParam(defaultValue = "20") int top) {
+        return qlSlowQueryLog.getSlowStatements(top);
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ *    Copyright 2022 Forb Yuan
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ *
+ */
+
+package win.doyto.query.language.webflux;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.AllArgsConstructor;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import win.doyto.query.language.doytoql.DoytoQLRequest;
+import win.doyto.query.language.doytoql.QLArrowWriter;
+import win.doyto.query.language.doytoql.QLCostGuard;
+import win.doyto.query.language.doytoql.QLErrorCode;
+import win.doyto.query.language.doytoql.QLLimiter;
+import win.doyto.query.language.doytoql.QLMetrics;
+import win.doyto.query.language.doytoql.QLProperties;
+import win.doyto.query.language.doytoql.QLSlowQueryLog;
+import win.doyto.query.r2dbc.R2dbcOperations;
+import win.doyto.query.sql.SqlAndArgs;
+import win.doyto.query.web.response.ErrorCode;
+import win.doyto.query.web.response.ErrorCodeException;
+
+import java.time.Duration;
+import javax.validation.Valid;
+
+import static win.doyto.query.sql.QLBuilder.buildAggregateSql;
+import static win.doyto.query.sql.QLBuilder.buildQuerySql;
+
+/**
+ * QLStreamController
+ * <p>
+ * Emit the rows of a query as NDJSON, and request the rows from
+ * database in batches of <code>doytoql.stream-fetch-size</code>
+ * as the client consumes them. Each row is encoded to JSON
+ * straight from the Row without being mapped first, except for
+ * the sharded domains, whose rows are merged from the shards.
+ * The rows of <code>DoytoQL</code> are emitted as an Arrow stream
+ * when the client accepts <code>application/vnd.apache.arrow.stream</code>.
+ *
+ * @author f0rb on 2022-04-22
+ */
+@RestController
+@AllArgsConstructor
+public class QLStreamController {
+
+    private R2dbcOperations r2dbcOperations;
+    private ObjectMapper objectMapper;
+    private QLProperties qlProperties;
+    private QLReadWriteRouter readWriteRouter;
+    private QLLimiter limiter;
+    private QLCostGuard costGuard;
+    private QLShardExecutor shardExecutor;
+    private QLMetrics metrics;
+    private QLSlowQueryLog slowQueryLog;
+    private QLSlowQueryExplainer slowQueryExplainer;
+
+    @PostMapping(value = "DoytoQL/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<DataBuffer> stream(@RequestBody @Valid DoytoQLRequest request) {
+        ErrorCode.assertTrue("query".equals(request.getOperation()), QLErrorCode.OPERATION_NOT_SUPPORTED);
+        String domain = request.getDomain();
+        Duration timeout = limiter.timeoutOf(request);
+        return Flux.defer(() -> {
+            // a stream is neither paged nor counted, so it is only rejected by its cost
+            costGuard.check(request);
+            JsonRowMapper rowMapper = new JsonRowMapper(objectMapper);
+            Flux<DataBuffer> rows = shardExecutor.isSharded(domain)
+                    ? shardExecutor.stream(request).map(rowMapper::map)
+                    : readWriteRouter.routeQuery(r2dbcOperations.query(buildQuerySql(request), rowMapper)
+                                                                .limitRate(qlProperties.getStreamFetchSize()));
+            limiter.tryAcquire(domain);
+            if (!timeout.isZero()) {
+                // bound the time to the first row only, since the client paces the rest
+                rows = rows.timeout(Mono.delay(timeout), row -> Mono.never(),
+                                    Flux.error(() -> new ErrorCodeException(QLErrorCode.QUERY_TIMEOUT)));
+            }
+            return rows.doFinally(signal -> limiter.release(domain));
+        });
+    }
+
+    /**
+     * Emit the rows of a query or an aggregate on <code>DoytoQL</code> as an Arrow stream,
+     * in record batches of <code>doytoql.arrow-batch-size</code> rows, without the total.
+     * The sharded domains are not supported, since their rows are merged as maps.
+     */
+    @PostMapping(value = "DoytoQL", produces = QLArrowWriter.ARROW_STREAM_VALUE)
+    public Flux<DataBuffer> arrow(@RequestBody @Valid DoytoQLRequest request) {
+        boolean aggregate = "aggregate".equals(request.getOperation());
+        ErrorCode.assertTrue(aggregate || "query".equals(request.getOperation()), QLErrorCode.OPERATION_NOT_SUPPORTED);
+        String domain = request.getDomain();
+        ErrorCode.assertFalse(shardExecutor.isSharded(domain), QLErrorCode.OPERATION_NOT_SUPPORTED);
+        Duration timeout = limiter.timeoutOf(request);
+        return Flux.defer(() -> {
+            costGuard.guard(request);
+            SqlAndArgs sqlAndArgs = metrics.time(QLMetrics.Stage.BUILD, request,
+                                                 () -> aggregate ? buildAggregateSql(request) : buildQuerySql(request));
+            metrics.recordSql(request, sqlAndArgs);
+            limiter.tryAcquire(domain);
+            long start = System.nanoTime();
+            // the time of execution includes the time of writing recorded separately
+            ArrowRowMapper rowMapper = new ArrowRowMapper(qlProperties.getArrowBatchSize(), metrics.isEnabled());
+            Flux<DataBuffer> batches = readWriteRouter.routeQuery(r2dbcOperations
+                    .query(sqlAndArgs, rowMapper)
+                    .limitRate(qlProperties.getStreamFetchSize()))
+                    .filter(dataBuffer -> dataBuffer.readableByteCount() > 0)
+                    .concatWith(Mono.fromSupplier(rowMapper::end));
+            if (!timeout.isZero()) {
+                batches = batches.timeout(timeout, Flux.error(() -> new ErrorCodeException(QLErrorCode.QUERY_TIMEOUT)));
+            }
+            return batches
+                    .doOnComplete(() -> record(request, rowMapper, QLMetrics.SUCCESS, start))
+                    .doOnError(e -> record(request, rowMapper, QLMetrics.outcomeOf(e), start))
+                    .doFinally(signal -> {
+                        rowMapper.close();
+                        limiter.release(domain);
+                        if (slowQueryLog.record(request, sqlAndArgs, System.nanoTime() - start)) {
+                            slowQueryExplainer.explain(sqlAndArgs);
+                        }
+                    });
+        });
+    }
+
+    private void record(DoytoQLRequest request, ArrowRowMapper rowMapper, String outcome, long start) {
+        metrics.record(QLMetrics.Stage.EXECUTE, request, outcome, start);
+        metrics.recordNanos(QLMetrics.Stage.SERIALIZE, request, outcome, rowMapper.getWritingNanos());
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ *    Copyright 2022 Forb Yuan
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ *
+ */
+
+package win.doyto.query.language.webflux;
+
+import io.r2dbc.spi.Connection;
+import io.r2dbc.spi.ConnectionFactory;
+import io.r2dbc.spi.Result;
+import io.r2dbc.spi.Statement;
+import lombok.AllArgsConstructor;
+import org.springframework.r2dbc.connection.ConnectionFactoryUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import win.doyto.query.sql.BatchSqlAndArgs;
+
+import java.util.List;
+
+/**
+ * R2dbcBatchOperations
+ * <p>
+ * Execute one statement for many rows by {@link Statement#add()},
+ * on the connection bound to the current transaction if any.
+ * A null is bound by the type of the values of its column in the other rows,
+ * and by String when the column is null in all rows.
+ *
+ * @author f0rb on 2022-04-24
+ */
+@AllArgsConstructor
+public class R2dbcBatchOperations {
+
+    private final ConnectionFactory connectionFactory;
+
+    public Mono<Integer> batchUpdate(BatchSqlAndArgs batchSqlAndArgs, int batchSize) {
+        Class<?>[] nullTypes = resolveNullTypes(batchSqlAndArgs.getBatchArgs());
+        return Flux.usingWhen(
+                ConnectionFactoryUtils.getConnection(connectionFactory),
+                connection -> Flux.fromIterable(batchSqlAndArgs.getBatchArgs())
+                                  .buffer(batchSize)
+                                  .concatMap(chunk -> execute(connection, batchSqlAndArgs.getSql(), chunk, nullTypes)),
+                connection -> ConnectionFactoryUtils.releaseConnection(connection, connectionFactory)
+        ).reduce(0, Integer::sum);
+    }
+
+    static Class<?>[] resolveNullTypes(List<Object[]> batchArgs) {
+        int columnCount = batchArgs.isEmpty() ? 0 : batchArgs.get(0).length;
+        Class<?>[] nullTypes = new Class<?>[columnCount];
+        int resolved = 0;
+        for (Object[] args : batchArgs) {
+            for (int j = 0; j < columnCount; j++) {
+                if (nullTypes[j] == null && args[j] != null) {
+                    nullTypes[j] = args[j].getClass();
+                    resolved++;
+                }
+            }
+            if (resolved == columnCount) {
+                return nullTypes;
+            }
+        }
+        for (int j = 0; j < columnCount; j++) {
+            if (nullTypes[j] == null) {
+                nullTypes[j] = String.class;
+            }
+        }
+        return nullTypes;
+    }
+
+    private static Flux<Integer> execute(Connection connection, String sql, List<Object[]> chunk, Class<?>[] nullTypes) {
+        Statement statement = connection.createStatement(sql);
+        for (int i = 0; i < chunk.size(); i++) {
+            if (i > 0) {
+                statement.add();
+            }
+            Object[] args = chunk.get(i);
+            for (int j = 0; j < args.length; j++) {
+                if (args[j] == null) {
+                    statement.bindNull(j, nullTypes[j]);
+                } else {
+                    statement.bind(j, args[j]);
+                }
+            }
+        }
+        return Flux.from(statement.execute()).concatMap(Result::getRowsUpdated);
+    }
+}
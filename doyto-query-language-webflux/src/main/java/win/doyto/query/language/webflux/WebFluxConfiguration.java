@@ -17,13 +17,43 @@
 
 package win.doyto.query.language.webflux;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.r2dbc.spi.ConnectionFactories;
 import io.r2dbc.spi.ConnectionFactory;
+import io.r2dbc.spi.ConnectionFactoryOptions;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.r2dbc.R2dbcProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.web.codec.CodecCustomizer;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.codec.cbor.Jackson2CborDecoder;
+import org.springframework.http.codec.json.Jackson2SmileDecoder;
+import org.springframework.http.codec.json.Jackson2SmileEncoder;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
 import org.springframework.transaction.annotation.EnableTransactionManagement;
+import org.springframework.web.server.WebFilter;
+import win.doyto.query.language.doytoql.QLCostGuard;
+import win.doyto.query.language.doytoql.QLLimiter;
+import win.doyto.query.language.doytoql.QLMetrics;
+import win.doyto.query.language.doytoql.QLProperties;
+import win.doyto.query.language.doytoql.QLResultCache;
+import win.doyto.query.language.doytoql.QLSlowQueryLog;
 import win.doyto.query.r2dbc.R2dbcOperations;
 import win.doyto.query.r2dbc.R2dbcTemplate;
 import win.doyto.query.reactive.webflux.config.WebFluxConfigurerAdapter;
+import win.doyto.query.sql.ColumnRegistry;
+import win.doyto.query.sql.QLBuilder;
+import win.doyto.query.sql.SqlTemplateCache;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * WebFluxConfiguration
@@ -39,4 +69,144 @@ public class WebFluxConfiguration extends WebFluxConfigurerAdapter {
         return new R2dbcTemplate(connectionFactory);
     }
 
+    @Bean
+    public R2dbcBatchOperations r2dbcBatchOperations(ConnectionFactory connectionFactory) {
+        return new R2dbcBatchOperations(connectionFactory);
+    }
+
+    @Bean
+    @ConfigurationProperties("doytoql")
+    public QLProperties qlProperties() {
+        return new QLProperties();
+    }
+
+    @Bean
+    public SqlTemplateCache sqlTemplateCache(QLProperties qlProperties) {
+        SqlTemplateCache templateCache = QLBuilder.getTemplateCache();
+        templateCache.setMaximumSize(qlProperties.getTemplateCacheSize());
+        QLBuilder.setInListPadding(qlProperties.isInListPadding());
+        return templateCache;
+    }
+
+    @Bean
+    public ColumnRegistry columnRegistry(QLProperties qlProperties) {
+        ColumnRegistry columnRegistry = QLBuilder.getColumnRegistry();
+        columnRegistry.setDefaultColumns(qlProperties.getDefaultColumns());
+        return columnRegistry;
+    }
+
+    @Bean
+    public QLColumnLoader qlColumnLoader(R2dbcOperations r2dbcOperations, ColumnRegistry columnRegistry,
+                                         SqlTemplateCache sqlTemplateCache, QLProperties qlProperties) {
+        return new QLColumnLoader(r2dbcOperations, columnRegistry, sqlTemplateCache, qlProperties.isColumnWhitelist());
+    }
+
+    @Bean
+    public QLShardExecutor qlShardExecutor(QLProperties qlProperties) {
+        List<ConnectionFactory> connectionFactories = qlProperties
+                .getShards().stream()
+                .map(shard -> buildConnectionFactory(shard.getUrl(), shard.getUsername(), shard.getPassword()))
+                .toList();
+        return new QLShardExecutor(connectionFactories, qlProperties);
+    }
+
+    @Bean
+    @ConditionalOnProperty("doytoql.replicas[0].url")
+    public ConnectionFactory connectionFactory(R2dbcProperties r2dbcProperties, QLProperties qlProperties) {
+        Map<Object, Object> targetConnectionFactories = new HashMap<>();
+        ConnectionFactory primary = buildConnectionFactory(
+                r2dbcProperties.getUrl(), r2dbcProperties.getUsername(), r2dbcProperties.getPassword());
+        targetConnectionFactories.put(QLRoutingConnectionFactory.PRIMARY, primary);
+        List<QLProperties.DatabaseProperties> replicas = qlProperties.getReplicas();
+        for (int i = 0; i < replicas.size(); i++) {
+            QLProperties.DatabaseProperties replica = replicas.get(i);
+            targetConnectionFactories.put(i, buildConnectionFactory(replica.getUrl(), replica.getUsername(), replica.getPassword()));
+        }
+        QLRoutingConnectionFactory routingConnectionFactory = new QLRoutingConnectionFactory();
+        routingConnectionFactory.setTargetConnectionFactories(targetConnectionFactories);
+        routingConnectionFactory.setDefaultTargetConnectionFactory(primary);
+        routingConnectionFactory.afterPropertiesSet();
+        return routingConnectionFactory;
+    }
+
+    @Bean
+    public QLReadWriteRouter qlReadWriteRouter(QLProperties qlProperties) {
+        return new QLReadWriteRouter(qlProperties);
+    }
+
+    private static ConnectionFactory buildConnectionFactory(String url, String username, String password) {
+        ConnectionFactoryOptions.Builder builder = ConnectionFactoryOptions.parse(url).mutate();
+        if (username != null) {
+            builder.option(ConnectionFactoryOptions.USER, username);
+        }
+        if (password != null) {
+            builder.option(ConnectionFactoryOptions.PASSWORD, password);
+        }
+        return ConnectionFactories.get(builder.build());
+    }
+
+    @Bean
+    public QLLimiter qlLimiter(QLProperties qlProperties, ColumnRegistry columnRegistry) {
+        return QLLimiter.of(qlProperties, columnRegistry);
+    }
+
+    @Bean
+    public QLCostGuard qlCostGuard(QLProperties qlProperties) {
+        return QLCostGuard.of(qlProperties);
+    }
+
+    @Bean
+    public QLMetrics qlMetrics(QLProperties qlProperties, ObjectProvider<MeterRegistry> meterRegistry) {
+        if (!qlProperties.isMetricsEnabled()) {
+            return QLMetrics.NOOP;
+        }
+        return new QLMetrics(meterRegistry.getIfAvailable(() -> Metrics.globalRegistry));
+    }
+
+    @Bean
+    @ConditionalOnProperty("doytoql.metrics-enabled")
+    public CodecCustomizer qlMetricsCodecCustomizer(ObjectMapper objectMapper, QLMetrics qlMetrics) {
+        return configurer -> {
+            configurer.defaultCodecs().jackson2JsonDecoder(new QLMetricsJsonDecoder(objectMapper, qlMetrics));
+            configurer.defaultCodecs().jackson2JsonEncoder(new QLMetricsJsonEncoder(objectMapper, qlMetrics));
+        };
+    }
+
+    /**
+     * Read and write the requests and responses in Smile and CBOR by content negotiation,
+     * with the settings of the ObjectMapper of Spring Boot.
+     */
+    @Bean
+    public CodecCustomizer qlBinaryCodecCustomizer(Jackson2ObjectMapperBuilder builder) {
+        ObjectMapper smileMapper = builder.factory(new SmileFactory()).build();
+        ObjectMapper cborMapper = builder.factory(new CBORFactory()).build();
+        return configurer -> {
+            configurer.defaultCodecs().jackson2SmileDecoder(new Jackson2SmileDecoder(smileMapper));
+            configurer.defaultCodecs().jackson2SmileEncoder(new Jackson2SmileEncoder(smileMapper));
+            configurer.customCodecs().register(new Jackson2CborDecoder(cborMapper));
+            configurer.customCodecs().register(new QLCborEncoder(cborMapper));
+        };
+    }
+
+    @Bean
+    @ConditionalOnProperty("doytoql.metrics-enabled")
+    public WebFilter qlMetricsWebFilter() {
+        return new QLMetricsWebFilter();
+    }
+
+    @Bean
+    public QLSlowQueryLog qlSlowQueryLog(QLProperties qlProperties) {
+        return QLSlowQueryLog.of(qlProperties);
+    }
+
+    @Bean
+    public QLSlowQueryExplainer qlSlowQueryExplainer(R2dbcOperations r2dbcOperations, QLSlowQueryLog qlSlowQueryLog) {
+        return new QLSlowQueryExplainer(r2dbcOperations, qlSlowQueryLog);
+    }
+
+    @Bean
+    public QLResultCache qlResultCache(QLProperties qlProperties) {
+        return QLResultCache.of(qlProperties);
+    }
+
 }
@@ -0,0 +1,96 @@
+/*
+ *    Copyright 2022 Forb Yuan
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ *
+ */
+
+package win.doyto.query.language.webflux;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import org.springframework.web.reactive.function.BodyInserters;
+import win.doyto.query.language.doytoql.DoytoQLRequest;
+import win.doyto.query.language.test.TestUtil;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * QLBatchControllerTest
+ *
+ * @author f0rb on 2022-04-23
+ */
+@SuppressWarnings("java:S2699")
+class QLBatchControllerTest extends DoytoQLApplicationTest {
+
+    private WebTestClient.BodyContentSpec postBatch(String uri, List<DoytoQLRequest> requests) {
+        return webTestClient.post().uri(uri)
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .body(BodyInserters.fromValue(requests))
+                            .exchange()
+                            .expectStatus().isOk()
+                            .expectBody();
+    }
+
+    private static DoytoQLRequest buildQueryRequest(Object id) {
+        DoytoQLRequest doytoQLRequest = new DoytoQLRequest();
+        doytoQLRequest.setOperation("query");
+        doytoQLRequest.setDomain(DOMAIN_USER);
+        LinkedHashMap<String, Object> filters = new LinkedHashMap<>();
+        filters.put("id", id);
+        doytoQLRequest.setFilters(filters);
+        return doytoQLRequest;
+    }
+
+    @Test
+    void shouldQueryInParallelAndKeepOrder() {
+        postBatch("/DoytoQL/batch", List.of(buildQueryRequest(3), buildQueryRequest(1), buildQueryRequest(2)))
+                .jsonPath("$.success").isEqualTo(true)
+                .jsonPath("$.data.size()").isEqualTo(3)
+                .jsonPath("$.data[0].list[0].id").isEqualTo(3)
+                .jsonPath("$.data[1].list[0].id").isEqualTo(1)
+                .jsonPath("$.data[2].list[0].id").isEqualTo(2);
+    }
+
+    @Test
+    void shouldExecuteWritesInOrder() {
+        DoytoQLRequest insertRequest = new DoytoQLRequest();
+        insertRequest.setOperation("insert");
+        insertRequest.setDomain(DOMAIN_USER);
+        insertRequest.setData(List.of(TestUtil.buildEntity("6")));
+
+        postBatch("/DoytoQL/batch?transactional=true", List.of(insertRequest, buildQueryRequest(6)))
+                .jsonPath("$.success").isEqualTo(true)
+                .jsonPath("$.data[0]").isEqualTo(1)
+                .jsonPath("$.data[1].list[0].username").isEqualTo("user6");
+    }
+
+    @Test
+    void shouldRollbackWholeBatchInTransaction() {
+        DoytoQLRequest insertRequest = new DoytoQLRequest();
+        insertRequest.setOperation("insert");
+        insertRequest.setDomain(DOMAIN_USER);
+        insertRequest.setData(List.of(TestUtil.buildEntity("6")));
+        DoytoQLRequest duplicateRequest = new DoytoQLRequest();
+        duplicateRequest.setOperation("insert");
+        duplicateRequest.setDomain(DOMAIN_USER);
+        duplicateRequest.setData(List.of(TestUtil.buildEntity("5")));
+
+        postBatch("/DoytoQL/batch?transactional=true", List.of(insertRequest, duplicateRequest))
+                .jsonPath("$.success").isEqualTo(false);
+        postAndSuccess(buildQueryRequest(6))
+                .jsonPath("$.data.total").isEqualTo(0);
+    }
+}
@@ -18,16 +18,22 @@
 package win.doyto.query.language.webflux;
 
 import org.junit.jupiter.api.Test;
+import win.doyto.query.config.Dialect;
+import win.doyto.query.config.GlobalConfiguration;
+import win.doyto.query.config.SimpleDialect;
 import win.doyto.query.core.PageQuery;
 import win.doyto.query.language.doytoql.DoytoQLRequest;
 import win.doyto.query.language.doytoql.QLErrorCode;
 import win.doyto.query.language.test.TestUtil;
+import win.doyto.query.sql.QLBuilder;
+import win.doyto.query.sql.SeekPaging;
 import win.doyto.query.web.response.PresetErrorCode;
 
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.hamcrest.Matchers.containsInRelativeOrder;
 
 /**
@@ -67,6 +73,112 @@ class QLControllerTest extends DoytoQLApplicationTest {
         ;
     }
 
+    @Test
+    void shouldSupportWindowCount() {
+        DoytoQLRequest doytoQLRequest = new DoytoQLRequest();
+        doytoQLRequest.setOperation("query");
+        doytoQLRequest.setDomain(DOMAIN_USER);
+        doytoQLRequest.setCount("window");
+        doytoQLRequest.setPage(PageQuery.builder().pageNumber(2).pageSize(2).build());
+
+        postAndSuccess(doytoQLRequest)
+                .jsonPath("$.data.total").isEqualTo(5)
+                .jsonPath("$.data.list.size()").isEqualTo(2)
+                .jsonPath("$.data.list[0].doytoqltotal").doesNotExist()
+        ;
+    }
+
+    @Test
+    void shouldSkipCountWhenCountIsFalse() {
+        DoytoQLRequest doytoQLRequest = new DoytoQLRequest();
+        doytoQLRequest.setOperation("query");
+        doytoQLRequest.setDomain(DOMAIN_USER);
+        doytoQLRequest.setCount("false");
+        doytoQLRequest.setPage(PageQuery.builder().pageNumber(1).pageSize(2).build());
+
+        postAndSuccess(doytoQLRequest)
+                .jsonPath("$.data.total").isEqualTo(-1)
+                .jsonPath("$.data.list.size()").isEqualTo(2)
+        ;
+    }
+
+    @Test
+    void shouldTellTotalFromShortPage() {
+        DoytoQLRequest doytoQLRequest = new DoytoQLRequest();
+        doytoQLRequest.setOperation("query");
+        doytoQLRequest.setDomain(DOMAIN_USER);
+        doytoQLRequest.setPage(PageQuery.builder().pageNumber(2).pageSize(3).build());
+
+        postAndSuccess(doytoQLRequest)
+                .jsonPath("$.data.total").isEqualTo(5)
+                .jsonPath("$.data.list.size()").isEqualTo(2)
+        ;
+    }
+
+    @Test
+    void shouldSupportSeekPaging() {
+        DoytoQLRequest doytoQLRequest = new DoytoQLRequest();
+        doytoQLRequest.setOperation("query");
+        doytoQLRequest.setDomain(DOMAIN_USER);
+        doytoQLRequest.setColumns(List.of("username"));
+        doytoQLRequest.setPage(PageQuery.builder().pageSize(3).sort("id,desc").build());
+        doytoQLRequest.setCursor("");
+
+        postAndSuccess(doytoQLRequest)
+                .jsonPath("$.data.list[*].username").value(containsInRelativeOrder("user5", "user4", "user3"))
+                .jsonPath("$.data.list[2].username").isEqualTo("user3")
+                .jsonPath("$.data.list[2].id").doesNotExist()
+                .jsonPath("$.data.cursor").isNotEmpty()
+        ;
+
+        doytoQLRequest.setCursor(SeekPaging.nextCursor(doytoQLRequest.getPage(),
+                List.of(Map.of("id", 5), Map.of("id", 4), Map.of("id", 3)), column -> column));
+        postAndSuccess(doytoQLRequest)
+                .jsonPath("$.data.list[*].username").value(containsInRelativeOrder("user2", "f0rb"))
+                .jsonPath("$.data.cursor").doesNotExist()
+        ;
+    }
+
+    @Test
+    void shouldSeekPastTiedSortValuesByPrimaryKey() {
+        DoytoQLRequest doytoQLRequest = new DoytoQLRequest();
+        doytoQLRequest.setOperation("query");
+        doytoQLRequest.setDomain(DOMAIN_USER);
+        doytoQLRequest.setColumns(List.of("username"));
+        doytoQLRequest.setPage(PageQuery.builder().pageSize(2).sort("valid,desc").build());
+        doytoQLRequest.setCursor(SeekPaging.nextCursor(doytoQLRequest.getPage(),
+                List.of(Map.of("valid", true, "id", 5), Map.of("valid", true, "id", 4)), column -> column));
+
+        postAndSuccess(doytoQLRequest)
+                .jsonPath("$.data.list[*].username").value(containsInRelativeOrder("user3", "user2"))
+                .jsonPath("$.data.list[0].valid").doesNotExist()
+                .jsonPath("$.data.cursor").isNotEmpty()
+        ;
+    }
+
+    @Test
+    void shouldFailWhenSeekByNullSortValues() {
+        DoytoQLRequest doytoQLRequest = new DoytoQLRequest();
+        doytoQLRequest.setOperation("query");
+        doytoQLRequest.setDomain(DOMAIN_USER);
+        doytoQLRequest.setPage(PageQuery.builder().pageSize(2).sort("create_time,asc").build());
+        doytoQLRequest.setCursor("");
+
+        postAndFail(doytoQLRequest)
+                .jsonPath("$.code").isEqualTo(QLErrorCode.CURSOR_SORT_SHOULD_NOT_BE_NULL.getCode());
+    }
+
+    @Test
+    void shouldProvideSupportedCountMode() {
+        DoytoQLRequest request = new DoytoQLRequest();
+        request.setOperation("query");
+        request.setDomain(DOMAIN_USER);
+        request.setCount("unknown");
+
+        postAndFail(request)
+                .jsonPath("$.code").isEqualTo(QLErrorCode.COUNT_MODE_NOT_SUPPORTED.getCode());
+    }
+
     @Test
     void shouldSupportOrderBy() {
         DoytoQLRequest doytoQLRequest = new DoytoQLRequest();
@@ -131,6 +243,77 @@ class QLControllerTest extends DoytoQLApplicationTest {
         postAndSuccess(doytoQLRequest).jsonPath("$.data").isEqualTo(2);
     }
 
+    @Test
+    void shouldInsertMultiWithNullInNonTextColumns() {
+        LinkedHashMap<String, Object> entity6 = TestUtil.buildEntity("6");
+        entity6.put("create_user_id", null);
+        LinkedHashMap<String, Object> entity7 = TestUtil.buildEntity("7");
+        entity7.put("create_user_id", 1);
+        DoytoQLRequest doytoQLRequest = new DoytoQLRequest();
+        doytoQLRequest.setOperation("insert");
+        doytoQLRequest.setDomain(DOMAIN_USER);
+        doytoQLRequest.setData(List.of(entity6, entity7));
+
+        assertThat(R2dbcBatchOperations.resolveNullTypes(QLBuilder.buildInsertBatchSql(doytoQLRequest).getBatchArgs()))
+                .endsWith(Boolean.class, Integer.class);
+        postAndSuccess(doytoQLRequest).jsonPath("$.data").isEqualTo(2);
+    }
+
+    @Test
+    void shouldUpsertByKeysOnH2() {
+        LinkedHashMap<String, Object> existing = TestUtil.buildEntity("1");
+        existing.put("username", "f0rb");
+        existing.put("nickname", "kitty");
+        DoytoQLRequest doytoQLRequest = new DoytoQLRequest();
+        doytoQLRequest.setOperation("upsert");
+        doytoQLRequest.setDomain(DOMAIN_USER);
+        doytoQLRequest.setKeys(List.of("username"));
+        doytoQLRequest.setData(List.of(existing, TestUtil.buildEntity("6")));
+
+        Dialect dialect = GlobalConfiguration.dialect();
+        GlobalConfiguration.instance().setDialect(new H2Dialect());
+        try {
+            postAndSuccess(doytoQLRequest).jsonPath("$.data").isEqualTo(2);
+        } finally {
+            GlobalConfiguration.instance().setDialect(dialect);
+        }
+
+        DoytoQLRequest queryRequest = new DoytoQLRequest();
+        queryRequest.setOperation("query");
+        queryRequest.setDomain(DOMAIN_USER);
+        postAndSuccess(queryRequest)
+                .jsonPath("$.data.total").isEqualTo(6)
+                .jsonPath("$.data.list[0].username").isEqualTo("f0rb")
+                .jsonPath("$.data.list[0].nickname").isEqualTo("kitty")
+                .jsonPath("$.data.list[5].username").isEqualTo("user6")
+        ;
+    }
+
+    @Test
+    void shouldRejectUpsertWithDefaultDialect() {
+        DoytoQLRequest doytoQLRequest = new DoytoQLRequest();
+        doytoQLRequest.setOperation("upsert");
+        doytoQLRequest.setDomain(DOMAIN_USER);
+        doytoQLRequest.setKeys(List.of("username"));
+        doytoQLRequest.setData(List.of(TestUtil.buildEntity("6")));
+
+        postAndFail(doytoQLRequest)
+                .jsonPath("$.code").isEqualTo(QLErrorCode.OPERATION_NOT_SUPPORTED.getCode());
+    }
+
+    @Test
+    void shouldFailWhenInsertDataHaveDifferentColumns() {
+        LinkedHashMap<String, Object> entity = TestUtil.buildEntity("7");
+        entity.remove("mobile");
+        DoytoQLRequest doytoQLRequest = new DoytoQLRequest();
+        doytoQLRequest.setOperation("insert");
+        doytoQLRequest.setDomain(DOMAIN_USER);
+        doytoQLRequest.setData(List.of(TestUtil.buildEntity("6"), entity));
+
+        postAndFail(doytoQLRequest)
+                .jsonPath("$.code").isEqualTo(QLErrorCode.DATA_SHOULD_SHARE_SAME_COLUMNS.getCode());
+    }
+
     @Test
     void shouldSupportUpdate() {
         postAndSuccess(TestUtil.buildUpdateRequest())
@@ -179,4 +362,7 @@ class QLControllerTest extends DoytoQLApplicationTest {
                 .jsonPath("$.data.total").isEqualTo(1)
                 .jsonPath("$.data.list[0].id").isEqualTo(1);
     }
-}
\ No newline at end of file
+
+    static class H2Dialect extends SimpleDialect {
+    }
+}
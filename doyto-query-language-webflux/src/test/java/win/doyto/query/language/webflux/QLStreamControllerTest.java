@@ -0,0 +1,53 @@
+/*
+ *    Copyright 2022 Forb Yuan
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ *
+ */
+
+package win.doyto.query.language.webflux;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.MediaType;
+import org.springframework.web.reactive.function.BodyInserters;
+import win.doyto.query.language.doytoql.DoytoQLRequest;
+
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * QLStreamControllerTest
+ *
+ * @author f0rb on 2022-04-22
+ */
+@SuppressWarnings("java:S2699")
+class QLStreamControllerTest extends DoytoQLApplicationTest {
+
+    @Test
+    void shouldStreamRowsAsNdjson() {
+        DoytoQLRequest doytoQLRequest = new DoytoQLRequest();
+        doytoQLRequest.setOperation("query");
+        doytoQLRequest.setDomain(DOMAIN_USER);
+
+        webTestClient.post().uri("/DoytoQL/stream")
+                     .contentType(MediaType.APPLICATION_JSON)
+                     .accept(MediaType.APPLICATION_NDJSON)
+                     .body(BodyInserters.fromValue(doytoQLRequest))
+                     .exchange()
+                     .expectStatus().isOk()
+                     .expectHeader().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON)
+                     .expectBodyList(Map.class).hasSize(5)
+                     .value(rows -> assertThat(rows.get(0)).containsEntry("username", "f0rb"));
+    }
+}